@@ -24,6 +24,8 @@
 #include "spacefactory.h"
 #include "space.h"
 
+#include <cstring>
+
 using std::vector;
 
 using similarity::initLibrary;
@@ -37,6 +39,21 @@ using similarity::ObjectVector;
 using similarity::Object;
 using similarity::KNNQuery;
 using similarity::KNNQueue;
+using similarity::IdType;
+using similarity::LabelType;
+using similarity::ID_SIZE;
+using similarity::LABEL_SIZE;
+using similarity::DATALENGTH_SIZE;
+using similarity::DATA_OFFSET;
+
+// KNNQueryResult class and constructor, resolved once when the library is initialized instead of on every query
+static jclass knnQueryResultClass = NULL;
+static jmethodID knnQueryResultConstructor = NULL;
+
+// Per thread buffer holding the query object (header followed by the query vector). Search threads are pooled, so
+// the buffer is allocated once per thread and reused by all of its queries. Visited lists are already pooled per
+// index by nmslib's hnsw.
+thread_local vector<char> queryObjectBuffer;
 
 extern "C"
 
@@ -149,23 +166,36 @@ JNIEXPORT jobjectArray JNICALL Java_com_amazon_opendistroforelasticsearch_knn_in
     try {
         IndexWrapper *indexWrapper = reinterpret_cast<IndexWrapper*>(indexPointer);
 
-        float* rawQueryvector = env->GetFloatArrayElements(queryVector, 0);
-        std::unique_ptr<const Object> queryObject(new Object(-1, -1, env->GetArrayLength(queryVector)*sizeof(float), rawQueryvector));
-        env->ReleaseFloatArrayElements(queryVector, rawQueryvector, JNI_ABORT);
+        // Copy the query vector straight into the thread's query buffer, behind the object header
+        jsize dimension = env->GetArrayLength(queryVector);
+        size_t dataLength = dimension * sizeof(float);
+        if (queryObjectBuffer.size() < DATA_OFFSET + dataLength) {
+            queryObjectBuffer.resize(DATA_OFFSET + dataLength);
+        }
+        char* buffer = queryObjectBuffer.data();
+        IdType queryId = -1;
+        LabelType queryLabel = -1;
+        memcpy(buffer, &queryId, ID_SIZE);
+        memcpy(buffer + ID_SIZE, &queryLabel, LABEL_SIZE);
+        memcpy(buffer + ID_SIZE + LABEL_SIZE, &dataLength, DATALENGTH_SIZE);
+        env->GetFloatArrayRegion(queryVector, 0, dimension, reinterpret_cast<jfloat*>(buffer + DATA_OFFSET));
         has_exception_in_stack(env);
+        // Wraps the buffer without copying it, nor freeing it when destroyed
+        const Object queryObject(buffer);
 
-        KNNQuery<float> knnQuery(*(indexWrapper->space), queryObject.get(), k);
+        KNNQuery<float> knnQuery(*(indexWrapper->space), &queryObject, k);
         indexWrapper->index->Search(&knnQuery);
-        std::unique_ptr<KNNQueue<float>> result(knnQuery.Result()->Clone());
+        // The result queue is owned by knnQuery, which is discarded right after: pop from it instead of a clone
+        KNNQueue<float>* result = const_cast<KNNQueue<float>*>(knnQuery.Result());
         has_exception_in_stack(env);
         int resultSize = result->Size();
-        jclass resultClass = env->FindClass("com/amazon/opendistroforelasticsearch/knn/index/KNNQueryResult");
-        jmethodID allArgs = env->GetMethodID(resultClass, "<init>", "(IF)V");
-        jobjectArray results = env->NewObjectArray(resultSize, resultClass, NULL);
+        jobjectArray results = env->NewObjectArray(resultSize, knnQueryResultClass, NULL);
         for (int i = 0; i < resultSize; i++) {
             float distance = result->TopDistance();
             long id = result->Pop()->id();
-            env->SetObjectArrayElement(results, i, env->NewObject(resultClass, allArgs, id, distance));
+            jobject queryResult = env->NewObject(knnQueryResultClass, knnQueryResultConstructor, id, distance);
+            env->SetObjectArrayElement(results, i, queryResult);
+            env->DeleteLocalRef(queryResult);
         }
         has_exception_in_stack(env);
         return results;
@@ -228,7 +258,15 @@ JNIEXPORT void JNICALL Java_com_amazon_opendistroforelasticsearch_knn_index_v201
     }
 }
 
-JNIEXPORT void JNICALL Java_com_amazon_opendistroforelasticsearch_knn_index_v2011_KNNIndex_initLibrary(JNIEnv *, jclass)
+JNIEXPORT void JNICALL Java_com_amazon_opendistroforelasticsearch_knn_index_v2011_KNNIndex_initLibrary(JNIEnv* env, jclass cls)
 {
     initLibrary();
+
+    jclass resultClass = env->FindClass("com/amazon/opendistroforelasticsearch/knn/index/KNNQueryResult");
+    if (resultClass == NULL) {
+        return;
+    }
+    knnQueryResultClass = (jclass) env->NewGlobalRef(resultClass);
+    env->DeleteLocalRef(resultClass);
+    knnQueryResultConstructor = env->GetMethodID(knnQueryResultClass, "<init>", "(IF)V");
 }
@@ -21,6 +21,7 @@ public class KNNConstants {
     public static final String HNSW_ALGO_EF_CONSTRUCTION = "efConstruction";
     public static final String HNSW_ALGO_EF_SEARCH = "efSearch";
     public static final String HNSW_ALGO_INDEX_THREAD_QTY = "indexThreadQty";
+    public static final String GRAPH_BUILD_THRESHOLD = "graphBuildThreshold";
     public static final String L2 = "l2";
     public static final String L1 = "l1";
     public static final String LINF = "linf";
@@ -28,4 +29,20 @@ public class KNNConstants {
     public static final String HAMMING_BIT = "hammingbit";
     public static final String INNER_PROD = "innerproduct";
     public static final String DIMENSION = "dimension";
+    public static final String STORE_NORM = "store_norm";
+    public static final String NORM_FIELD_SUFFIX = "._norm";
+    public static final String QUANTIZATION = "quantization";
+    public static final String QUANTIZATION_MIN = "quantization_min";
+    public static final String QUANTIZATION_MAX = "quantization_max";
+    public static final String DATA_TYPE = "data_type";
+    public static final String METHOD = "method";
+    public static final String METHOD_NAME = "name";
+    public static final String METHOD_HNSW = "hnsw";
+    public static final String METHOD_SPACE_TYPE = "space_type";
+    public static final String METHOD_PARAMETERS = "parameters";
+    public static final String METHOD_PARAMETER_M = "m";
+    public static final String METHOD_PARAMETER_EF_CONSTRUCTION = "ef_construction";
+    public static final String KNN_ENGINE = "engine";
+    public static final String NMSLIB = "nmslib";
+    public static final String KNN_WARMUP_THREAD_POOL = "knn_warmup";
 }
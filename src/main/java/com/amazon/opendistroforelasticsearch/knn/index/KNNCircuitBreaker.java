@@ -15,33 +15,65 @@
 
 package com.amazon.opendistroforelasticsearch.knn.index;
 
-import com.amazon.opendistroforelasticsearch.knn.plugin.stats.KNNStatsConfig;
-import com.amazon.opendistroforelasticsearch.knn.plugin.stats.StatNames;
-import com.amazon.opendistroforelasticsearch.knn.plugin.transport.KNNStatsAction;
-import com.amazon.opendistroforelasticsearch.knn.plugin.transport.KNNStatsNodeResponse;
-import com.amazon.opendistroforelasticsearch.knn.plugin.transport.KNNStatsRequest;
-import com.amazon.opendistroforelasticsearch.knn.plugin.transport.KNNStatsResponse;
+import com.amazon.opendistroforelasticsearch.knn.plugin.transport.KNNCacheCapacityAction;
+import com.amazon.opendistroforelasticsearch.knn.plugin.transport.KNNCacheCapacityRequest;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.support.master.AcknowledgedResponse;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterStateListener;
+import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.indices.breaker.BreakerSettings;
 import org.elasticsearch.threadpool.ThreadPool;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * Runs the circuit breaker logic and updates the settings
+ * Runs the circuit breaker logic and updates the settings.
+ *
+ * Data nodes push transitions of their cache capacity state to the master with {@link KNNCacheCapacityAction}. The
+ * master keeps track of the nodes at capacity and sets knn.circuit_breaker.triggered while at least one node is at
+ * capacity.
  */
-public class KNNCircuitBreaker {
+public class KNNCircuitBreaker implements ClusterStateListener {
     private static Logger logger = LogManager.getLogger(KNNCircuitBreaker.class);
-    public static int CB_TIME_INTERVAL = 2*60; // seconds
+    /**
+     * Seconds the master waits for the nodes to report their state before it reconciles the flag after an election
+     * or a manual update of knn.circuit_breaker.triggered. Also the delay before a failed report is retried.
+     */
+    public static int CB_TIME_INTERVAL = 10; // seconds
+
+    /**
+     * Name of the k-NN breaker registered with the CircuitBreakerService. It shows up in _nodes/stats/breaker.
+     */
+    public static final String KNN_GRAPH_BREAKER_NAME = "knn_graph";
 
     private static KNNCircuitBreaker INSTANCE;
     private ThreadPool threadPool;
     private ClusterService clusterService;
     private Client client;
+    private CircuitBreaker graphMemoryBreaker;
+
+    // Master only: ids of the nodes that reported their cache at capacity
+    private final Set<String> nodesAtCapacity = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean reconcileScheduled = new AtomicBoolean(false);
+
+    // Only one report to the master is in flight at a time so that reports cannot be applied out of order
+    private final AtomicBoolean reportInFlight = new AtomicBoolean(false);
+    private volatile boolean reportPending = false;
 
     private KNNCircuitBreaker() {
     }
@@ -62,54 +94,198 @@ public class KNNCircuitBreaker {
         INSTANCE = instance;
     }
 
+    /**
+     * Settings of the breaker that accounts native graph memory. The overhead is 0 so that off heap graph memory
+     * is not added to the parent breaker, which only guards the heap. The limit is enforced by
+     * {@link #addGraphMemoryAndMaybeBreak} against knn.memory.circuit_breaker.limit, which is dynamic.
+     *
+     * @param settings node settings
+     * @return BreakerSettings for the k-NN graph breaker
+     */
+    public static BreakerSettings getGraphMemoryBreakerSettings(Settings settings) {
+        ByteSizeValue limit = (ByteSizeValue) KNNSettings.dynamicCacheSettings
+                .get(KNNSettings.KNN_MEMORY_CIRCUIT_BREAKER_LIMIT).get(settings);
+        return new BreakerSettings(KNN_GRAPH_BREAKER_NAME, limit.getBytes(), 0.0, CircuitBreaker.Type.MEMORY,
+                CircuitBreaker.Durability.TRANSIENT);
+    }
+
+    public void setGraphMemoryBreaker(CircuitBreaker graphMemoryBreaker) {
+        this.graphMemoryBreaker = graphMemoryBreaker;
+    }
+
+    /**
+     * Accounts memory of a graph that is about to be loaded. The graphs in the cache are evicted to make room for
+     * the new graph, but the rest of the accounted memory is not: graphs being loaded and the buffers of graph
+     * builds. Trips when that memory plus the new graph is larger than the k-NN memory limit.
+     *
+     * @param bytes size of the graph
+     * @param evictableBytes memory accounted for the graphs in the cache
+     * @param label description of what is being loaded
+     * @throws CircuitBreakingException if the graph cannot fit in the k-NN memory limit
+     */
+    public void addGraphMemoryAndMaybeBreak(long bytes, long evictableBytes, String label)
+            throws CircuitBreakingException {
+        if (KNNSettings.state().getSettingValue(KNNSettings.KNN_MEMORY_CIRCUIT_BREAKER_ENABLED)) {
+            long limit = KNNSettings.getCircuitBreakerLimit().getBytes();
+            long used = graphMemoryBreaker == null ? 0 : graphMemoryBreaker.getUsed();
+            long wanted = Math.max(0L, used - evictableBytes) + bytes;
+            if (wanted > limit) {
+                throw new CircuitBreakingException("[" + KNN_GRAPH_BREAKER_NAME + "] Data too large, data for [" + label
+                        + "] would be [" + wanted + "/" + new ByteSizeValue(wanted) + "], which is larger than the limit of ["
+                        + limit + "/" + new ByteSizeValue(limit) + "]", wanted, limit, CircuitBreaker.Durability.TRANSIENT);
+            }
+        }
+        addWithoutBreaking(bytes);
+    }
+
+    /**
+     * Adjusts the memory accounted by the k-NN breaker without checking the limit. Used for graphs leaving the
+     * cache and for build buffers of flushes and merges, which must not fail once started.
+     *
+     * @param bytes bytes to add, negative to release
+     */
+    public void addWithoutBreaking(long bytes) {
+        if (graphMemoryBreaker != null) {
+            graphMemoryBreaker.addWithoutBreaking(bytes);
+        }
+    }
+
+    /**
+     * Builds the exception returned to requests that are rejected because the k-NN memory is exhausted
+     *
+     * @param message reason for rejecting the request
+     * @return CircuitBreakingException reported with 429 status code
+     */
+    public CircuitBreakingException newCircuitBreakingException(String message) {
+        long limit = KNNSettings.getCircuitBreakerLimit().getBytes();
+        long used = graphMemoryBreaker == null ? 0 : graphMemoryBreaker.getUsed();
+        return new CircuitBreakingException(message, used, limit, CircuitBreaker.Durability.TRANSIENT);
+    }
+
     public void initialize(ThreadPool threadPool, ClusterService clusterService, Client client) {
         this.threadPool = threadPool;
         this.clusterService = clusterService;
         this.client = client;
-        Runnable runnable = () -> {
-            if (KNNWeight.knnIndexCache.isCacheCapacityReached() && clusterService.localNode().isDataNode()) {
-                long currentSizeKiloBytes =  KNNWeight.knnIndexCache.getWeightInKilobytes();
-                long circuitBreakerLimitSizeKiloBytes = KNNSettings.getCircuitBreakerLimit().getKb();
-                long circuitBreakerUnsetSizeKiloBytes = (long) ((KNNSettings.getCircuitBreakerUnsetPercentage()/100)
-                        * circuitBreakerLimitSizeKiloBytes);
-                /**
-                 * Unset capacityReached flag if currentSizeBytes is less than circuitBreakerUnsetSizeBytes
-                 */
-                if (currentSizeKiloBytes <= circuitBreakerUnsetSizeKiloBytes) {
-                    KNNWeight.knnIndexCache.setCacheCapacityReached(false);
+        clusterService.addListener(this);
+    }
+
+    /**
+     * Called on the node whose cache capacity state changed. Reports the current state to the master.
+     */
+    public void onCacheCapacityStateChange() {
+        if (client == null) {
+            return;
+        }
+        reportPending = true;
+        if (reportInFlight.compareAndSet(false, true)) {
+            reportCacheCapacityState();
+        }
+    }
+
+    private void reportCacheCapacityState() {
+        reportPending = false;
+        final boolean cacheCapacityReached = KNNWeight.knnIndexCache.isCacheCapacityReached();
+        KNNCacheCapacityRequest request = new KNNCacheCapacityRequest(clusterService.localNode().getId(),
+                cacheCapacityReached);
+        client.execute(KNNCacheCapacityAction.INSTANCE, request, new ActionListener<AcknowledgedResponse>() {
+            @Override
+            public void onResponse(AcknowledgedResponse acknowledgedResponse) {
+                reportInFlight.set(false);
+                if (reportPending) {
+                    onCacheCapacityStateChange();
                 }
             }
 
-            // Leader node untriggers CB if all nodes have not reached their max capacity
-            if (KNNSettings.isCircuitBreakerTriggered() && clusterService.state().nodes().isLocalNodeElectedMaster()) {
-                KNNStatsRequest knnStatsRequest = new KNNStatsRequest(KNNStatsConfig.KNN_STATS.keySet());
-                knnStatsRequest.addStat(StatNames.CACHE_CAPACITY_REACHED.getName());
-                knnStatsRequest.timeout(new TimeValue(1000*10)); // 10 second timeout
-
-                try {
-                    KNNStatsResponse knnStatsResponse = client.execute(KNNStatsAction.INSTANCE, knnStatsRequest).get();
-                    List<KNNStatsNodeResponse> nodeResponses = knnStatsResponse.getNodes();
-
-                    List<String> nodesAtMaxCapacity = new ArrayList<>();
-                    for (KNNStatsNodeResponse nodeResponse : nodeResponses) {
-                        if ((Boolean) nodeResponse.getStatsMap().get(StatNames.CACHE_CAPACITY_REACHED.getName())) {
-                            nodesAtMaxCapacity.add(nodeResponse.getNode().getId());
-                        }
-                    }
-
-                    if (!nodesAtMaxCapacity.isEmpty()) {
-                        logger.info("[KNN] knn.circuit_breaker.triggered stays set. Nodes at max cache capacity: "
-                                + String.join(",", nodesAtMaxCapacity) + ".");
-                    } else {
-                        logger.info("[KNN] Cache capacity below 75% of the circuit breaker limit for all nodes." +
-                                " Unsetting knn.circuit_breaker.triggered flag.");
-                        KNNSettings.state().updateCircuitBreakerSettings(false);
-                    }
-                } catch (Exception e) {
-                    logger.error("[KNN] Exception getting stats: " + e);
-                }
+            @Override
+            public void onFailure(Exception e) {
+                logger.warn("[KNN] Failed to report cache capacity reached [" + cacheCapacityReached
+                        + "] to the master. Retrying in " + CB_TIME_INTERVAL + " seconds", e);
+                reportPending = true;
+                threadPool.schedule(() -> {
+                    reportInFlight.set(false);
+                    onCacheCapacityStateChange();
+                }, TimeValue.timeValueSeconds(CB_TIME_INTERVAL), ThreadPool.Names.GENERIC);
+            }
+        });
+    }
+
+    /**
+     * Called on the master when a node reports its cache capacity state
+     *
+     * @param nodeId id of the node
+     * @param cacheCapacityReached whether the cache of the node has reached its capacity
+     */
+    public void onNodeCacheCapacityUpdate(String nodeId, boolean cacheCapacityReached) {
+        if (cacheCapacityReached) {
+            nodesAtCapacity.add(nodeId);
+        } else {
+            nodesAtCapacity.remove(nodeId);
+        }
+        updateCircuitBreakerTriggered();
+    }
+
+    @Override
+    public void clusterChanged(ClusterChangedEvent event) {
+        // Reporting and updating the flag execute transport actions, which must not run on the applier thread
+        // A new master does not know the state of the nodes, so the nodes at capacity report again
+        if (event.nodesDelta().masterNodeChanged() && event.state().nodes().getMasterNodeId() != null
+                && event.state().nodes().getLocalNode().isDataNode()
+                && KNNWeight.knnIndexCache.isCacheCapacityReached()) {
+            threadPool.generic().execute(this::onCacheCapacityStateChange);
+        }
+
+        if (!event.localNodeMaster()) {
+            nodesAtCapacity.clear();
+            return;
+        }
+
+        if (!event.previousState().nodes().isLocalNodeElectedMaster()) {
+            scheduleReconcile();
+        }
+
+        if (event.nodesRemoved()) {
+            for (DiscoveryNode node : event.nodesDelta().removedNodes()) {
+                nodesAtCapacity.remove(node.getId());
             }
-        };
-        this.threadPool.scheduleWithFixedDelay(runnable, TimeValue.timeValueSeconds(CB_TIME_INTERVAL), ThreadPool.Names.GENERIC);
+            threadPool.generic().execute(this::updateCircuitBreakerTriggered);
+        }
+
+        // The flag may also be set manually or be left over from before a full cluster restart
+        Settings clusterSettings = event.state().metadata().settings();
+        if (event.metadataChanged() && nodesAtCapacity.isEmpty()
+                && (KNNSettings.KNN_CIRCUIT_BREAKER_TRIGGERED_SETTING.get(clusterSettings)
+                || !KNNSettings.KNN_CIRCUIT_BREAKER_TRIGGERED_NODES_SETTING.get(clusterSettings).isEmpty())) {
+            scheduleReconcile();
+        }
+    }
+
+    private void scheduleReconcile() {
+        if (reconcileScheduled.compareAndSet(false, true)) {
+            threadPool.schedule(() -> {
+                reconcileScheduled.set(false);
+                if (clusterService.state().nodes().isLocalNodeElectedMaster()) {
+                    updateCircuitBreakerTriggered();
+                }
+            }, TimeValue.timeValueSeconds(CB_TIME_INTERVAL), ThreadPool.Names.GENERIC);
+        }
+    }
+
+    private synchronized void updateCircuitBreakerTriggered() {
+        List<String> triggeredNodes = new ArrayList<>(nodesAtCapacity);
+        Collections.sort(triggeredNodes);
+        boolean triggered = !triggeredNodes.isEmpty();
+        if (triggered == KNNSettings.isCircuitBreakerTriggered()
+                && triggeredNodes.equals(KNNSettings.getCircuitBreakerTriggeredNodes())) {
+            return;
+        }
+
+        if (triggered) {
+            logger.info("[KNN] Setting knn.circuit_breaker.triggered flag. Nodes at max cache capacity: "
+                    + String.join(",", triggeredNodes) + ".");
+        } else {
+            logger.info("[KNN] Cache capacity below " + KNNSettings.getCircuitBreakerUnsetPercentage()
+                    + "% of the circuit breaker limit for all nodes. Unsetting knn.circuit_breaker.triggered flag.");
+        }
+        KNNSettings.state().updateCircuitBreakerSettings(triggered, triggeredNodes);
     }
 }
@@ -0,0 +1,81 @@
+/*
+ *   Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+package com.amazon.opendistroforelasticsearch.knn.index;
+
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Weight;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Query finding the k nearest neighbors of a vector by scoring every document of the segments against it, without
+ * the graphs. Results are scored the same way as the ones of {@link KNNQuery}.
+ */
+public class KNNExactQuery extends Query {
+
+    private final String field;
+    private final float[] queryVector;
+    private final int k;
+
+    public KNNExactQuery(String field, float[] queryVector, int k) {
+        this.field = field;
+        this.queryVector = queryVector;
+        this.k = k;
+    }
+
+    public String getField() {
+        return this.field;
+    }
+
+    public float[] getQueryVector() {
+        return this.queryVector;
+    }
+
+    public int getK() {
+        return this.k;
+    }
+
+    @Override
+    public Weight createWeight(IndexSearcher searcher, ScoreMode scoreMode, float boost) throws IOException {
+        if (!KNNSettings.isKNNPluginEnabled()) {
+            throw new IllegalStateException("KNN plugin is disabled. To enable update knn.plugin.enabled to true");
+        }
+        return new KNNExactWeight(this, boost);
+    }
+
+    @Override
+    public String toString(String field) {
+        return field;
+    }
+
+    @Override
+    public int hashCode() {
+        return field.hashCode() ^ Arrays.hashCode(queryVector) ^ k;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return sameClassAs(other) &&
+                       equalsTo(getClass().cast(other));
+    }
+
+    private boolean equalsTo(KNNExactQuery other) {
+        return this.field.equals(other.getField()) && Arrays.equals(this.queryVector, other.getQueryVector()) &&
+                       this.k == other.getK();
+    }
+}
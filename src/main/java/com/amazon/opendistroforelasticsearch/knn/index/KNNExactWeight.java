@@ -0,0 +1,222 @@
+/*
+ *   Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+package com.amazon.opendistroforelasticsearch.knn.index;
+
+import com.amazon.opendistroforelasticsearch.knn.common.KNNConstants;
+import com.amazon.opendistroforelasticsearch.knn.index.codec.KNNCodecUtil;
+import com.amazon.opendistroforelasticsearch.knn.plugin.script.KNNScoringUtil;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.DocIdSetBuilder;
+import org.apache.lucene.util.PriorityQueue;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static com.amazon.opendistroforelasticsearch.knn.plugin.script.KNNScoringSpaceUtil.getVectorMagnitudeSquared;
+
+/**
+ * Calculate the weight of an exact knn query. The vectors of a segment are decoded from the doc values in blocks of
+ * {@link #BLOCK_SIZE} documents, the distances of a block are computed in a single pass over it and the k closest
+ * documents of the segment are kept in a bounded heap.
+ */
+public class KNNExactWeight extends Weight {
+    static final int BLOCK_SIZE = 128;
+
+    private final KNNExactQuery knnQuery;
+    private final float boost;
+
+    public KNNExactWeight(KNNExactQuery query, float boost) {
+        super(query);
+        this.knnQuery = query;
+        this.boost = boost;
+    }
+
+    @Override
+    public Explanation explain(LeafReaderContext context, int doc) {
+        return Explanation.match(1.0f, "No Explanation");
+    }
+
+    @Override
+    public void extractTerms(Set<Term> terms) {
+    }
+
+    @Override
+    public Scorer scorer(LeafReaderContext context) throws IOException {
+        return exactScorer(this, context, knnQuery.getField(), knnQuery.getQueryVector(), knnQuery.getK(), boost);
+    }
+
+    /**
+     * Scores the k documents of a segment closest to the query vector. Also used by {@link KNNWeight} for the segments
+     * whose graph was not built.
+     *
+     * @param weight weight of the scorer
+     * @param context segment to search
+     * @param field knn_vector field
+     * @param queryVector query vector
+     * @param k number of nearest neighbors
+     * @param boost boost of the query
+     * @return scorer of the nearest neighbors, or null if the segment has no vectors of the field
+     * @throws IOException if the doc values cannot be read
+     */
+    static Scorer exactScorer(Weight weight, LeafReaderContext context, String field, float[] queryVector, int k,
+                              float boost) throws IOException {
+        LeafReader reader = context.reader();
+        FieldInfo fieldInfo = reader.getFieldInfos().fieldInfo(field);
+        if (fieldInfo == null) {
+            return null;
+        }
+
+        SpaceTypes spaceType = getSpaceType(fieldInfo);
+        float queryVectorSquaredMagnitude = getVectorMagnitudeSquared(queryVector);
+        BinaryDocValues values = DocValues.getBinary(reader, field);
+        Bits liveDocs = reader.getLiveDocs();
+
+        NearestNeighbors nearestNeighbors = new NearestNeighbors(k);
+        int[] blockDocs = new int[BLOCK_SIZE];
+        float[][] blockVectors = new float[BLOCK_SIZE][];
+        float[] blockDistances = new float[BLOCK_SIZE];
+        int blockSize = 0;
+        for (int doc = values.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = values.nextDoc()) {
+            if (liveDocs != null && !liveDocs.get(doc)) {
+                continue;
+            }
+            blockDocs[blockSize] = doc;
+            blockVectors[blockSize] = KNNCodecUtil.byteToFloatArray(values.binaryValue(), blockVectors[blockSize]);
+            if (++blockSize == BLOCK_SIZE) {
+                computeDistances(spaceType, queryVector, queryVectorSquaredMagnitude, blockVectors, blockDistances,
+                        blockSize);
+                nearestNeighbors.collect(blockDocs, blockDistances, blockSize);
+                blockSize = 0;
+            }
+        }
+        computeDistances(spaceType, queryVector, queryVectorSquaredMagnitude, blockVectors, blockDistances, blockSize);
+        nearestNeighbors.collect(blockDocs, blockDistances, blockSize);
+
+        if (nearestNeighbors.size() == 0) {
+            return null;
+        }
+
+        Map<Integer, Float> scores = new HashMap<>();
+        DocIdSetBuilder docIdSetBuilder = new DocIdSetBuilder(reader.maxDoc());
+        DocIdSetBuilder.BulkAdder setAdder = docIdSetBuilder.grow(nearestNeighbors.size());
+        for (ScoredDoc scoredDoc : nearestNeighbors) {
+            scores.put(scoredDoc.doc, KNNWeight.normalizeScore(scoredDoc.distance));
+            setAdder.add(scoredDoc.doc);
+        }
+        return new KNNScorer(weight, docIdSetBuilder.build().iterator(), scores, boost);
+    }
+
+    @Override
+    public boolean isCacheable(LeafReaderContext context) {
+        return true;
+    }
+
+    /**
+     * Computes the distances between the query vector and a block of vectors. The distances are the ones nmslib
+     * computes for the space, so that the exact results are scored like the ones of the graphs.
+     */
+    private static void computeDistances(SpaceTypes spaceType, float[] queryVector, float queryVectorSquaredMagnitude,
+                                         float[][] vectors, float[] distances, int count) {
+        switch (spaceType) {
+            case l1:
+                for (int i = 0; i < count; i++) {
+                    distances[i] = KNNScoringUtil.l1Norm(queryVector, vectors[i]);
+                }
+                break;
+            case linf:
+                for (int i = 0; i < count; i++) {
+                    distances[i] = KNNScoringUtil.lInfNorm(queryVector, vectors[i]);
+                }
+                break;
+            case cosinesimil:
+                for (int i = 0; i < count; i++) {
+                    distances[i] = 1 - KNNScoringUtil.cosinesimilOptimized(queryVector, vectors[i],
+                            queryVectorSquaredMagnitude);
+                }
+                break;
+            case inner_product:
+                for (int i = 0; i < count; i++) {
+                    distances[i] = -KNNScoringUtil.innerProduct(queryVector, vectors[i]);
+                }
+                break;
+            default:
+                for (int i = 0; i < count; i++) {
+                    distances[i] = KNNScoringUtil.l2Squared(queryVector, vectors[i]);
+                }
+        }
+    }
+
+    private static SpaceTypes getSpaceType(FieldInfo fieldInfo) {
+        String spaceType = fieldInfo.getAttribute(KNNConstants.SPACE_TYPE);
+        for (SpaceTypes value : SpaceTypes.values()) {
+            if (value.getKey().equals(spaceType)) {
+                return value;
+            }
+        }
+        return SpaceTypes.l2;
+    }
+
+    private static final class ScoredDoc {
+        private int doc;
+        private float distance;
+
+        private ScoredDoc(int doc, float distance) {
+            this.doc = doc;
+            this.distance = distance;
+        }
+    }
+
+    /**
+     * Heap of the k closest documents seen so far, with the farthest of them on top.
+     */
+    private static final class NearestNeighbors extends PriorityQueue<ScoredDoc> {
+        private final int k;
+
+        private NearestNeighbors(int k) {
+            super(k);
+            this.k = k;
+        }
+
+        @Override
+        protected boolean lessThan(ScoredDoc a, ScoredDoc b) {
+            return a.distance > b.distance || (a.distance == b.distance && a.doc > b.doc);
+        }
+
+        private void collect(int[] docs, float[] distances, int count) {
+            for (int i = 0; i < count; i++) {
+                if (size() < k) {
+                    add(new ScoredDoc(docs[i], distances[i]));
+                } else if (distances[i] < top().distance) {
+                    ScoredDoc farthest = top();
+                    farthest.doc = docs[i];
+                    farthest.distance = distances[i];
+                    updateTop();
+                }
+            }
+        }
+    }
+}
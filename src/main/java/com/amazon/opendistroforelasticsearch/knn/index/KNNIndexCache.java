@@ -15,7 +15,8 @@
 
 package com.amazon.opendistroforelasticsearch.knn.index;
 
-import com.amazon.opendistroforelasticsearch.knn.index.v2011.KNNIndex;
+import com.amazon.opendistroforelasticsearch.knn.index.util.KNNEngine;
+import com.amazon.opendistroforelasticsearch.knn.index.util.KNNIndexHandle;
 import com.amazon.opendistroforelasticsearch.knn.plugin.stats.StatNames;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
@@ -24,12 +25,10 @@ import com.google.common.cache.RemovalCause;
 import com.google.common.cache.RemovalNotification;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.unit.TimeValue;
-import org.elasticsearch.watcher.FileChangesListener;
-import org.elasticsearch.watcher.FileWatcher;
-import org.elasticsearch.watcher.ResourceWatcherService;
-import org.elasticsearch.watcher.WatcherHandle;
 
 import java.io.Closeable;
 import java.nio.file.Path;
@@ -38,6 +37,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -48,9 +48,10 @@ import java.util.stream.Collectors;
 import static com.amazon.opendistroforelasticsearch.knn.index.KNNSettings.getCircuitBreakerLimit;
 
 /**
- * KNNIndex level caching with weight based, time based evictions. This caching helps us
+ * KNNIndexHandle level caching with weight based, time based evictions. This caching helps us
  * to manage the hnsw graphs in the memory and garbage collect them after specified timeout
- * or when weightCircuitBreaker is hit.
+ * or when weightCircuitBreaker is hit. Graphs are also evicted as soon as the core of the segment
+ * they belong to is closed, i.e. when the segment is dropped after a merge or a delete of the index.
  */
 public class KNNIndexCache implements Closeable {
     public static String GRAPH_COUNT = "graph_count";
@@ -61,17 +62,13 @@ public class KNNIndexCache implements Closeable {
 
     private Cache<String, KNNIndexCacheEntry> cache;
     private ExecutorService executor = Executors.newSingleThreadExecutor();
-    private AtomicBoolean cacheCapacityReached;
-    private ResourceWatcherService resourceWatcherService;
+    private final AtomicBoolean cacheCapacityReached = new AtomicBoolean(false);
+    private final Map<IndexReader.CacheKey, Set<String>> graphsByCoreCacheKey = new ConcurrentHashMap<>();
 
     private KNNIndexCache() {
         initCache();
     }
 
-    public static void setResourceWatcherService(final ResourceWatcherService resourceWatcherService) {
-        getInstance().resourceWatcherService = resourceWatcherService;
-    }
-
     public void close() {
         executor.shutdown();
     }
@@ -105,8 +102,6 @@ public class KNNIndexCache implements Closeable {
             cacheBuilder.expireAfterAccess(expiryTime, TimeUnit.MINUTES);
         }
 
-        cacheCapacityReached = new AtomicBoolean(false);
-
         cache = cacheBuilder.build();
     }
 
@@ -114,7 +109,8 @@ public class KNNIndexCache implements Closeable {
         logger.info("KNN Cache rebuilding.");
         executor.execute(() -> {
             cache.invalidateAll();
-            initCache(); }
+            initCache();
+            setCacheCapacityReached(false); }
         );
     }
 
@@ -126,16 +122,21 @@ public class KNNIndexCache implements Closeable {
     private void onRemoval(RemovalNotification<String, KNNIndexCacheEntry> removalNotification) {
         KNNIndexCacheEntry knnIndexCacheEntry = removalNotification.getValue();
 
-        knnIndexCacheEntry.getFileWatcherHandle().stop();
-
         executor.execute(() -> knnIndexCacheEntry.getKnnIndex().close());
+        KNNCircuitBreaker.getInstance().addWithoutBreaking(-knnIndexCacheEntry.getGraphSizeInBytes());
 
         String esIndexName = removalNotification.getValue().getEsIndexName();
         String indexPathUrl = removalNotification.getValue().getIndexPathUrl();
 
         if (RemovalCause.SIZE == removalNotification.getCause()) {
-            KNNSettings.state().updateCircuitBreakerSettings(true);
             setCacheCapacityReached(true);
+        } else if (isCacheCapacityReached()) {
+            long circuitBreakerUnsetSizeKiloBytes = (long) ((KNNSettings.getCircuitBreakerUnsetPercentage()/100)
+                    * getCircuitBreakerLimit().getKb());
+            // Unset capacityReached flag once enough graphs left the cache
+            if (getWeightInKilobytes() <= circuitBreakerUnsetSizeKiloBytes) {
+                setCacheCapacityReached(false);
+            }
         }
         // TODO will change below logger to debug when close to ship it
         logger.info("[KNN] Cache evicted. Key {}, Reason: {}", removalNotification.getKey()
@@ -147,11 +148,43 @@ public class KNNIndexCache implements Closeable {
      *
      * @param key indexPath where the serialized hnsw graph is stored
      * @param indexName index name
-     * @return KNNIndex holding the heap pointer of the loaded graph
+     * @return KNNIndexHandle holding the heap pointer of the loaded graph
+     */
+    public KNNIndexHandle getIndex(String key, final String indexName) {
+        return getIndex(key, indexName, null);
+    }
+
+    /**
+     * Loads corresponding index for the given key to memory and returns the index object. The graph is evicted when
+     * the core of its segment is closed.
+     *
+     * @param key indexPath where the serialized hnsw graph is stored
+     * @param indexName index name
+     * @param coreCacheHelper core cache helper of the segment reader the graph belongs to, or null
+     * @return KNNIndexHandle holding the heap pointer of the loaded graph
+     */
+    public KNNIndexHandle getIndex(String key, final String indexName,
+                                   @Nullable IndexReader.CacheHelper coreCacheHelper) {
+        return getIndex(key, indexName, null, coreCacheHelper);
+    }
+
+    /**
+     * Loads corresponding index for the given key to memory and returns the index object. The graph is evicted when
+     * the core of its segment is closed.
+     *
+     * @param key indexPath where the serialized hnsw graph is stored
+     * @param indexName index name
+     * @param spaceType space type the graph was built with, or null to use the space type of the index
+     * @param coreCacheHelper core cache helper of the segment reader the graph belongs to, or null
+     * @return KNNIndexHandle holding the heap pointer of the loaded graph
      */
-    public KNNIndex getIndex(String key, final String indexName) {
+    public KNNIndexHandle getIndex(String key, final String indexName, @Nullable String spaceType,
+                             @Nullable IndexReader.CacheHelper coreCacheHelper) {
         try {
-            final KNNIndexCacheEntry knnIndexCacheEntry = cache.get(key, () -> loadIndex(key, indexName));
+            final KNNIndexCacheEntry knnIndexCacheEntry = cache.get(key, () -> loadIndex(key, indexName, spaceType));
+            if (coreCacheHelper != null) {
+                registerCoreClosedListener(key, coreCacheHelper);
+            }
             return knnIndexCacheEntry.getKnnIndex();
         } catch (ExecutionException e) {
             throw new RuntimeException(e);
@@ -159,16 +192,84 @@ public class KNNIndexCache implements Closeable {
     }
 
     /**
-     * Loads list of segments for the given index into the cache and returns list of KNNIndex's.
+     * Ties the graph to the lifecycle of the core of its segment. A listener is added once per segment core; when the
+     * core is closed, all of the graphs of the segment are evicted.
+     */
+    private void registerCoreClosedListener(String key, IndexReader.CacheHelper coreCacheHelper) {
+        IndexReader.CacheKey coreCacheKey = coreCacheHelper.getKey();
+        Set<String> graphs = graphsByCoreCacheKey.get(coreCacheKey);
+        if (graphs == null) {
+            Set<String> newGraphs = ConcurrentHashMap.newKeySet();
+            graphs = graphsByCoreCacheKey.putIfAbsent(coreCacheKey, newGraphs);
+            if (graphs == null) {
+                graphs = newGraphs;
+                coreCacheHelper.addClosedListener(this::onCoreClosed);
+            }
+        }
+        graphs.add(key);
+    }
+
+    private void onCoreClosed(IndexReader.CacheKey coreCacheKey) {
+        Set<String> graphs = graphsByCoreCacheKey.remove(coreCacheKey);
+        if (graphs != null) {
+            logger.debug("[KNN] Invalidating graphs {} as their segment is closed", graphs);
+            cache.invalidateAll(graphs);
+        }
+    }
+
+    /**
+     * Loads list of segments for the given index into the cache and returns list of KNNIndexHandle's.
      *
      * @param segmentPaths List of segmentPaths
      * @param indexName Name of index
-     * @return List of KNNIndex's from the segment paths
+     * @return List of KNNIndexHandle's from the segment paths
      */
-    public List<KNNIndex> getIndices(List<String> segmentPaths, String indexName) {
+    public List<KNNIndexHandle> getIndices(List<String> segmentPaths, String indexName) {
         return segmentPaths.stream().map(segmentPath -> getIndex(segmentPath, indexName)).collect(Collectors.toList());
     }
 
+    /**
+     * Returns whether the graph is loaded or can be loaded without evicting other graphs from the cache
+     *
+     * @param indexPathUrl path of the serialized graph
+     * @return true if the graph fits in the free capacity of the cache
+     */
+    public boolean fitsInFreeCapacity(String indexPathUrl) {
+        return isGraphLoaded(indexPathUrl) || getGraphSizeInKilobytes(indexPathUrl) <= getFreeCapacityInKilobytes();
+    }
+
+    /**
+     * Returns whether the graph is in the cache
+     *
+     * @param indexPathUrl path of the serialized graph
+     * @return true if the graph is loaded
+     */
+    public boolean isGraphLoaded(String indexPathUrl) {
+        return cache.asMap().containsKey(indexPathUrl);
+    }
+
+    /**
+     * Returns the weight the graph would have in the cache once loaded, estimated from the size of its file
+     *
+     * @param indexPathUrl path of the serialized graph
+     * @return size of the graph in KB
+     */
+    public static long getGraphSizeInKilobytes(String indexPathUrl) {
+        return Paths.get(indexPathUrl).toFile().length() / 1024 + 1;
+    }
+
+    /**
+     * Returns the weight that can still be loaded in the cache before graphs get evicted
+     *
+     * @return free capacity of the cache in KB, Long.MAX_VALUE when the circuit breaker is disabled
+     */
+    public long getFreeCapacityInKilobytes() {
+        if (!KNNSettings.state().<Boolean>getSettingValue(KNNSettings.KNN_MEMORY_CIRCUIT_BREAKER_ENABLED)) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0L, getCircuitBreakerLimit().getKb() - getWeightInKilobytes());
+    }
+
     /**
      * Returns the stats of the cache
      *
@@ -200,7 +301,13 @@ public class KNNIndexCache implements Closeable {
         return statValues;
     }
 
-    protected Set<String> getGraphNamesForIndex(String indexName) {
+    /**
+     * Returns the paths of the graphs of the given index that are in the cache
+     *
+     * @param indexName name of the index
+     * @return Set of the paths of the cached graphs of the index
+     */
+    public Set<String> getGraphNamesForIndex(String indexName) {
         return cache.asMap().values().stream()
                 .filter(knnIndexCacheEntry -> indexName.equals(knnIndexCacheEntry.getEsIndexName()))
                 .map(KNNIndexCacheEntry::getIndexPathUrl)
@@ -213,7 +320,8 @@ public class KNNIndexCache implements Closeable {
      * @return Weight of the cache in kilobytes
      */
     public Long getWeightInKilobytes() {
-        return cache.asMap().values().stream().map(KNNIndexCacheEntry::getKnnIndex).mapToLong(KNNIndex::getIndexSize).sum();
+        return cache.asMap().values().stream().map(KNNIndexCacheEntry::getKnnIndex)
+                .mapToLong(KNNIndexHandle::getIndexSize).sum();
     }
 
     /**
@@ -225,7 +333,7 @@ public class KNNIndexCache implements Closeable {
     public Long getWeightInKilobytes(final String indexName) {
         return cache.asMap().values().stream()
                 .filter(knnIndexCacheEntry -> indexName.equals(knnIndexCacheEntry.getEsIndexName()))
-                .map(KNNIndexCacheEntry::getKnnIndex).mapToLong(KNNIndex::getIndexSize).sum();
+                .map(KNNIndexCacheEntry::getKnnIndex).mapToLong(KNNIndexHandle::getIndexSize).sum();
     }
 
     /**
@@ -237,6 +345,15 @@ public class KNNIndexCache implements Closeable {
         return 100 * getWeightInKilobytes() / (float) getCircuitBreakerLimit().getKb();
     }
 
+    /**
+     * Returns the memory accounted with the k-NN breaker for the graphs in the cache
+     *
+     * @return size of the graphs in the cache in bytes
+     */
+    public long getGraphMemoryInBytes() {
+        return cache.asMap().values().stream().mapToLong(KNNIndexCacheEntry::getGraphSizeInBytes).sum();
+    }
+
     /**
      * Returns the how much space an index is taking up in the cache is as a percentage of the total cache capacity
      * @param indexName name of the index
@@ -256,12 +373,15 @@ public class KNNIndexCache implements Closeable {
     }
 
     /**
-     * Sets cache capacity reached
+     * Sets cache capacity reached. Transitions are reported to the master, which maintains the
+     * knn.circuit_breaker.triggered flag.
      *
      * @param value Boolean value to set cache Capacity Reached to
      */
     public void setCacheCapacityReached(Boolean value) {
-        cacheCapacityReached.set(value);
+        if (cacheCapacityReached.getAndSet(value) != value) {
+            KNNCircuitBreaker.getInstance().onCacheCapacityStateChange();
+        }
     }
 
     /**
@@ -283,57 +403,71 @@ public class KNNIndexCache implements Closeable {
     }
 
     /**
-     * Loads k-NN Lucene index to memory. Registers the location of the serialized graph with ResourceWatcher.
+     * Loads k-NN Lucene index to memory.
      *
      * @param indexPathUrl path for serialized k-NN segment
      * @param indexName index name
-     * @return KNNIndex holding the heap pointer of the loaded graph
-     * @throws Exception Exception could occur when registering the index path
-     * to Resource watcher or if the JNI call throws
+     * @return KNNIndexHandle holding the heap pointer of the loaded graph
+     * @throws Exception Exception could occur if the JNI call throws
+     * @throws org.elasticsearch.common.breaker.CircuitBreakingException if the graph does not fit in the k-NN memory limit
      */
     public KNNIndexCacheEntry loadIndex(String indexPathUrl, String indexName) throws Exception {
+        return loadIndex(indexPathUrl, indexName, null);
+    }
+
+    /**
+     * Loads k-NN Lucene index to memory.
+     *
+     * @param indexPathUrl path for serialized k-NN segment
+     * @param indexName index name
+     * @param spaceType space type the graph was built with, or null to use the space type of the index
+     * @return KNNIndexHandle holding the heap pointer of the loaded graph
+     * @throws Exception Exception could occur if the JNI call throws
+     * @throws org.elasticsearch.common.breaker.CircuitBreakingException if the graph does not fit in the k-NN memory limit
+     */
+    public KNNIndexCacheEntry loadIndex(String indexPathUrl, String indexName, @Nullable String spaceType)
+            throws Exception {
         if(Strings.isNullOrEmpty(indexPathUrl))
             throw new IllegalStateException("indexPath is null while performing load index");
         logger.debug("[KNN] Loading index: {}", indexPathUrl);
         Path indexPath = Paths.get(indexPathUrl);
-        FileWatcher fileWatcher = new FileWatcher(indexPath);
-        fileWatcher.addListener(KNN_INDEX_FILE_DELETED_LISTENER);
-
-        // Calling init() on the FileWatcher will bootstrap initial state that indicates whether or not the file
-        // is present. If it is not present at time of init(), then KNNIndex.loadIndex will fail and we won't cache
-        // the entry
-        fileWatcher.init();
 
-        final KNNIndex knnIndex = KNNIndex.loadIndex(indexPathUrl, getQueryParams(indexName), SpaceTypes.getValueByKey(KNNSettings.getSpaceType(indexName)));
+        // Account the graph with the k-NN breaker before it is allocated in native memory
+        final long graphSizeInBytes = indexPath.toFile().length();
+        KNNCircuitBreaker.getInstance().addGraphMemoryAndMaybeBreak(graphSizeInBytes, getGraphMemoryInBytes(),
+                indexPathUrl);
 
-        // TODO verify that this is safe - ideally we'd explicitly ensure that the FileWatcher is only checked
-        // after the guava cache has finished loading the key to avoid a race condition where the watcher
-        // causes us to invalidate an entry before the key has been fully loaded.
-        final WatcherHandle<FileWatcher> watcherHandle = resourceWatcherService.add(fileWatcher);
+        final KNNIndexHandle knnIndex;
+        try {
+            knnIndex = KNNEngine.getEngineOfGraph(indexPathUrl).loadIndex(indexPathUrl, getQueryParams(indexName),
+                    spaceType != null ? spaceType : KNNSettings.getSpaceType(indexName));
+        } catch (Exception e) {
+            KNNCircuitBreaker.getInstance().addWithoutBreaking(-graphSizeInBytes);
+            throw e;
+        }
 
-        return new KNNIndexCacheEntry(knnIndex, indexPathUrl, indexName, watcherHandle);
+        return new KNNIndexCacheEntry(knnIndex, indexPathUrl, indexName, graphSizeInBytes);
     }
 
     /**
      * KNNIndexCacheEntry is the value type for entries in the cache held by {@link KNNIndexCache}.
-     * It holds a reference to both the KNNIndex and the WatcherHandle so that each can be cleaned up
-     * upon expiration of the cache.
+     * It holds a reference to the KNNIndexHandle so that it can be cleaned up upon expiration of the cache.
      */
     private static class KNNIndexCacheEntry {
-        private final KNNIndex knnIndex;
+        private final KNNIndexHandle knnIndex;
         private final String indexPathUrl;
         private final String esIndexName;
-        private final WatcherHandle<FileWatcher> fileWatcherHandle;
+        private final long graphSizeInBytes;
 
-        private KNNIndexCacheEntry(final KNNIndex knnIndex, final String indexPathUrl, final String esIndexName,
-                                   final WatcherHandle<FileWatcher> fileWatcherHandle) {
+        private KNNIndexCacheEntry(final KNNIndexHandle knnIndex, final String indexPathUrl, final String esIndexName,
+                                   final long graphSizeInBytes) {
             this.knnIndex = knnIndex;
             this.indexPathUrl = indexPathUrl;
             this.esIndexName = esIndexName;
-            this.fileWatcherHandle = fileWatcherHandle;
+            this.graphSizeInBytes = graphSizeInBytes;
         }
 
-        private KNNIndex getKnnIndex() {
+        private KNNIndexHandle getKnnIndex() {
             return knnIndex;
         }
 
@@ -345,19 +479,11 @@ public class KNNIndexCache implements Closeable {
             return esIndexName;
         }
 
-        private WatcherHandle<FileWatcher> getFileWatcherHandle() {
-            return fileWatcherHandle;
+        private long getGraphSizeInBytes() {
+            return graphSizeInBytes;
         }
     }
 
-    private static FileChangesListener KNN_INDEX_FILE_DELETED_LISTENER = new FileChangesListener() {
-        @Override
-        public void onFileDeleted(Path indexFilePath) {
-            logger.debug("[KNN] Invalidated because file {} is deleted", indexFilePath.toString());
-            getInstance().cache.invalidate(indexFilePath.toString());
-        }
-    };
-
     private String[] getQueryParams(String indexName) {
         return new String[] {"efSearch=" + KNNSettings.getEfSearchParam(indexName)};
     }
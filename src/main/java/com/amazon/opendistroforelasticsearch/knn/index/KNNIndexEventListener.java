@@ -0,0 +1,67 @@
+/*
+ *   Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.knn.index;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.shard.IndexEventListener;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.index.shard.ShardId;
+
+import java.util.List;
+
+/**
+ * Listens to the lifecycle of the shards of k-NN indices. The query history of a shard is persisted when the shard
+ * is closed and, when the shard is started again, the graphs of its recently queried fields are prefetched.
+ */
+public class KNNIndexEventListener implements IndexEventListener {
+    private static Logger logger = LogManager.getLogger(KNNIndexEventListener.class);
+
+    @Override
+    public void afterIndexShardStarted(IndexShard indexShard) {
+        if (!KNNSettings.isPrefetchEnabled()) {
+            return;
+        }
+
+        // Listeners run on the cluster applier thread, so reading the history file is left to the generic pool too
+        indexShard.getThreadPool().generic().execute(() -> {
+            try {
+                KNNQueryHistory.getInstance().load(indexShard.shardId(), indexShard.shardPath().getDataPath());
+                List<String> hotFields = KNNQueryHistory.getInstance().getHotFields(indexShard.shardId());
+                if (hotFields.isEmpty()) {
+                    return;
+                }
+                int loaded = new KNNIndexShard(indexShard).prefetch(hotFields).size();
+                logger.info("[KNN] Prefetched " + loaded + " graphs of shard " + indexShard.shardId() + " for fields "
+                        + hotFields);
+            } catch (Exception e) {
+                logger.warn("[KNN] Failed to prefetch graphs of shard " + indexShard.shardId(), e);
+            }
+        });
+    }
+
+    @Override
+    public void beforeIndexShardClosed(ShardId shardId, @Nullable IndexShard indexShard, Settings indexSettings) {
+        // The history is only loaded back when prefetch is enabled, so there is no point writing it otherwise
+        if (indexShard == null || !KNNSettings.isPrefetchEnabled()) {
+            KNNQueryHistory.getInstance().remove(shardId);
+            return;
+        }
+        KNNQueryHistory.getInstance().persist(shardId, indexShard.shardPath().getDataPath());
+    }
+}
@@ -15,10 +15,14 @@
 
 package com.amazon.opendistroforelasticsearch.knn.index;
 
+import com.amazon.opendistroforelasticsearch.knn.common.KNNConstants;
 import com.amazon.opendistroforelasticsearch.knn.index.codec.KNNCodecUtil;
-import com.amazon.opendistroforelasticsearch.knn.index.v2011.KNNIndex;
+import com.amazon.opendistroforelasticsearch.knn.index.util.KNNIndexHandle;
+import com.amazon.opendistroforelasticsearch.knn.plugin.transport.KNNWarmupShardTask;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FieldInfos;
 import org.apache.lucene.index.FilterLeafReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReaderContext;
@@ -26,15 +30,24 @@ import org.apache.lucene.index.SegmentInfo;
 import org.apache.lucene.index.SegmentReader;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.FilterDirectory;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.ShardPath;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 /**
@@ -77,24 +90,171 @@ public class KNNIndexShard {
     }
 
     /**
-     * Load all of the HNSW graphs for this shard into the cache. Note that getIndices is called to prevent loading
-     * in duplicates.
+     * Load all of the HNSW graphs for this shard into the cache. Note that the cache prevents loading in duplicates.
      *
-     * @return a List of KNNIndex's from this shard that are in the cache after this operation.
+     * @return a List of KNNIndexHandle's from this shard that are in the cache after this operation.
      * @throws IOException Thrown when getting the HNSW Paths to be loaded in
      */
-    public List<KNNIndex> warmup() throws IOException {
+    public List<KNNIndexHandle> warmup() throws IOException {
+        return warmup(null);
+    }
+
+    /**
+     * Load the HNSW graphs for this shard into the cache, as long as they fit in its free capacity: warming up more
+     * graphs than the cache can hold would only evict the graphs loaded moments before. Graphs of the fields queried
+     * the most recently come first, then the largest graphs. The graphs that do not fit are skipped and reported to
+     * the task. The graphs are loaded in parallel on the knn_warmup thread pool, whose size bounds the number of
+     * graphs loaded at the same time on the node.
+     *
+     * @param task task of the warmup of this shard to report progress to, or null
+     * @return a List of KNNIndexHandle's from this shard that are in the cache after this operation.
+     * @throws IOException Thrown when getting the HNSW Paths to be loaded in
+     */
+    public List<KNNIndexHandle> warmup(@Nullable KNNWarmupShardTask task) throws IOException {
         logger.info("[KNN] Warming up index: " + getIndexName());
         Engine.Searcher searcher = indexShard.acquireSearcher("knn-warmup");
-        List<KNNIndex> indices;
         try {
-            indices = knnIndexCache.getIndices(getHNSWPaths(searcher.getIndexReader()), getIndexName());
+            Map<String, String> spaceTypes = new HashMap<>();
+            Map<String, IndexReader.CacheHelper> coreCacheHelpers = getCoreCacheHelpersByHNSWPath(
+                    searcher.getIndexReader(), spaceTypes);
+            List<String> hnswPaths = new ArrayList<>();
+            int skippedGraphs = 0;
+            long skippedSizeInKB = 0;
+            long freeCapacityInKB = knnIndexCache.getFreeCapacityInKilobytes();
+            for (String hnswPath : sortByWarmupPriority(new ArrayList<>(coreCacheHelpers.keySet()))) {
+                if (knnIndexCache.isGraphLoaded(hnswPath)) {
+                    hnswPaths.add(hnswPath);
+                    continue;
+                }
+                long graphSizeInKB = KNNIndexCache.getGraphSizeInKilobytes(hnswPath);
+                if (graphSizeInKB <= freeCapacityInKB) {
+                    freeCapacityInKB -= graphSizeInKB;
+                    hnswPaths.add(hnswPath);
+                } else {
+                    skippedGraphs++;
+                    skippedSizeInKB += graphSizeInKB;
+                }
+            }
+
+            if (skippedGraphs > 0) {
+                logger.info("[KNN] Skipping warmup of " + skippedGraphs + " graphs (" + skippedSizeInKB + " KB) of index: "
+                        + getIndexName() + " as they do not fit in the cache");
+            }
+            if (task != null) {
+                task.setTotalGraphs(hnswPaths.size());
+                task.setSkippedGraphs(skippedGraphs, skippedSizeInKB);
+            }
+            return loadGraphs(hnswPaths, coreCacheHelpers, spaceTypes, task);
+        } finally {
+            searcher.close();
+        }
+    }
+
+    private List<String> sortByWarmupPriority(List<String> hnswPaths) {
+        List<String> hotFields = KNNQueryHistory.getInstance().getHotFields(indexShard.shardId());
+        Map<String, Integer> fieldRanks = new HashMap<>();
+        Map<String, Long> graphSizes = new HashMap<>();
+        for (String hnswPath : hnswPaths) {
+            int rank = hotFields.size();
+            for (int i = 0; i < hotFields.size(); i++) {
+                if (KNNCodecUtil.isGraphFileOfField(hnswPath, hotFields.get(i))) {
+                    rank = i;
+                    break;
+                }
+            }
+            fieldRanks.put(hnswPath, rank);
+            graphSizes.put(hnswPath, KNNIndexCache.getGraphSizeInKilobytes(hnswPath));
+        }
+
+        List<String> sortedPaths = new ArrayList<>(hnswPaths);
+        sortedPaths.sort(Comparator.<String>comparingInt(fieldRanks::get)
+                .thenComparing(Comparator.<String>comparingLong(graphSizes::get).reversed()));
+        return sortedPaths;
+    }
+
+    private List<KNNIndexHandle> loadGraphs(List<String> hnswPaths,
+                                            Map<String, IndexReader.CacheHelper> coreCacheHelpers,
+                                            Map<String, String> spaceTypes, KNNWarmupShardTask task) throws IOException {
+        ExecutorService executor = indexShard.getThreadPool().executor(KNNConstants.KNN_WARMUP_THREAD_POOL);
+        List<Future<KNNIndexHandle>> futures = new ArrayList<>(hnswPaths.size());
+        for (String hnswPath : hnswPaths) {
+            futures.add(executor.submit(() -> {
+                KNNIndexHandle knnIndex = knnIndexCache.getIndex(hnswPath, getIndexName(), spaceTypes.get(hnswPath),
+                        coreCacheHelpers.get(hnswPath));
+                if (task != null) {
+                    task.onGraphLoaded(knnIndex.getIndexSize());
+                }
+                return knnIndex;
+            }));
+        }
+
+        List<KNNIndexHandle> indices = new ArrayList<>(futures.size());
+        try {
+            for (Future<KNNIndexHandle> future : futures) {
+                indices.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while warming up index: " + getIndexName(), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException("Failed to warm up index: " + getIndexName(), e.getCause());
+        }
+        return indices;
+    }
+
+    /**
+     * Load the HNSW graphs of the given fields of this shard into the cache, field after field, as long as they fit
+     * in the free capacity of the cache. Unlike warmup, this never evicts graphs that are already loaded.
+     *
+     * @param fieldNames names of the fields to load the graphs of, in order of priority
+     * @return a List of KNNIndexHandle's from this shard that are in the cache after this operation.
+     * @throws IOException Thrown when getting the HNSW Paths to be loaded in
+     */
+    public List<KNNIndexHandle> prefetch(List<String> fieldNames) throws IOException {
+        List<KNNIndexHandle> indices = new ArrayList<>();
+        Engine.Searcher searcher = indexShard.acquireSearcher("knn-prefetch");
+        try {
+            Map<String, String> spaceTypes = new HashMap<>();
+            Map<String, IndexReader.CacheHelper> coreCacheHelpers = getCoreCacheHelpersByHNSWPath(
+                    searcher.getIndexReader(), spaceTypes);
+            for (String fieldName : fieldNames) {
+                for (String hnswPath : coreCacheHelpers.keySet()) {
+                    if (!KNNCodecUtil.isGraphFileOfField(hnswPath, fieldName)) {
+                        continue;
+                    }
+                    if (!knnIndexCache.fitsInFreeCapacity(hnswPath)) {
+                        logger.info("[KNN] Stopping prefetch of index: " + getIndexName() + " as the cache is full");
+                        return indices;
+                    }
+                    indices.add(knnIndexCache.getIndex(hnswPath, getIndexName(), spaceTypes.get(hnswPath),
+                            coreCacheHelpers.get(hnswPath)));
+                }
+            }
         } finally {
             searcher.close();
         }
         return indices;
     }
 
+    /**
+     * Evict the HNSW graphs of this shard from the cache, releasing their native memory. The graphs are loaded again
+     * by the next search or warmup.
+     *
+     * @return number of graphs evicted
+     */
+    public int clearCache() {
+        Path indexPath = shardPath().resolveIndex();
+        List<String> hnswPaths = knnIndexCache.getGraphNamesForIndex(getIndexName()).stream()
+                .filter(hnswPath -> Paths.get(hnswPath).startsWith(indexPath))
+                .collect(Collectors.toList());
+        logger.info("[KNN] Evicting " + hnswPaths.size() + " graphs of index: " + getIndexName());
+        hnswPaths.forEach(knnIndexCache::evictGraphFromCache);
+        return hnswPaths.size();
+    }
+
     /**
      * For the given shard, get all of its HNSW paths
      *
@@ -105,22 +265,78 @@ public class KNNIndexShard {
     public List<String> getHNSWPaths(IndexReader indexReader) throws IOException {
         List<String> hnswFiles = new ArrayList<>();
         for (LeafReaderContext leafReaderContext : indexReader.leaves()) {
-            SegmentReader reader = (SegmentReader) FilterLeafReader.unwrap(leafReaderContext.reader());
-            Path shardPath = ((FSDirectory) FilterDirectory.unwrap(reader.directory())).getDirectory();
-            hnswFiles.addAll(reader.getSegmentInfo().files().stream()
-                    .filter(fileName -> fileName.endsWith(getHNSWFileExtension(reader.getSegmentInfo().info)))
-                    .map(fileName -> shardPath.resolve(fileName).toString())
-                    .filter(Objects::nonNull)
-                    .collect(Collectors.toList()));
+            hnswFiles.addAll(getSegmentHNSWPaths(leafReaderContext));
         }
         return hnswFiles;
     }
 
+    /**
+     * For the given shard, get all of its HNSW paths along with the core cache helper of their segment, which ties
+     * the graphs in the cache to the lifecycle of the segment
+     *
+     * @param indexReader IndexReader to read the file paths for the shard
+     * @param spaceTypes Map filled with the space types of the HNSW Paths
+     * @return Map of HNSW Paths to the core cache helpers of their segments, in segment order
+     * @throws IOException Thrown when the SegmentReader is attempting to read the segments files
+     */
+    private Map<String, IndexReader.CacheHelper> getCoreCacheHelpersByHNSWPath(IndexReader indexReader,
+                                                                            Map<String, String> spaceTypes)
+            throws IOException {
+        Map<String, IndexReader.CacheHelper> coreCacheHelpers = new LinkedHashMap<>();
+        for (LeafReaderContext leafReaderContext : indexReader.leaves()) {
+            IndexReader.CacheHelper coreCacheHelper = FilterLeafReader.unwrap(leafReaderContext.reader())
+                    .getCoreCacheHelper();
+            Map<String, String> segmentSpaceTypes = getSegmentSpaceTypesByHNSWPath(leafReaderContext);
+            for (String hnswPath : segmentSpaceTypes.keySet()) {
+                coreCacheHelpers.put(hnswPath, coreCacheHelper);
+            }
+            spaceTypes.putAll(segmentSpaceTypes);
+        }
+        return coreCacheHelpers;
+    }
+
+    /**
+     * For the given segment, get all of its HNSW paths
+     *
+     * @param leafReaderContext LeafReaderContext of the segment
+     * @return List of HNSW Paths
+     * @throws IOException Thrown when the SegmentReader is attempting to read the segments files
+     */
+    public static List<String> getSegmentHNSWPaths(LeafReaderContext leafReaderContext) throws IOException {
+        SegmentReader reader = (SegmentReader) FilterLeafReader.unwrap(leafReaderContext.reader());
+        Path shardPath = ((FSDirectory) FilterDirectory.unwrap(reader.directory())).getDirectory();
+        return reader.getSegmentInfo().files().stream()
+                .filter(fileName -> fileName.endsWith(getHNSWFileExtension(reader.getSegmentInfo().info)))
+                .map(fileName -> shardPath.resolve(fileName).toString())
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * For the given segment, get all of its HNSW paths along with the space type of the field they were built for.
+     * Fields of one index may have different space types, set by the method of their mapping.
+     *
+     * @param leafReaderContext LeafReaderContext of the segment
+     * @return Map of HNSW Paths to their space types, null when the field does not record its space type
+     * @throws IOException Thrown when the SegmentReader is attempting to read the segments files
+     */
+    public static Map<String, String> getSegmentSpaceTypesByHNSWPath(LeafReaderContext leafReaderContext)
+            throws IOException {
+        FieldInfos fieldInfos = leafReaderContext.reader().getFieldInfos();
+        Map<String, String> spaceTypes = new LinkedHashMap<>();
+        for (String hnswPath : getSegmentHNSWPaths(leafReaderContext)) {
+            String fieldName = KNNCodecUtil.getGraphFieldName(hnswPath);
+            FieldInfo graphField = fieldName == null ? null : fieldInfos.fieldInfo(fieldName);
+            spaceTypes.put(hnswPath, graphField == null ? null : graphField.getAttribute(KNNConstants.SPACE_TYPE));
+        }
+        return spaceTypes;
+    }
+
     private ShardPath shardPath() {
         return indexShard.shardPath();
     }
 
-    private String getHNSWFileExtension(SegmentInfo info) {
+    private static String getHNSWFileExtension(SegmentInfo info) {
         return info.getUseCompoundFile() ? KNNCodecUtil.HNSW_COMPOUND_EXTENSION : KNNCodecUtil.HNSW_EXTENSION;
     }
 }
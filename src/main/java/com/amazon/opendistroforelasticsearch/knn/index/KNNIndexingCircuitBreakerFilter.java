@@ -0,0 +1,222 @@
+/*
+ *   Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.knn.index;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemRequest;
+import org.elasticsearch.action.bulk.BulkShardRequest;
+import org.elasticsearch.action.bulk.TransportShardBulkAction;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.support.ActionFilter;
+import org.elasticsearch.action.support.ActionFilterChain;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexMetadata;
+import org.elasticsearch.cluster.metadata.MappingMetadata;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.tasks.Task;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Rejects writes of knn_vector fields while the circuit breaker is triggered. When knn.circuit_breaker.scope is
+ * "node", only writes whose primary shard is on a node with the circuit breaker triggered are rejected, otherwise
+ * all writes of knn_vector fields are. A shard level bulk request is rejected as a whole if one of its items indexes
+ * or updates a knn_vector field, while requests writing documents without vectors proceed. The check runs on the
+ * coordinating node for each shard level bulk request, so that writes to shards on other nodes proceed and replicas
+ * never reject operations accepted by their primary. The rejection is a CircuitBreakingException, reported with a
+ * 429 status code that clients retry with backoff. Rejecting writes later, while the document is parsed, would
+ * report the exception as a 400 mapper parsing failure.
+ */
+public class KNNIndexingCircuitBreakerFilter implements ActionFilter {
+
+    private final Supplier<ClusterService> clusterServiceSupplier;
+
+    public KNNIndexingCircuitBreakerFilter(Supplier<ClusterService> clusterServiceSupplier) {
+        this.clusterServiceSupplier = clusterServiceSupplier;
+    }
+
+    @Override
+    public int order() {
+        return 0;
+    }
+
+    @Override
+    public <Request extends ActionRequest, Response extends ActionResponse> void apply(Task task, String action,
+            Request request, ActionListener<Response> listener, ActionFilterChain<Request, Response> chain) {
+        if (TransportShardBulkAction.ACTION_NAME.equals(action) && request instanceof BulkShardRequest) {
+            CircuitBreakingException rejection = getRejection((BulkShardRequest) request);
+            if (rejection != null) {
+                listener.onFailure(rejection);
+                return;
+            }
+        }
+        chain.proceed(task, action, request, listener);
+    }
+
+    /**
+     * Returns the exception to reject the request with, or null if the request proceeds
+     */
+    private CircuitBreakingException getRejection(BulkShardRequest request) {
+        if (KNNSettings.isNodeScopedCircuitBreaker()) {
+            String triggeredNode = getTriggeredPrimaryNode(request);
+            if (triggeredNode == null) {
+                return null;
+            }
+            return KNNCircuitBreaker.getInstance().newCircuitBreakingException(String.format(
+                    "Indexing into [%s] is rejected as circuit breaker triggered on node [%s] holding the primary" +
+                            " shard. Retry later or check _opendistro/_knn/stats for detailed state",
+                    request.shardId(), triggeredNode));
+        }
+
+        ClusterService clusterService = clusterServiceSupplier.get();
+        if (!KNNSettings.isCircuitBreakerTriggered() || clusterService == null
+                || !isKNNIndexWrite(request, clusterService.state())) {
+            return null;
+        }
+        return KNNCircuitBreaker.getInstance().newCircuitBreakingException("Indexing knn vector fields is rejected" +
+                " as circuit breaker triggered. Check _opendistro/_knn/stats for detailed state");
+    }
+
+    /**
+     * Returns the node holding the primary of the shard if its circuit breaker is triggered and the request writes
+     * documents to a k-NN index, null otherwise
+     */
+    private String getTriggeredPrimaryNode(BulkShardRequest request) {
+        List<String> triggeredNodes = KNNSettings.getCircuitBreakerTriggeredNodes();
+        ClusterService clusterService = clusterServiceSupplier.get();
+        if (triggeredNodes.isEmpty() || clusterService == null) {
+            return null;
+        }
+
+        ShardId shardId = request.shardId();
+        ClusterState clusterState = clusterService.state();
+        if (!clusterState.routingTable().hasIndex(shardId.getIndex())) {
+            return null;
+        }
+
+        ShardRouting primary = clusterState.routingTable().shardRoutingTable(shardId).primaryShard();
+        if (primary == null || primary.currentNodeId() == null || !triggeredNodes.contains(primary.currentNodeId())
+                || !isKNNIndexWrite(request, clusterState)) {
+            return null;
+        }
+        return primary.currentNodeId();
+    }
+
+    /**
+     * Returns whether the request indexes or updates knn_vector fields of a k-NN index
+     */
+    private boolean isKNNIndexWrite(BulkShardRequest request, ClusterState clusterState) {
+        IndexMetadata indexMetadata = clusterState.metadata().index(request.shardId().getIndex());
+        if (indexMetadata == null || !KNNSettings.IS_KNN_INDEX_SETTING.get(indexMetadata.getSettings())) {
+            return false;
+        }
+
+        Set<String> knnFields = getKNNFields(indexMetadata);
+        if (knnFields.isEmpty()) {
+            return false;
+        }
+        for (BulkItemRequest item : request.items()) {
+            if (item != null && writesKNNField(item.request(), knnFields)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the full paths of the knn_vector fields in the mapping of the index. Vector fields cannot be mapped
+     * dynamically, so a document can only write the ones already mapped.
+     */
+    private Set<String> getKNNFields(IndexMetadata indexMetadata) {
+        Set<String> knnFields = new HashSet<>();
+        MappingMetadata mapping = indexMetadata.mapping();
+        if (mapping != null) {
+            addKNNFields(mapping.sourceAsMap(), "", knnFields);
+        }
+        return knnFields;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addKNNFields(Map<String, Object> mapping, String prefix, Set<String> knnFields) {
+        Object properties = mapping.get("properties");
+        if (!(properties instanceof Map)) {
+            return;
+        }
+        for (Map.Entry<String, Object> field : ((Map<String, Object>) properties).entrySet()) {
+            if (!(field.getValue() instanceof Map)) {
+                continue;
+            }
+            Map<String, Object> fieldMapping = (Map<String, Object>) field.getValue();
+            if (KNNVectorFieldMapper.CONTENT_TYPE.equals(fieldMapping.get("type"))) {
+                knnFields.add(prefix + field.getKey());
+            } else {
+                addKNNFields(fieldMapping, prefix + field.getKey() + ".", knnFields);
+            }
+        }
+    }
+
+    /**
+     * Deletes free memory, so only index and update requests with a knn_vector field in their source are rejected.
+     * Scripted updates may set any field, so they are rejected too.
+     */
+    private boolean writesKNNField(DocWriteRequest<?> request, Set<String> knnFields) {
+        if (request instanceof IndexRequest) {
+            return hasKNNField(((IndexRequest) request).sourceAsMap(), "", knnFields);
+        }
+        if (request instanceof UpdateRequest) {
+            UpdateRequest updateRequest = (UpdateRequest) request;
+            return updateRequest.script() != null
+                    || (updateRequest.doc() != null && writesKNNField(updateRequest.doc(), knnFields))
+                    || (updateRequest.upsertRequest() != null
+                            && writesKNNField(updateRequest.upsertRequest(), knnFields));
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the source has a value for one of the fields, whether the path of the field is written with
+     * objects or with dots
+     */
+    @SuppressWarnings("unchecked")
+    private boolean hasKNNField(Object source, String path, Set<String> knnFields) {
+        if (source instanceof List) {
+            for (Object value : (List<Object>) source) {
+                if (hasKNNField(value, path, knnFields)) {
+                    return true;
+                }
+            }
+        } else if (source instanceof Map) {
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) source).entrySet()) {
+                String fieldPath = path + entry.getKey();
+                if (knnFields.contains(fieldPath) || hasKNNField(entry.getValue(), fieldPath + ".", knnFields)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ *   Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.knn.index;
+
+import com.amazon.opendistroforelasticsearch.knn.common.KNNConstants;
+import com.amazon.opendistroforelasticsearch.knn.index.util.KNNEngine;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+
+import java.util.Map;
+
+/**
+ * Method of a knn_vector field, set by the "method" block of its mapping:
+ * <pre>
+ * "method": {
+ *   "name": "hnsw",
+ *   "space_type": "cosinesimil",
+ *   "engine": "nmslib",
+ *   "parameters": {
+ *     "m": 32,
+ *     "ef_construction": 256
+ *   }
+ * }
+ * </pre>
+ * Every entry is optional. The space type and the parameters that are not set fall back to the index settings, so
+ * that fields of one index can be tuned one by one.
+ */
+public class KNNMethodContext {
+
+    private static final int MIN_M = 2;
+    private static final int MIN_EF_CONSTRUCTION = 2;
+
+    private final String spaceType;
+    private final String engine;
+    private final Integer m;
+    private final Integer efConstruction;
+
+    private KNNMethodContext(String spaceType, String engine, Integer m, Integer efConstruction) {
+        this.spaceType = spaceType;
+        this.engine = engine;
+        this.m = m;
+        this.efConstruction = efConstruction;
+    }
+
+    /**
+     * Parses and validates the method block of a field mapping
+     *
+     * @param method method block, empty when the mapping has none
+     * @param fieldName name of the field, for error messages
+     * @return method of the field
+     * @throws IllegalArgumentException if the block holds an unknown entry or an invalid value
+     */
+    public static KNNMethodContext parse(Map<String, Object> method, String fieldName) {
+        String spaceType = null;
+        String engine = KNNEngine.DEFAULT.getName();
+        Integer m = null;
+        Integer efConstruction = null;
+
+        for (Map.Entry<String, Object> entry : method.entrySet()) {
+            String key = entry.getKey();
+            Object value = entry.getValue();
+            if (KNNConstants.METHOD_NAME.equals(key)) {
+                if (!KNNConstants.METHOD_HNSW.equals(XContentMapValues.nodeStringValue(value, null))) {
+                    throw invalidValue(key, value, fieldName);
+                }
+            } else if (KNNConstants.METHOD_SPACE_TYPE.equals(key)) {
+                spaceType = XContentMapValues.nodeStringValue(value, null);
+                if (!SpaceTypes.contains(spaceType)) {
+                    throw invalidValue(key, value, fieldName);
+                }
+            } else if (KNNConstants.KNN_ENGINE.equals(key)) {
+                engine = XContentMapValues.nodeStringValue(value, null);
+                if (!KNNEngine.contains(engine)) {
+                    throw invalidValue(key, value, fieldName);
+                }
+            } else if (KNNConstants.METHOD_PARAMETERS.equals(key)) {
+                Map<String, Object> parameters = XContentMapValues.nodeMapValue(value,
+                        KNNConstants.METHOD_PARAMETERS);
+                for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+                    if (KNNConstants.METHOD_PARAMETER_M.equals(parameter.getKey())) {
+                        m = parseParameter(parameter, MIN_M, fieldName);
+                    } else if (KNNConstants.METHOD_PARAMETER_EF_CONSTRUCTION.equals(parameter.getKey())) {
+                        efConstruction = parseParameter(parameter, MIN_EF_CONSTRUCTION, fieldName);
+                    } else {
+                        throw new IllegalArgumentException("Unknown \"" + KNNConstants.METHOD_PARAMETERS +
+                                "\" entry [" + parameter.getKey() + "] for vector: " + fieldName);
+                    }
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown \"" + KNNConstants.METHOD + "\" entry [" + key +
+                        "] for vector: " + fieldName);
+            }
+        }
+        if (spaceType != null && !KNNEngine.getEngine(engine).isSpaceTypeSupported(spaceType)) {
+            throw new IllegalArgumentException("\"" + KNNConstants.METHOD_SPACE_TYPE + "\": " + spaceType +
+                    " is not supported by \"" + KNNConstants.KNN_ENGINE + "\": " + engine +
+                    " for vector: " + fieldName);
+        }
+        return new KNNMethodContext(spaceType, engine, m, efConstruction);
+    }
+
+    private static int parseParameter(Map.Entry<String, Object> parameter, int min, String fieldName) {
+        int value = XContentMapValues.nodeIntegerValue(parameter.getValue());
+        if (value < min) {
+            throw new IllegalArgumentException("\"" + parameter.getKey() + "\" must be at least " + min +
+                    " for vector: " + fieldName);
+        }
+        return value;
+    }
+
+    private static IllegalArgumentException invalidValue(String key, Object value, String fieldName) {
+        return new IllegalArgumentException("Invalid \"" + KNNConstants.METHOD + "\" entry [" + key + "]: " + value +
+                " for vector: " + fieldName);
+    }
+
+    /**
+     * @return space type of the field, or null to use the space type of the index
+     */
+    public String getSpaceType() {
+        return spaceType;
+    }
+
+    /**
+     * @return native library building and searching the graphs of the field
+     */
+    public String getEngine() {
+        return engine;
+    }
+
+    /**
+     * @return m of the graphs of the field, or null to use the m of the index
+     */
+    public Integer getM() {
+        return m;
+    }
+
+    /**
+     * @return ef_construction of the graphs of the field, or null to use the ef_construction of the index
+     */
+    public Integer getEfConstruction() {
+        return efConstruction;
+    }
+}
@@ -30,6 +30,7 @@ import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.index.mapper.MappedFieldType;
 import org.elasticsearch.index.query.AbstractQueryBuilder;
 import org.elasticsearch.index.query.QueryShardContext;
+import org.elasticsearch.index.shard.ShardId;
 
 import java.io.IOException;
 import java.util.List;
@@ -42,6 +43,7 @@ public class KNNQueryBuilder extends AbstractQueryBuilder<KNNQueryBuilder> {
     private static Logger logger = LogManager.getLogger(KNNQueryBuilder.class);
     public static final ParseField VECTOR_FIELD = new ParseField("vector");
     public static final ParseField K_FIELD = new ParseField("k");
+    public static final ParseField EXACT_FIELD = new ParseField("exact");
     public static int K_MAX = 10000;
     /**
      * The name for the knn query
@@ -53,6 +55,7 @@ public class KNNQueryBuilder extends AbstractQueryBuilder<KNNQueryBuilder> {
     private final String fieldName;
     private final float[] vector;
     private int k = 0;
+    private boolean exact = false;
 
     /**
      * Constructs a new knn query
@@ -101,6 +104,7 @@ public class KNNQueryBuilder extends AbstractQueryBuilder<KNNQueryBuilder> {
             fieldName = in.readString();
             vector = in.readFloatArray();
             k = in.readInt();
+            exact = in.readBoolean();
         } catch (IOException ex) {
             throw new RuntimeException("[KNN] Unable to create KNNQueryBuilder: " + ex);
         }
@@ -111,6 +115,7 @@ public class KNNQueryBuilder extends AbstractQueryBuilder<KNNQueryBuilder> {
         List<Object> vector = null;
         float boost = AbstractQueryBuilder.DEFAULT_BOOST;
         int k = 0;
+        boolean exact = false;
         String queryName = null;
         String currentFieldName = null;
         XContentParser.Token token;
@@ -131,6 +136,8 @@ public class KNNQueryBuilder extends AbstractQueryBuilder<KNNQueryBuilder> {
                             boost = parser.floatValue();
                         } else if (K_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
                             k = parser.intValue();
+                        } else if (EXACT_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                            exact = parser.booleanValue();
                         } else if (AbstractQueryBuilder.NAME_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
                             queryName = parser.text();
                         } else {
@@ -150,6 +157,7 @@ public class KNNQueryBuilder extends AbstractQueryBuilder<KNNQueryBuilder> {
         }
 
         KNNQueryBuilder knnQuery = new KNNQueryBuilder(fieldName, ObjectsToFloats(vector), k);
+        knnQuery.exact(exact);
         knnQuery.queryName(queryName);
         knnQuery.boost(boost);
         return knnQuery;
@@ -160,6 +168,7 @@ public class KNNQueryBuilder extends AbstractQueryBuilder<KNNQueryBuilder> {
         out.writeString(fieldName);
         out.writeFloatArray(vector);
         out.writeInt(k);
+        out.writeBoolean(exact);
     }
 
     /**
@@ -180,6 +189,21 @@ public class KNNQueryBuilder extends AbstractQueryBuilder<KNNQueryBuilder> {
         return this.k;
     }
 
+    /**
+     * Sets whether the nearest neighbors are found by scoring every document instead of searching the graphs
+     *
+     * @param exact true to run an exact search
+     * @return this query builder
+     */
+    public KNNQueryBuilder exact(boolean exact) {
+        this.exact = exact;
+        return this;
+    }
+
+    public boolean isExact() {
+        return this.exact;
+    }
+
     @Override
     public void doXContent(XContentBuilder builder, Params params) throws IOException {
         builder.startObject(NAME);
@@ -187,6 +211,9 @@ public class KNNQueryBuilder extends AbstractQueryBuilder<KNNQueryBuilder> {
 
         builder.field(VECTOR_FIELD.getPreferredName(), vector);
         builder.field(K_FIELD.getPreferredName(), k);
+        if (exact) {
+            builder.field(EXACT_FIELD.getPreferredName(), exact);
+        }
         printBoostAndQueryName(builder);
         builder.endObject();
         builder.endObject();
@@ -208,6 +235,14 @@ public class KNNQueryBuilder extends AbstractQueryBuilder<KNNQueryBuilder> {
                     ". Dimension should be: " + dimension);
         }
 
+        if (exact) {
+            return new KNNExactQuery(this.fieldName, vector, k);
+        }
+
+        // Queries rewritten outside of a shard, e.g. for validation, have no shard to record the field for
+        if (context.getShardId() >= 0) {
+            KNNQueryHistory.getInstance().record(new ShardId(context.index(), context.getShardId()), this.fieldName);
+        }
         return new KNNQuery(this.fieldName, vector, k, context.index().getName());
     }
 
@@ -215,12 +250,13 @@ public class KNNQueryBuilder extends AbstractQueryBuilder<KNNQueryBuilder> {
     protected boolean doEquals(KNNQueryBuilder other) {
         return Objects.equals(fieldName, other.fieldName) &&
                        Objects.equals(vector, other.vector) &&
-                       Objects.equals(k, other.k);
+                       Objects.equals(k, other.k) &&
+                       exact == other.exact;
     }
 
     @Override
     protected int doHashCode() {
-        return Objects.hash(fieldName, vector, k);
+        return Objects.hash(fieldName, vector, k, exact);
     }
 
     @Override
@@ -0,0 +1,215 @@
+/*
+ *   Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.knn.index;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.index.shard.ShardId;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps track of the k-NN queries served by the shards of this node, per field. A k-NN query searches the graphs of
+ * all segments of the shard for its field, so the history is kept per shard and field rather than per graph, which
+ * also keeps it valid across merges.
+ *
+ * The history of a shard is persisted in its data path when the shard is closed, and used to prefetch the graphs
+ * of its most queried fields when the shard is started again.
+ */
+public class KNNQueryHistory {
+    private static Logger logger = LogManager.getLogger(KNNQueryHistory.class);
+
+    public static final String HISTORY_FILE_NAME = "knn_query_history";
+
+    // Query counts are halved every day, so that recent queries weigh more than old ones
+    static final long HALF_LIFE_MILLIS = TimeUnit.DAYS.toMillis(1);
+    // Fields not queried for a week are dropped
+    static final long RETENTION_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+    private static KNNQueryHistory INSTANCE;
+
+    private final Map<ShardId, Map<String, FieldHistory>> shardHistories = new ConcurrentHashMap<>();
+
+    private KNNQueryHistory() {
+    }
+
+    public static synchronized KNNQueryHistory getInstance() {
+        if (INSTANCE == null) {
+            INSTANCE = new KNNQueryHistory();
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Records a k-NN query against a field of a shard
+     *
+     * @param shardId shard the query is executed on
+     * @param field knn_vector field queried
+     */
+    public void record(ShardId shardId, String field) {
+        shardHistories.computeIfAbsent(shardId, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(field, k -> new FieldHistory(0, System.currentTimeMillis()))
+                .record(System.currentTimeMillis());
+    }
+
+    /**
+     * Returns the fields of the shard that were queried within the retention period, most queried first
+     *
+     * @param shardId shard to get the fields for
+     * @return list of field names
+     */
+    public List<String> getHotFields(ShardId shardId) {
+        Map<String, FieldHistory> fieldHistories = shardHistories.get(shardId);
+        if (fieldHistories == null) {
+            return Collections.emptyList();
+        }
+
+        long now = System.currentTimeMillis();
+        Map<String, Double> scores = new HashMap<>();
+        for (Map.Entry<String, FieldHistory> entry : fieldHistories.entrySet()) {
+            if (now - entry.getValue().getLastAccessMillis() <= RETENTION_MILLIS) {
+                scores.put(entry.getKey(), entry.getValue().getScore(now));
+            }
+        }
+        return scores.entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Loads the persisted history of a shard
+     *
+     * @param shardId shard the history belongs to
+     * @param shardDataPath data path of the shard
+     */
+    public void load(ShardId shardId, Path shardDataPath) {
+        Path historyFile = shardDataPath.resolve(HISTORY_FILE_NAME);
+        if (!Files.exists(historyFile)) {
+            return;
+        }
+
+        Map<String, FieldHistory> fieldHistories = shardHistories.computeIfAbsent(shardId, k -> new ConcurrentHashMap<>());
+        try (BufferedReader reader = Files.newBufferedReader(historyFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] tokens = line.split("\t");
+                if (tokens.length != 3) {
+                    continue;
+                }
+                fieldHistories.putIfAbsent(tokens[0], new FieldHistory(Double.parseDouble(tokens[1]),
+                        Long.parseLong(tokens[2])));
+            }
+        } catch (IOException | NumberFormatException e) {
+            logger.warn("[KNN] Failed to load query history of shard " + shardId, e);
+        }
+    }
+
+    /**
+     * Persists the history of a shard in its data path and drops it from memory
+     *
+     * @param shardId shard the history belongs to
+     * @param shardDataPath data path of the shard
+     */
+    public void persist(ShardId shardId, Path shardDataPath) {
+        Map<String, FieldHistory> fieldHistories = shardHistories.remove(shardId);
+        if (fieldHistories == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, FieldHistory> entry : fieldHistories.entrySet()) {
+            FieldHistory fieldHistory = entry.getValue();
+            if (now - fieldHistory.getLastAccessMillis() <= RETENTION_MILLIS) {
+                lines.add(entry.getKey() + "\t" + fieldHistory.getScore(now) + "\t" + fieldHistory.getLastAccessMillis());
+            }
+        }
+
+        Path historyFile = shardDataPath.resolve(HISTORY_FILE_NAME);
+        Path tempFile = shardDataPath.resolve(HISTORY_FILE_NAME + ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                for (String line : lines) {
+                    writer.write(line);
+                    writer.newLine();
+                }
+            }
+            Files.move(tempFile, historyFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("[KNN] Failed to persist query history of shard " + shardId, e);
+        }
+    }
+
+    /**
+     * Drops the history of a shard from memory without persisting it
+     *
+     * @param shardId shard the history belongs to
+     */
+    public void remove(ShardId shardId) {
+        shardHistories.remove(shardId);
+    }
+
+    /**
+     * Decayed query count and last access time of a field. Queries are only counted on the search path and folded
+     * into the decayed count when it is read.
+     */
+    private static class FieldHistory {
+        private final LongAdder pendingCount = new LongAdder();
+        private volatile long lastAccessMillis;
+        private double decayedCount;
+        private long decayedAtMillis;
+
+        private FieldHistory(double decayedCount, long lastAccessMillis) {
+            this.decayedCount = decayedCount;
+            this.decayedAtMillis = lastAccessMillis;
+            this.lastAccessMillis = lastAccessMillis;
+        }
+
+        private void record(long now) {
+            pendingCount.increment();
+            lastAccessMillis = now;
+        }
+
+        private long getLastAccessMillis() {
+            return lastAccessMillis;
+        }
+
+        private synchronized double getScore(long now) {
+            if (now > decayedAtMillis) {
+                decayedCount *= Math.pow(0.5, (double) (now - decayedAtMillis) / HALF_LIFE_MILLIS);
+                decayedAtMillis = now;
+            }
+            decayedCount += pendingCount.sumThenReset();
+            return decayedCount;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ *   Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.knn.index;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.index.FilterLeafReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.elasticsearch.common.lucene.index.ElasticsearchDirectoryReader;
+import org.elasticsearch.index.engine.Engine;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Engine warmer that loads the graphs of new segments, created by a refresh, flush or merge, before searches are
+ * switched to them. Only indices with graphs already in the cache are warmed, so that indices nobody searches do not
+ * take memory, and only graphs fitting in the free capacity of the cache are loaded. This runs on the thread
+ * refreshing the shard, so the first query against a new segment does not pay for loading its graph.
+ */
+public class KNNSegmentWarmer implements Engine.Warmer {
+    private static Logger logger = LogManager.getLogger(KNNSegmentWarmer.class);
+
+    private final Engine.Warmer delegate;
+    private final String indexName;
+
+    /**
+     * Constructor
+     *
+     * @param delegate warmer configured by Elasticsearch for the shard, called first
+     * @param indexName name of the index of the shard
+     */
+    public KNNSegmentWarmer(Engine.Warmer delegate, String indexName) {
+        this.delegate = delegate;
+        this.indexName = indexName;
+    }
+
+    @Override
+    public void warm(ElasticsearchDirectoryReader reader) {
+        if (delegate != null) {
+            delegate.warm(reader);
+        }
+
+        KNNIndexCache knnIndexCache = KNNIndexCache.getInstance();
+        Set<String> loadedGraphs = knnIndexCache.getGraphNamesForIndex(indexName);
+        if (loadedGraphs.isEmpty()) {
+            return;
+        }
+
+        for (LeafReaderContext leafReaderContext : reader.leaves()) {
+            try {
+                IndexReader.CacheHelper coreCacheHelper = FilterLeafReader.unwrap(leafReaderContext.reader())
+                        .getCoreCacheHelper();
+                Map<String, String> spaceTypes = KNNIndexShard.getSegmentSpaceTypesByHNSWPath(leafReaderContext);
+                for (Map.Entry<String, String> graph : spaceTypes.entrySet()) {
+                    if (loadedGraphs.contains(graph.getKey())) {
+                        continue;
+                    }
+                    // Evicting graphs to make room would flag the cache as full and trip the circuit breaker
+                    if (!knnIndexCache.fitsInFreeCapacity(graph.getKey())) {
+                        logger.debug("[KNN] Skipping warming of new segment graph as the cache is full: {}",
+                                graph.getKey());
+                        continue;
+                    }
+                    logger.debug("[KNN] Warming new segment graph: {}", graph.getKey());
+                    knnIndexCache.getIndex(graph.getKey(), indexName, graph.getValue(), coreCacheHelper);
+                }
+            } catch (Exception e) {
+                logger.warn("[KNN] Failed to warm new segment of index: " + indexName, e);
+            }
+        }
+    }
+}
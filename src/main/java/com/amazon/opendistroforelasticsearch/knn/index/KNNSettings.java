@@ -34,12 +34,14 @@ import org.elasticsearch.monitor.os.OsProbe;
 
 import java.security.InvalidParameterException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -70,14 +72,19 @@ public class KNNSettings {
     public static final String KNN_ALGO_PARAM_M = "index.knn.algo_param.m";
     public static final String KNN_ALGO_PARAM_EF_CONSTRUCTION = "index.knn.algo_param.ef_construction";
     public static final String KNN_ALGO_PARAM_EF_SEARCH = "index.knn.algo_param.ef_search";
+    public static final String KNN_ALGO_PARAM_GRAPH_BUILD_THRESHOLD = "index.knn.algo_param.graph_build_threshold";
     public static final String KNN_ALGO_PARAM_INDEX_THREAD_QTY = "knn.algo_param.index_thread_qty";
     public static final String KNN_MEMORY_CIRCUIT_BREAKER_ENABLED = "knn.memory.circuit_breaker.enabled";
     public static final String KNN_MEMORY_CIRCUIT_BREAKER_LIMIT = "knn.memory.circuit_breaker.limit";
     public static final String KNN_CIRCUIT_BREAKER_TRIGGERED = "knn.circuit_breaker.triggered";
+    public static final String KNN_CIRCUIT_BREAKER_TRIGGERED_NODES = "knn.circuit_breaker.triggered_nodes";
+    public static final String KNN_CIRCUIT_BREAKER_SCOPE = "knn.circuit_breaker.scope";
     public static final String KNN_CACHE_ITEM_EXPIRY_ENABLED = "knn.cache.item.expiry.enabled";
     public static final String KNN_CACHE_ITEM_EXPIRY_TIME_MINUTES = "knn.cache.item.expiry.minutes";
     public static final String KNN_PLUGIN_ENABLED = "knn.plugin.enabled";
     public static final String KNN_CIRCUIT_BREAKER_UNSET_PERCENTAGE = "knn.circuit_breaker.unset.percentage";
+    public static final String KNN_PREFETCH_ENABLED = "knn.prefetch.enabled";
+    public static final String KNN_EXACT_FALLBACK_ENABLED = "knn.exact_fallback.enabled";
     public static final String KNN_INDEX = "index.knn";
 
     /**
@@ -87,8 +94,11 @@ public class KNNSettings {
     public static final Integer INDEX_KNN_DEFAULT_ALGO_PARAM_M = 16;
     public static final Integer INDEX_KNN_DEFAULT_ALGO_PARAM_EF_SEARCH = 512;
     public static final Integer INDEX_KNN_DEFAULT_ALGO_PARAM_EF_CONSTRUCTION = 512;
+    public static final Integer INDEX_KNN_DEFAULT_ALGO_PARAM_GRAPH_BUILD_THRESHOLD = 0;
     public static final Integer KNN_DEFAULT_ALGO_PARAM_INDEX_THREAD_QTY = 1;
     public static final Integer KNN_DEFAULT_CIRCUIT_BREAKER_UNSET_PERCENTAGE = 75;
+    public static final String KNN_CIRCUIT_BREAKER_SCOPE_CLUSTER = "cluster";
+    public static final String KNN_CIRCUIT_BREAKER_SCOPE_NODE = "node";
 
     /**
      * Settings Definition
@@ -130,6 +140,17 @@ public class KNNSettings {
             2,
             IndexScope);
 
+    /**
+     * graph_build_threshold - the minimum number of vectors of a field in a segment for its graph to be built.
+     * Flushes and merges of smaller segments skip the graph construction, and queries search those segments exactly.
+     * The graphs of small segments are rebuilt by every merge, so the threshold trades their search time for build time.
+     */
+    public static final Setting<Integer> INDEX_KNN_ALGO_PARAM_GRAPH_BUILD_THRESHOLD_SETTING =  Setting.intSetting(
+            KNN_ALGO_PARAM_GRAPH_BUILD_THRESHOLD,
+            INDEX_KNN_DEFAULT_ALGO_PARAM_GRAPH_BUILD_THRESHOLD,
+            0,
+            IndexScope);
+
     /**
      * This setting identifies KNN index.
      */
@@ -155,6 +176,29 @@ public class KNNSettings {
             NodeScope,
             Dynamic);
 
+    /**
+     * Ids of the nodes whose cache reached its capacity. Maintained by the master.
+     */
+    public static final Setting<List<String>> KNN_CIRCUIT_BREAKER_TRIGGERED_NODES_SETTING = Setting.listSetting(
+            KNN_CIRCUIT_BREAKER_TRIGGERED_NODES,
+            Collections.emptyList(),
+            Function.identity(),
+            NodeScope,
+            Dynamic);
+
+    /**
+     * scope - what is rejected when the circuit breaker triggers. With "cluster", indexing of knn vector fields is
+     * rejected on all nodes while knn.circuit_breaker.triggered is set. With "node", only writes to knn indices whose
+     * primary shard is on a node with knn.circuit_breaker.triggered_nodes are rejected, with a 429 status code so that
+     * clients back off and retry.
+     */
+    public static final Setting<String> KNN_CIRCUIT_BREAKER_SCOPE_SETTING = Setting.simpleString(
+            KNN_CIRCUIT_BREAKER_SCOPE,
+            KNN_CIRCUIT_BREAKER_SCOPE_CLUSTER,
+            new CircuitBreakerScopeValidator(),
+            NodeScope,
+            Dynamic);
+
     public static final Setting<Double> KNN_CIRCUIT_BREAKER_UNSET_PERCENTAGE_SETTING =  Setting.doubleSetting(
             KNN_CIRCUIT_BREAKER_UNSET_PERCENTAGE,
             KNN_DEFAULT_CIRCUIT_BREAKER_UNSET_PERCENTAGE,
@@ -162,6 +206,26 @@ public class KNNSettings {
             100,
             NodeScope,
             Dynamic);
+    /**
+     * prefetch - when a shard of a k-NN index is started, for instance after a restart, the graphs of the fields
+     * recently queried on it are loaded in the background, as long as they fit in the free capacity of the cache.
+     */
+    public static final Setting<Boolean> KNN_PREFETCH_ENABLED_SETTING = Setting.boolSetting(KNN_PREFETCH_ENABLED,
+            true,
+            NodeScope,
+            Dynamic);
+
+    /**
+     * exact_fallback - a graph larger than the k-NN memory limit cannot be loaded, and by default queries on its
+     * segment fail. When enabled, such segments are searched exactly over their doc values instead, which are read
+     * from disk through the page cache: slower, but the shard stays searchable.
+     */
+    public static final Setting<Boolean> KNN_EXACT_FALLBACK_ENABLED_SETTING = Setting.boolSetting(
+            KNN_EXACT_FALLBACK_ENABLED,
+            false,
+            NodeScope,
+            Dynamic);
+
     /**
      * Dynamic settings
      */
@@ -225,12 +289,36 @@ public class KNNSettings {
                     latestSettings.put(KNN_CIRCUIT_BREAKER_TRIGGERED, newVal);
                 }
         );
+        clusterService.getClusterSettings().addSettingsUpdateConsumer(
+                KNN_CIRCUIT_BREAKER_TRIGGERED_NODES_SETTING,
+                newVal -> {
+                    latestSettings.put(KNN_CIRCUIT_BREAKER_TRIGGERED_NODES, newVal);
+                }
+        );
+        clusterService.getClusterSettings().addSettingsUpdateConsumer(
+                KNN_CIRCUIT_BREAKER_SCOPE_SETTING,
+                newVal -> {
+                    latestSettings.put(KNN_CIRCUIT_BREAKER_SCOPE, newVal);
+                }
+        );
         clusterService.getClusterSettings().addSettingsUpdateConsumer(
                 KNN_CIRCUIT_BREAKER_UNSET_PERCENTAGE_SETTING,
                 newVal -> {
                     latestSettings.put(KNN_CIRCUIT_BREAKER_UNSET_PERCENTAGE, newVal);
                 }
         );
+        clusterService.getClusterSettings().addSettingsUpdateConsumer(
+                KNN_PREFETCH_ENABLED_SETTING,
+                newVal -> {
+                    latestSettings.put(KNN_PREFETCH_ENABLED, newVal);
+                }
+        );
+        clusterService.getClusterSettings().addSettingsUpdateConsumer(
+                KNN_EXACT_FALLBACK_ENABLED_SETTING,
+                newVal -> {
+                    latestSettings.put(KNN_EXACT_FALLBACK_ENABLED, newVal);
+                }
+        );
         clusterService.getClusterSettings().addSettingsUpdateConsumer(
                 KNN_ALGO_PARAM_INDEX_THREAD_QTY_SETTING,
                 newVal -> {
@@ -260,10 +348,26 @@ public class KNNSettings {
             return KNN_CIRCUIT_BREAKER_TRIGGERED_SETTING;
         }
 
+        if (KNN_CIRCUIT_BREAKER_TRIGGERED_NODES.equals(key)) {
+            return KNN_CIRCUIT_BREAKER_TRIGGERED_NODES_SETTING;
+        }
+
+        if (KNN_CIRCUIT_BREAKER_SCOPE.equals(key)) {
+            return KNN_CIRCUIT_BREAKER_SCOPE_SETTING;
+        }
+
         if (KNN_CIRCUIT_BREAKER_UNSET_PERCENTAGE.equals(key)) {
             return KNN_CIRCUIT_BREAKER_UNSET_PERCENTAGE_SETTING;
         }
 
+        if (KNN_PREFETCH_ENABLED.equals(key)) {
+            return KNN_PREFETCH_ENABLED_SETTING;
+        }
+
+        if (KNN_EXACT_FALLBACK_ENABLED.equals(key)) {
+            return KNN_EXACT_FALLBACK_ENABLED_SETTING;
+        }
+
         if (KNN_ALGO_PARAM_INDEX_THREAD_QTY.equals(key)) {
             return KNN_ALGO_PARAM_INDEX_THREAD_QTY_SETTING;
         }
@@ -276,9 +380,14 @@ public class KNNSettings {
                 INDEX_KNN_ALGO_PARAM_M_SETTING,
                 INDEX_KNN_ALGO_PARAM_EF_CONSTRUCTION_SETTING,
                 INDEX_KNN_ALGO_PARAM_EF_SEARCH_SETTING,
+                INDEX_KNN_ALGO_PARAM_GRAPH_BUILD_THRESHOLD_SETTING,
                 KNN_ALGO_PARAM_INDEX_THREAD_QTY_SETTING,
                 KNN_CIRCUIT_BREAKER_TRIGGERED_SETTING,
+                KNN_CIRCUIT_BREAKER_TRIGGERED_NODES_SETTING,
+                KNN_CIRCUIT_BREAKER_SCOPE_SETTING,
                 KNN_CIRCUIT_BREAKER_UNSET_PERCENTAGE_SETTING,
+                KNN_PREFETCH_ENABLED_SETTING,
+                KNN_EXACT_FALLBACK_ENABLED_SETTING,
                 IS_KNN_INDEX_SETTING);
         return Stream.concat(settings.stream(), dynamicCacheSettings.values().stream())
                      .collect(Collectors.toList());
@@ -292,6 +401,22 @@ public class KNNSettings {
         return KNNSettings.state().getSettingValue(KNNSettings.KNN_CIRCUIT_BREAKER_TRIGGERED);
     }
 
+    public static boolean isPrefetchEnabled() {
+        return KNNSettings.state().getSettingValue(KNNSettings.KNN_PREFETCH_ENABLED);
+    }
+
+    public static boolean isExactFallbackEnabled() {
+        return KNNSettings.state().getSettingValue(KNNSettings.KNN_EXACT_FALLBACK_ENABLED);
+    }
+
+    public static List<String> getCircuitBreakerTriggeredNodes() {
+        return KNNSettings.state().getSettingValue(KNNSettings.KNN_CIRCUIT_BREAKER_TRIGGERED_NODES);
+    }
+
+    public static boolean isNodeScopedCircuitBreaker() {
+        return KNN_CIRCUIT_BREAKER_SCOPE_NODE.equals(KNNSettings.state().getSettingValue(KNNSettings.KNN_CIRCUIT_BREAKER_SCOPE));
+    }
+
     public static ByteSizeValue getCircuitBreakerLimit() {
         return KNNSettings.state().getSettingValue(KNNSettings.KNN_MEMORY_CIRCUIT_BREAKER_LIMIT);
     }
@@ -344,13 +469,15 @@ public class KNNSettings {
     }
 
     /**
-     * Updates knn.circuit_breaker.triggered setting to true/false
+     * Updates knn.circuit_breaker.triggered setting to true/false and knn.circuit_breaker.triggered_nodes
      * @param flag true/false
+     * @param triggeredNodes ids of the nodes at capacity
      */
-    public synchronized void updateCircuitBreakerSettings(boolean flag) {
+    public synchronized void updateCircuitBreakerSettings(boolean flag, List<String> triggeredNodes) {
         ClusterUpdateSettingsRequest clusterUpdateSettingsRequest = new ClusterUpdateSettingsRequest();
         Settings circuitBreakerSettings = Settings.builder()
                                                   .put(KNNSettings.KNN_CIRCUIT_BREAKER_TRIGGERED, flag)
+                                                  .putList(KNNSettings.KNN_CIRCUIT_BREAKER_TRIGGERED_NODES, triggeredNodes)
                                                   .build();
         clusterUpdateSettingsRequest.persistentSettings(circuitBreakerSettings);
         client.admin().cluster().updateSettings(clusterUpdateSettingsRequest,
@@ -407,6 +534,15 @@ public class KNNSettings {
         }
     }
 
+    static class CircuitBreakerScopeValidator implements Setting.Validator<String> {
+
+        @Override public void validate(String value) {
+            if (!KNN_CIRCUIT_BREAKER_SCOPE_CLUSTER.equals(value) && !KNN_CIRCUIT_BREAKER_SCOPE_NODE.equals(value)) {
+                throw new IllegalArgumentException(String.format("Unsupported circuit breaker scope: %s", value));
+            }
+        }
+    }
+
     public void onIndexModule(IndexModule module) {
         module.addSettingsUpdateConsumer(
                 INDEX_KNN_ALGO_PARAM_EF_SEARCH_SETTING,
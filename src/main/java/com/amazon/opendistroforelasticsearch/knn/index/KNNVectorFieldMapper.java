@@ -16,15 +16,18 @@
 package com.amazon.opendistroforelasticsearch.knn.index;
 
 import com.amazon.opendistroforelasticsearch.knn.common.KNNConstants;
+import com.amazon.opendistroforelasticsearch.knn.plugin.script.KNNScoringSpaceUtil;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.FloatDocValuesField;
 import org.apache.lucene.document.StoredField;
 import org.apache.lucene.index.DocValuesType;
 import org.apache.lucene.index.IndexOptions;
 import org.apache.lucene.search.DocValuesFieldExistsQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.common.Explicit;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentBuilder;
@@ -48,11 +51,13 @@ import org.elasticsearch.search.lookup.SearchLookup;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Supplier;
 
 import static com.amazon.opendistroforelasticsearch.knn.index.KNNSettings.INDEX_KNN_ALGO_PARAM_EF_CONSTRUCTION_SETTING;
+import static com.amazon.opendistroforelasticsearch.knn.index.KNNSettings.INDEX_KNN_ALGO_PARAM_GRAPH_BUILD_THRESHOLD_SETTING;
 import static com.amazon.opendistroforelasticsearch.knn.index.KNNSettings.INDEX_KNN_ALGO_PARAM_M_SETTING;
 import static com.amazon.opendistroforelasticsearch.knn.index.KNNSettings.INDEX_KNN_DEFAULT_ALGO_PARAM_EF_CONSTRUCTION;
 import static com.amazon.opendistroforelasticsearch.knn.index.KNNSettings.INDEX_KNN_DEFAULT_ALGO_PARAM_M;
@@ -99,26 +104,47 @@ public class KNNVectorFieldMapper extends ParametrizedFieldMapper {
                             }
                             return value;
                 }, m -> toType(m).dimension);
+        private final Parameter<Boolean> storeNorm = Parameter.boolParam(KNNConstants.STORE_NORM, false,
+                m -> toType(m).storeNorm, false);
+        private final Parameter<String> quantization = Parameter.restrictedStringParam(KNNConstants.QUANTIZATION,
+                false, m -> toType(m).quantizationType.getKey(), QuantizationTypes.none.getKey(),
+                QuantizationTypes.int8.getKey(), QuantizationTypes.uint8.getKey());
+        private final Parameter<Float> quantizationMin = new Parameter<>(KNNConstants.QUANTIZATION_MIN, false,
+                () -> null, (n, c, o) -> XContentMapValues.nodeFloatValue(o), m -> toType(m).quantizationMin);
+        private final Parameter<Float> quantizationMax = new Parameter<>(KNNConstants.QUANTIZATION_MAX, false,
+                () -> null, (n, c, o) -> XContentMapValues.nodeFloatValue(o), m -> toType(m).quantizationMax);
+        private final Parameter<String> dataType = Parameter.restrictedStringParam(KNNConstants.DATA_TYPE, false,
+                m -> toType(m).dataType.getKey(), VectorDataTypes.float32.getKey(), VectorDataTypes.float16.getKey(),
+                VectorDataTypes.binary.getKey());
+        private final Parameter<Map<String, Object>> knnMethod = new Parameter<>(KNNConstants.METHOD, false,
+                Collections::emptyMap, (n, c, o) -> {
+                    Map<String, Object> value = XContentMapValues.nodeMapValue(o, KNNConstants.METHOD);
+                    KNNMethodContext.parse(value, name);
+                    return value;
+                }, m -> toType(m).knnMethod);
         private final Parameter<Map<String, String>> meta = Parameter.metaParam();
 
         private String spaceType;
         private String m;
         private String efConstruction;
+        private String graphBuildThreshold;
 
         public Builder(String name) {
             super(name);
         }
 
-        public Builder(String name, String spaceType, String m, String efConstruction) {
+        public Builder(String name, String spaceType, String m, String efConstruction, String graphBuildThreshold) {
             super(name);
             this.spaceType = spaceType;
             this.m = m;
             this.efConstruction = efConstruction;
+            this.graphBuildThreshold = graphBuildThreshold;
         }
 
         @Override
         protected List<Parameter<?>> getParameters() {
-            return Arrays.asList(stored, hasDocValues, dimension, meta);
+            return Arrays.asList(stored, hasDocValues, dimension, storeNorm, quantization, quantizationMin,
+                    quantizationMax, dataType, knnMethod, meta);
         }
 
         protected Explicit<Boolean> ignoreMalformed(BuilderContext context) {
@@ -133,21 +159,41 @@ public class KNNVectorFieldMapper extends ParametrizedFieldMapper {
 
         @Override
         public KNNVectorFieldMapper build(BuilderContext context) {
+            // The method of the field mapping takes precedence over the index settings
+            KNNMethodContext methodContext = KNNMethodContext.parse(knnMethod.getValue(), name);
             if (this.spaceType == null) {
-                this.spaceType = getSpaceType(context.indexSettings());
+                this.spaceType = methodContext.getSpaceType() != null ? methodContext.getSpaceType()
+                        : getSpaceType(context.indexSettings());
             }
 
             if (this.m == null) {
-                this.m = getM(context.indexSettings());
+                this.m = methodContext.getM() != null ? String.valueOf(methodContext.getM())
+                        : getM(context.indexSettings());
             }
 
             if (this.efConstruction == null) {
-                this.efConstruction = getEfConstruction(context.indexSettings());
+                this.efConstruction = methodContext.getEfConstruction() != null
+                        ? String.valueOf(methodContext.getEfConstruction())
+                        : getEfConstruction(context.indexSettings());
+            }
+
+            if (this.graphBuildThreshold == null) {
+                this.graphBuildThreshold = String.valueOf(
+                        INDEX_KNN_ALGO_PARAM_GRAPH_BUILD_THRESHOLD_SETTING.get(context.indexSettings()));
+            }
+
+            // On 0 and 1 values the squared l2 and the l1 distances of the graph are the hamming distance
+            if (VectorDataTypes.binary.getKey().equals(dataType.getValue()) &&
+                    !SpaceTypes.l2.getKey().equals(this.spaceType) && !SpaceTypes.l1.getKey().equals(this.spaceType)) {
+                throw new IllegalArgumentException("\"" + KNNConstants.DATA_TYPE + "\": " +
+                        VectorDataTypes.binary.getKey() + " requires the space type " + SpaceTypes.l2.getKey() +
+                        " or " + SpaceTypes.l1.getKey() + " for vector: " + name);
             }
 
             return new KNNVectorFieldMapper(name, new KNNVectorFieldType(buildFullName(context), meta.getValue(),
-                    dimension.getValue()), multiFieldsBuilder.build(this, context),
-                    ignoreMalformed(context), this.spaceType, this.m, this.efConstruction, copyTo.build(), this);
+                    dimension.getValue(), storeNorm.getValue()), multiFieldsBuilder.build(this, context),
+                    ignoreMalformed(context), this.spaceType, this.m, this.efConstruction, this.graphBuildThreshold,
+                    copyTo.build(), this);
         }
 
         private String getSpaceType(Settings indexSettings) {
@@ -195,6 +241,27 @@ public class KNNVectorFieldMapper extends ParametrizedFieldMapper {
                 throw new IllegalArgumentException("Dimension value missing for vector: " + name);
             }
 
+            Float quantizationMin = builder.quantizationMin.getValue();
+            Float quantizationMax = builder.quantizationMax.getValue();
+            // Vectors out of the calibration range are rejected, so the range has to be the one of the data
+            if (!QuantizationTypes.none.getKey().equals(builder.quantization.getValue()) &&
+                    (quantizationMin == null || quantizationMax == null)) {
+                throw new IllegalArgumentException("\"" + KNNConstants.QUANTIZATION_MIN + "\" and \"" +
+                        KNNConstants.QUANTIZATION_MAX + "\" must be set with \"" + KNNConstants.QUANTIZATION +
+                        "\" for vector: " + name);
+            }
+
+            if (quantizationMin != null && quantizationMax != null && !(quantizationMin < quantizationMax)) {
+                throw new IllegalArgumentException("\"" + KNNConstants.QUANTIZATION_MIN + "\" must be less than \"" +
+                        KNNConstants.QUANTIZATION_MAX + "\" for vector: " + name);
+            }
+
+            if (!VectorDataTypes.float32.getKey().equals(builder.dataType.getValue()) &&
+                    !QuantizationTypes.none.getKey().equals(builder.quantization.getValue())) {
+                throw new IllegalArgumentException("\"" + KNNConstants.QUANTIZATION + "\" cannot be used with \"" +
+                        KNNConstants.DATA_TYPE + "\": " + builder.dataType.getValue() + " for vector: " + name);
+            }
+
             return builder;
         }
     }
@@ -202,10 +269,16 @@ public class KNNVectorFieldMapper extends ParametrizedFieldMapper {
     public static class KNNVectorFieldType extends MappedFieldType {
 
         int dimension;
+        boolean storeNorm;
 
         public KNNVectorFieldType(String name, Map<String, String> meta, int dimension) {
+            this(name, meta, dimension, false);
+        }
+
+        public KNNVectorFieldType(String name, Map<String, String> meta, int dimension, boolean storeNorm) {
             super(name, false, false, true, TextSearchInfo.NONE, meta);
             this.dimension = dimension;
+            this.storeNorm = storeNorm;
         }
 
         @Override
@@ -233,6 +306,13 @@ public class KNNVectorFieldMapper extends ParametrizedFieldMapper {
             return dimension;
         }
 
+        /**
+         * @return true if the L2 norm of every vector is indexed in the {@link #normFieldName(String)} doc values
+         */
+        public boolean isNormStored() {
+            return storeNorm;
+        }
+
         @Override
         public IndexFieldData.Builder fielddataBuilder(String fullyQualifiedIndexName, Supplier<SearchLookup> searchLookup) {
             failIfNoDocValues();
@@ -246,26 +326,53 @@ public class KNNVectorFieldMapper extends ParametrizedFieldMapper {
     protected final String spaceType;
     protected final String m;
     protected final String efConstruction;
+    protected final String graphBuildThreshold;
     private final Integer dimension;
+    private final boolean storeNorm;
+    private final QuantizationTypes quantizationType;
+    private final Float quantizationMin;
+    private final Float quantizationMax;
+    private final VectorDataTypes dataType;
+    private final Map<String, Object> knnMethod;
 
     public KNNVectorFieldMapper(String simpleName, MappedFieldType mappedFieldType, MultiFields multiFields,
                                 Explicit<Boolean> ignoreMalformed, String spaceType, String m, String efConstruction,
-                                CopyTo copyTo, Builder builder) {
+                                String graphBuildThreshold, CopyTo copyTo, Builder builder) {
         super(simpleName, mappedFieldType,  multiFields, copyTo);
         this.stored = builder.stored.getValue();
         this.hasDocValues = builder.hasDocValues.getValue();
         this.dimension = builder.dimension.getValue();
+        this.storeNorm = builder.storeNorm.getValue();
+        this.quantizationType = QuantizationTypes.getByKey(builder.quantization.getValue());
+        this.quantizationMin = builder.quantizationMin.getValue();
+        this.quantizationMax = builder.quantizationMax.getValue();
+        this.dataType = VectorDataTypes.getByKey(builder.dataType.getValue());
+        this.knnMethod = builder.knnMethod.getValue();
         this.ignoreMalformed = ignoreMalformed;
         this.spaceType = spaceType;
         this.m = m;
         this.efConstruction = efConstruction;
+        this.graphBuildThreshold = graphBuildThreshold;
         this.fieldType = new FieldType(Defaults.FIELD_TYPE);
         this.fieldType.putAttribute(KNNConstants.SPACE_TYPE, spaceType);
         this.fieldType.putAttribute(KNNConstants.HNSW_ALGO_M, m);
         this.fieldType.putAttribute(KNNConstants.HNSW_ALGO_EF_CONSTRUCTION, efConstruction);
+        this.fieldType.putAttribute(KNNConstants.GRAPH_BUILD_THRESHOLD, graphBuildThreshold);
+        this.fieldType.putAttribute(KNNConstants.KNN_ENGINE, KNNMethodContext.parse(knnMethod, simpleName).getEngine());
         this.fieldType.freeze();
     }
 
+    /**
+     * Name of the numeric doc values field holding the L2 norm of the vectors of a field mapped with
+     * {@code store_norm} enabled.
+     *
+     * @param field name of the knn_vector field
+     * @return name of the norm field
+     */
+    public static String normFieldName(String field) {
+        return field + KNNConstants.NORM_FIELD_SUFFIX;
+    }
+
     public static class Names {
         public static final String IGNORE_MALFORMED = "ignore_malformed";
     }
@@ -299,11 +406,6 @@ public class KNNVectorFieldMapper extends ParametrizedFieldMapper {
                     "update knn.plugin.enabled setting to true");
         }
 
-        if (KNNSettings.isCircuitBreakerTriggered()) {
-            throw new IllegalStateException("Indexing knn vector fields is rejected as circuit breaker triggered." +
-                    " Check _opendistro/_knn/stats for detailed state");
-        }
-
         context.path().add(simpleName());
 
         ArrayList<Float> vector = new ArrayList<>();
@@ -322,6 +424,7 @@ public class KNNVectorFieldMapper extends ParametrizedFieldMapper {
                     throw new IllegalArgumentException("KNN vector values cannot be infinity");
                 }
 
+                validateDataTypeValue(value);
                 vector.add(value);
                 token = context.parser().nextToken();
             }
@@ -336,6 +439,7 @@ public class KNNVectorFieldMapper extends ParametrizedFieldMapper {
                 throw new IllegalArgumentException("KNN vector values cannot be infinity");
             }
 
+            validateDataTypeValue(value);
             vector.add(value);
             context.parser().nextToken();
         }
@@ -352,15 +456,49 @@ public class KNNVectorFieldMapper extends ParametrizedFieldMapper {
             array[i++] = f;
         }
 
-        VectorField point = new VectorField(name(), array, fieldType);
+        VectorField point;
+        if (dataType == VectorDataTypes.float16) {
+            BytesRef halves = new BytesRef(VectorDataTypes.toFloat16Bytes(array));
+            point = new VectorField(name(), halves, fieldType);
+            // Norms are computed on the vector as it is scored
+            array = VectorDataTypes.fromFloat16Bytes(halves, array);
+        } else if (dataType == VectorDataTypes.binary) {
+            point = new VectorField(name(), new BytesRef(VectorDataTypes.toBinaryBytes(array)), fieldType);
+        } else if (quantizationType == QuantizationTypes.none) {
+            point = new VectorField(name(), array, fieldType);
+        } else {
+            BytesRef quantized = new BytesRef(quantizationType.quantize(array, quantizationMin, quantizationMax));
+            point = new VectorField(name(), quantized, fieldType);
+            // Norms are computed on the vector as it is scored
+            array = QuantizationTypes.dequantize(quantized, array);
+        }
 
         context.doc().add(point);
+        if (storeNorm) {
+            context.doc().add(new FloatDocValuesField(normFieldName(name()),
+                    (float) Math.sqrt(KNNScoringSpaceUtil.getVectorMagnitudeSquared(array))));
+        }
         if (fieldType.stored()) {
             context.doc().add(new StoredField(name(), point.toString()));
         }
         context.path().remove();
     }
 
+    private void validateDataTypeValue(float value) {
+        if (dataType == VectorDataTypes.float16 && Math.abs(value) > VectorDataTypes.FLOAT16_MAX) {
+            throw new IllegalArgumentException("KNN vector values of " + VectorDataTypes.float16.getKey() +
+                    " fields must be within [-" + VectorDataTypes.FLOAT16_MAX + ", " + VectorDataTypes.FLOAT16_MAX + "]");
+        }
+        if (dataType == VectorDataTypes.binary && value != 0 && value != 1) {
+            throw new IllegalArgumentException("KNN vector values of " + VectorDataTypes.binary.getKey() +
+                    " fields must be 0 or 1");
+        }
+        if (quantizationType != QuantizationTypes.none && (value < quantizationMin || value > quantizationMax)) {
+            throw new IllegalArgumentException("KNN vector values of " + quantizationType.getKey() +
+                    " quantized fields must be within [" + quantizationMin + ", " + quantizationMax + "]");
+        }
+    }
+
     @Override
     protected boolean docValuesByDefault() {
         return true;
@@ -368,7 +506,8 @@ public class KNNVectorFieldMapper extends ParametrizedFieldMapper {
 
     @Override
     public ParametrizedFieldMapper.Builder getMergeBuilder() {
-        return new KNNVectorFieldMapper.Builder(simpleName(), this.spaceType, this.m, this.efConstruction).init(this);
+        return new KNNVectorFieldMapper.Builder(simpleName(), this.spaceType, this.m, this.efConstruction,
+                this.graphBuildThreshold).init(this);
     }
 
     @Override
@@ -15,14 +15,12 @@
 
 package com.amazon.opendistroforelasticsearch.knn.index;
 
+import com.amazon.opendistroforelasticsearch.knn.index.codec.KNNCodecUtil;
 import org.apache.lucene.index.BinaryDocValues;
-import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.index.fielddata.ScriptDocValues;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 
 public final class KNNVectorScriptDocValues extends ScriptDocValues<float[]> {
 
@@ -53,14 +51,9 @@ public final class KNNVectorScriptDocValues extends ScriptDocValues<float[]> {
             throw new IllegalStateException(errorMessage);
         }
         try {
-            BytesRef value = binaryDocValues.binaryValue();
-            ByteArrayInputStream byteStream = new ByteArrayInputStream(value.bytes, value.offset, value.length);
-            ObjectInputStream objectStream = new ObjectInputStream(byteStream);
-            return (float[]) objectStream.readObject();
+            return KNNCodecUtil.byteToFloatArray(binaryDocValues.binaryValue());
         } catch (IOException e) {
             throw ExceptionsHelper.convertToElastic(e);
-        } catch (ClassNotFoundException e) {
-            throw new RuntimeException((e));
         }
     }
 
@@ -15,10 +15,12 @@
 
 package com.amazon.opendistroforelasticsearch.knn.index;
 
+import com.amazon.opendistroforelasticsearch.knn.common.KNNConstants;
 import com.amazon.opendistroforelasticsearch.knn.index.codec.KNNCodecUtil;
-import com.amazon.opendistroforelasticsearch.knn.index.v2011.KNNIndex;
+import com.amazon.opendistroforelasticsearch.knn.index.util.KNNIndexHandle;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.FilterLeafReader;
 import org.apache.lucene.index.LeafReaderContext;
@@ -31,6 +33,8 @@ import org.apache.lucene.search.Weight;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.FilterDirectory;
 import org.apache.lucene.util.DocIdSetBuilder;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
 import org.elasticsearch.common.io.PathUtils;
 
 import java.io.IOException;
@@ -77,27 +81,43 @@ public class KNNWeight extends Weight {
              */
             String hnswFileExtension = reader.getSegmentInfo().info.getUseCompoundFile()
                                                ? KNNCodecUtil.HNSW_COMPOUND_EXTENSION : KNNCodecUtil.HNSW_EXTENSION;
-            String hnswSuffix = knnQuery.getField() + hnswFileExtension;
             List<String> hnswFiles = reader.getSegmentInfo().files().stream()
-                    .filter(fileName -> fileName.endsWith(hnswSuffix))
+                    .filter(fileName -> fileName.endsWith(hnswFileExtension)
+                            && KNNCodecUtil.isGraphFileOfField(fileName, knnQuery.getField()))
                     .collect(Collectors.toList());
 
+            FieldInfo queryFieldInfo = reader.getFieldInfos().fieldInfo(knnQuery.getField());
+
             if(hnswFiles.isEmpty()) {
+                if (isBelowGraphBuildThreshold(reader, queryFieldInfo)) {
+                    logger.debug("[KNN] Segment {} is below the graph build threshold of field {}, searching it " +
+                            "exactly", reader.getSegmentName(), knnQuery.getField());
+                    return KNNExactWeight.exactScorer(this, context, knnQuery.getField(), knnQuery.getQueryVector(),
+                            knnQuery.getK(), boost);
+                }
                 logger.debug("[KNN] No hnsw index found for field {} for segment {}",
                         knnQuery.getField(), reader.getSegmentName());
                 return null;
             }
 
-            FieldInfo queryFieldInfo = reader.getFieldInfos().fieldInfo(knnQuery.getField());
-
-            /**
-             * TODO Add logic to pick up the right nmslib version based on the version
-             * in the name of the file. As of now we have one version 2.0.11
-             * So deferring this to future releases
-             */
-
             Path indexPath = PathUtils.get(directory, hnswFiles.get(0));
-            final KNNIndex index = knnIndexCache.getIndex(indexPath.toString(), knnQuery.getIndexName());
+            final KNNIndexHandle index;
+            try {
+                // Graphs are built with the space type of their field, which may differ from the one of the index
+                String spaceType = queryFieldInfo == null ? null : queryFieldInfo.getAttribute(KNNConstants.SPACE_TYPE);
+                index = knnIndexCache.getIndex(indexPath.toString(), knnQuery.getIndexName(), spaceType,
+                        reader.getCoreCacheHelper());
+            } catch (RuntimeException e) {
+                if (!KNNSettings.isExactFallbackEnabled()
+                        || ExceptionsHelper.unwrap(e, CircuitBreakingException.class) == null) {
+                    throw e;
+                }
+                // The k-NN breaker tripped while loading the graph: search the vectors of the segment exactly
+                logger.debug("[KNN] k-NN circuit breaker tripped loading hnsw index {}, searching segment {} exactly",
+                        indexPath, reader.getSegmentName());
+                return KNNExactWeight.exactScorer(this, context, knnQuery.getField(), knnQuery.getQueryVector(),
+                        knnQuery.getK(), boost);
+            }
             final KNNQueryResult[] results = index.queryIndex(
                     knnQuery.getQueryVector(),
                     knnQuery.getK()
@@ -119,6 +139,25 @@ public class KNNWeight extends Weight {
             return new KNNScorer(this, docIdSetIter, scores, boost);
     }
 
+    /**
+     * Graphs are not built for the segments holding fewer vectors than the graph build threshold of their field. The
+     * doc values of the field hold one value per doc with a vector, so their cost is the number of vectors the codec
+     * compared with the threshold.
+     *
+     * @param reader reader of the segment
+     * @param fieldInfo field of the query, null if the segment has no doc with the field
+     * @return true if the segment has no graph for the field because of the threshold
+     * @throws IOException if the doc values of the field cannot be read
+     */
+    private static boolean isBelowGraphBuildThreshold(SegmentReader reader, FieldInfo fieldInfo) throws IOException {
+        if (fieldInfo == null) {
+            return false;
+        }
+        int graphBuildThreshold = Integer.parseInt(fieldInfo.attributes().getOrDefault(
+                KNNConstants.GRAPH_BUILD_THRESHOLD, "0"));
+        return graphBuildThreshold > 0 && DocValues.getBinary(reader, fieldInfo.name).cost() < graphBuildThreshold;
+    }
+
     @Override
     public boolean isCacheable(LeafReaderContext context) {
         return true;
@@ -0,0 +1,136 @@
+/*
+ *   Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+package com.amazon.opendistroforelasticsearch.knn.index;
+
+import org.apache.lucene.util.BytesRef;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Enum contains the scalar quantization types of knn_vector fields. A quantized vector is stored in the doc values
+ * with one byte per dimension, behind a header holding the tag of the type and the calibration range of the field, so
+ * that it can be decoded without the mapping.
+ */
+public enum QuantizationTypes {
+  none("none", (byte) 0),
+  int8("int8", (byte) 1),
+  uint8("uint8", (byte) 2);
+
+  public static final int HEADER_LENGTH = 1 + 2 * Float.BYTES;
+
+  private static final Map<String, QuantizationTypes> KEYS = new HashMap<>();
+
+  private final String key;
+  private final byte tag;
+
+  static {
+    for (QuantizationTypes quantizationType : values()) {
+      KEYS.put(quantizationType.key, quantizationType);
+    }
+  }
+
+  QuantizationTypes(String key, byte tag) {
+    this.key = key;
+    this.tag = tag;
+  }
+
+  /**
+   * Get quantization type name in KNN plugin
+   *
+   * @return name
+   */
+  public String getKey() { return key; }
+
+  public static QuantizationTypes getByKey(final String name) {
+    QuantizationTypes quantizationType = KEYS.get(name);
+    if (quantizationType == null) {
+      throw new IllegalArgumentException("Unknown quantization type: " + name);
+    }
+    return quantizationType;
+  }
+
+  /**
+   * @param bytesRef serialized vector
+   * @return true if the vector was serialized by {@link #quantize(float[], float, float)}
+   */
+  public static boolean isQuantized(BytesRef bytesRef) {
+    if (bytesRef.length < HEADER_LENGTH) {
+      return false;
+    }
+    byte tag = bytesRef.bytes[bytesRef.offset];
+    return tag == int8.tag || tag == uint8.tag;
+  }
+
+  /**
+   * Quantizes a vector to one byte per dimension. int8 maps [-max(|min|, |max|), max(|min|, |max|)] symmetrically
+   * to [-127, 127], keeping zero exact; uint8 maps [min, max] to [0, 255]. The mapper rejects values out of the
+   * range; they are clamped here only to absorb rounding.
+   *
+   * @param vector vector to quantize
+   * @param min lower bound of the calibration range
+   * @param max upper bound of the calibration range
+   * @return serialized quantized vector
+   */
+  public byte[] quantize(float[] vector, float min, float max) {
+    if (this == none) {
+      throw new IllegalStateException("Vectors cannot be quantized with quantization type none");
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + vector.length);
+    buffer.put(tag).putFloat(min).putFloat(max);
+    if (this == int8) {
+      float scale = Math.max(Math.abs(min), Math.abs(max)) / 127;
+      for (float value : vector) {
+        buffer.put((byte) Math.max(-127, Math.min(127, Math.round(value / scale))));
+      }
+    } else {
+      float scale = (max - min) / 255;
+      for (float value : vector) {
+        buffer.put((byte) Math.max(0, Math.min(255, Math.round((value - min) / scale))));
+      }
+    }
+    return buffer.array();
+  }
+
+  /**
+   * Decodes a vector serialized by {@link #quantize(float[], float, float)}.
+   *
+   * @param bytesRef serialized quantized vector
+   * @param reuse array to decode the vector into when its length matches, may be null
+   * @return dequantized vector
+   */
+  public static float[] dequantize(BytesRef bytesRef, float[] reuse) {
+    ByteBuffer buffer = ByteBuffer.wrap(bytesRef.bytes, bytesRef.offset, bytesRef.length);
+    byte tag = buffer.get();
+    float min = buffer.getFloat();
+    float max = buffer.getFloat();
+    int dimension = bytesRef.length - HEADER_LENGTH;
+    float[] vector = reuse != null && reuse.length == dimension ? reuse : new float[dimension];
+    int offset = bytesRef.offset + HEADER_LENGTH;
+    if (tag == int8.tag) {
+      float scale = Math.max(Math.abs(min), Math.abs(max)) / 127;
+      for (int i = 0; i < dimension; i++) {
+        vector[i] = bytesRef.bytes[offset + i] * scale;
+      }
+    } else {
+      float scale = (max - min) / 255;
+      for (int i = 0; i < dimension; i++) {
+        vector[i] = min + (bytesRef.bytes[offset + i] & 0xFF) * scale;
+      }
+    }
+    return vector;
+  }
+}
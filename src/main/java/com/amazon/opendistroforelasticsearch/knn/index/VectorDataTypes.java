@@ -0,0 +1,209 @@
+/*
+ *   Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+package com.amazon.opendistroforelasticsearch.knn.index;
+
+import org.apache.lucene.util.BytesRef;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Enum contains the data types knn_vector fields store their vectors with. float16 vectors are stored in the doc
+ * values with two bytes per dimension behind a one byte tag, and are widened back to floats when they are read.
+ * binary vectors hold one bit per dimension, given as 0 and 1 values, and are stored bit-packed behind the tag and
+ * the number of padding bits of their last byte.
+ */
+public enum VectorDataTypes {
+  float32("float"),
+  float16("float16"),
+  binary("binary");
+
+  /**
+   * Largest finite value of a half-precision float
+   */
+  public static final float FLOAT16_MAX = 65504.0f;
+
+  private static final byte FLOAT16_TAG = 3;
+  private static final int FLOAT16_HEADER_LENGTH = 1;
+  private static final byte BINARY_TAG = 4;
+  private static final int BINARY_HEADER_LENGTH = 2;
+
+  private static final Map<String, VectorDataTypes> KEYS = new HashMap<>();
+
+  private final String key;
+
+  static {
+    for (VectorDataTypes dataType : values()) {
+      KEYS.put(dataType.key, dataType);
+    }
+  }
+
+  VectorDataTypes(String key) {
+    this.key = key;
+  }
+
+  /**
+   * Get data type name in KNN plugin
+   *
+   * @return name
+   */
+  public String getKey() { return key; }
+
+  public static VectorDataTypes getByKey(final String name) {
+    VectorDataTypes dataType = KEYS.get(name);
+    if (dataType == null) {
+      throw new IllegalArgumentException("Unknown data type: " + name);
+    }
+    return dataType;
+  }
+
+  /**
+   * @param bytesRef serialized vector
+   * @return true if the vector was serialized by {@link #toFloat16Bytes(float[])}
+   */
+  public static boolean isFloat16(BytesRef bytesRef) {
+    return bytesRef.length >= FLOAT16_HEADER_LENGTH && bytesRef.bytes[bytesRef.offset] == FLOAT16_TAG
+            && (bytesRef.length - FLOAT16_HEADER_LENGTH) % Short.BYTES == 0;
+  }
+
+  /**
+   * Serializes a vector with two bytes per dimension, rounding every value to the nearest half-precision float.
+   *
+   * @param vector vector to serialize, with values within [-{@link #FLOAT16_MAX}, {@link #FLOAT16_MAX}]
+   * @return serialized vector
+   */
+  public static byte[] toFloat16Bytes(float[] vector) {
+    byte[] bytes = new byte[FLOAT16_HEADER_LENGTH + vector.length * Short.BYTES];
+    bytes[0] = FLOAT16_TAG;
+    for (int i = 0, offset = FLOAT16_HEADER_LENGTH; i < vector.length; i++, offset += Short.BYTES) {
+      short half = floatToHalf(vector[i]);
+      bytes[offset] = (byte) (half >>> 8);
+      bytes[offset + 1] = (byte) half;
+    }
+    return bytes;
+  }
+
+  /**
+   * Decodes a vector serialized by {@link #toFloat16Bytes(float[])}.
+   *
+   * @param bytesRef serialized vector
+   * @param reuse array to decode the vector into when its length matches, may be null
+   * @return vector
+   */
+  public static float[] fromFloat16Bytes(BytesRef bytesRef, float[] reuse) {
+    int dimension = (bytesRef.length - FLOAT16_HEADER_LENGTH) / Short.BYTES;
+    float[] vector = reuse != null && reuse.length == dimension ? reuse : new float[dimension];
+    byte[] bytes = bytesRef.bytes;
+    int offset = bytesRef.offset + FLOAT16_HEADER_LENGTH;
+    for (int i = 0; i < dimension; i++, offset += Short.BYTES) {
+      vector[i] = halfToFloat((short) ((bytes[offset] << 8) | (bytes[offset + 1] & 0xFF)));
+    }
+    return vector;
+  }
+
+  /**
+   * @param bytesRef serialized vector
+   * @return true if the vector was serialized by {@link #toBinaryBytes(float[])}
+   */
+  public static boolean isBinary(BytesRef bytesRef) {
+    if (bytesRef.length <= BINARY_HEADER_LENGTH || bytesRef.bytes[bytesRef.offset] != BINARY_TAG) {
+      return false;
+    }
+    int paddingBits = bytesRef.bytes[bytesRef.offset + 1];
+    return paddingBits >= 0 && paddingBits < Byte.SIZE;
+  }
+
+  /**
+   * Packs a vector of 0 and 1 values into bits, the first dimension in the most significant bit of the first byte.
+   *
+   * @param vector vector to serialize, with values 0 or 1
+   * @return serialized vector
+   */
+  public static byte[] toBinaryBytes(float[] vector) {
+    int packedLength = (vector.length + Byte.SIZE - 1) / Byte.SIZE;
+    byte[] bytes = new byte[BINARY_HEADER_LENGTH + packedLength];
+    bytes[0] = BINARY_TAG;
+    bytes[1] = (byte) (packedLength * Byte.SIZE - vector.length);
+    for (int i = 0; i < vector.length; i++) {
+      if (vector[i] != 0) {
+        bytes[BINARY_HEADER_LENGTH + i / Byte.SIZE] |= 0x80 >>> (i % Byte.SIZE);
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Unpacks a vector serialized by {@link #toBinaryBytes(float[])} into 0 and 1 values.
+   *
+   * @param bytesRef serialized vector
+   * @param reuse array to decode the vector into when its length matches, may be null
+   * @return vector
+   */
+  public static float[] fromBinaryBytes(BytesRef bytesRef, float[] reuse) {
+    int dimension = (bytesRef.length - BINARY_HEADER_LENGTH) * Byte.SIZE - bytesRef.bytes[bytesRef.offset + 1];
+    float[] vector = reuse != null && reuse.length == dimension ? reuse : new float[dimension];
+    byte[] bytes = bytesRef.bytes;
+    int offset = bytesRef.offset + BINARY_HEADER_LENGTH;
+    for (int i = 0; i < dimension; i++) {
+      vector[i] = (bytes[offset + i / Byte.SIZE] >>> (7 - i % Byte.SIZE)) & 1;
+    }
+    return vector;
+  }
+
+  /**
+   * Rounds a float to the nearest half-precision float, ties to even.
+   *
+   * @param value float
+   * @return bits of the half-precision float
+   */
+  static short floatToHalf(float value) {
+    int bits = Float.floatToRawIntBits(value);
+    int sign = (bits >>> 16) & 0x8000;
+    int abs = bits & 0x7fffffff;
+    if (abs > 0x7f800000) {
+      return (short) (sign | 0x7e00);
+    }
+    if (abs >= 0x477ff000) {
+      // Rounds past the largest finite half
+      return (short) (sign | 0x7c00);
+    }
+    if (abs < 0x38800000) {
+      // Subnormal half: a multiple of 2^-24, exact in a double
+      return (short) (sign | (int) Math.rint(Float.intBitsToFloat(abs) * 0x1p24));
+    }
+    int rounded = abs + 0xfff + ((abs >>> 13) & 1);
+    return (short) (sign | ((rounded - 0x38000000) >>> 13));
+  }
+
+  /**
+   * Widens a half-precision float to a float. The conversion is exact.
+   *
+   * @param half bits of the half-precision float
+   * @return float
+   */
+  static float halfToFloat(short half) {
+    int sign = (half & 0x8000) << 16;
+    int exponent = (half >>> 10) & 0x1f;
+    int mantissa = half & 0x3ff;
+    if (exponent == 0x1f) {
+      return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+    }
+    if (exponent == 0) {
+      float subnormal = mantissa * 0x1p-24f;
+      return sign == 0 ? subnormal : -subnormal;
+    }
+    return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+  }
+}
@@ -33,6 +33,10 @@ public class VectorField extends Field {
         }
     }
 
+    public VectorField(String name, BytesRef value, IndexableFieldType type) {
+        super(name, value, type);
+    }
+
     public static byte[] floatToByte(float[] floats) throws Exception {
         byte[] bytes;
         try (ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
@@ -15,6 +15,7 @@
 
 package com.amazon.opendistroforelasticsearch.knn.index.codec.KNN80Codec;
 
+import com.amazon.opendistroforelasticsearch.knn.index.KNNCircuitBreaker;
 import com.amazon.opendistroforelasticsearch.knn.index.SpaceTypes;
 import com.amazon.opendistroforelasticsearch.knn.index.codec.KNNCodecUtil;
 import com.amazon.opendistroforelasticsearch.knn.plugin.stats.KNNCounter;
@@ -33,9 +34,11 @@ import org.apache.lucene.store.FilterDirectory;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
 import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.RamUsageEstimator;
 import com.amazon.opendistroforelasticsearch.knn.index.KNNSettings;
 import com.amazon.opendistroforelasticsearch.knn.index.KNNVectorFieldMapper;
 import com.amazon.opendistroforelasticsearch.knn.common.KNNConstants;
+import com.amazon.opendistroforelasticsearch.knn.index.util.KNNEngine;
 import com.amazon.opendistroforelasticsearch.knn.index.util.NmsLibVersion;
 import com.amazon.opendistroforelasticsearch.knn.index.v2011.KNNIndex;
 
@@ -83,8 +86,11 @@ class KNN80DocValuesConsumer extends DocValuesConsumer implements Closeable {
                                                         + NmsLibVersion.LATEST.indexLibraryVersion());
             }
 
+            Map<String, String> fieldAttributes = field.attributes();
+            KNNEngine knnEngine = KNNEngine.getEngine(fieldAttributes.getOrDefault(KNNConstants.KNN_ENGINE,
+                    KNNEngine.DEFAULT.getName()));
             BinaryDocValues values = valuesProducer.getBinary(field);
-            String hnswFileName = String.format("%s_%s_%s%s", state.segmentInfo.name, NmsLibVersion.LATEST.buildVersion,
+            String hnswFileName = String.format("%s_%s_%s%s", state.segmentInfo.name, knnEngine.getBuildVersion(),
                     field.name, KNNCodecUtil.HNSW_EXTENSION);
             String indexPath = Paths.get(((FSDirectory) (FilterDirectory.unwrap(state.directory))).getDirectory().toString(),
                     hnswFileName).toString();
@@ -95,19 +101,35 @@ class KNN80DocValuesConsumer extends DocValuesConsumer implements Closeable {
                 return;
             }
 
+            int graphBuildThreshold = Integer.parseInt(fieldAttributes.getOrDefault(KNNConstants.GRAPH_BUILD_THRESHOLD,
+                    "0"));
+            if (pair.docs.length < graphBuildThreshold) {
+                logger.debug("Skipping hnsw index creation for field {} of segment {}: {} vectors are fewer than the " +
+                        "graph build threshold", field.name, state.segmentInfo.name, pair.docs.length);
+                return;
+            }
+
             // Pass the path for the nms library to save the file
             String tempIndexPath = indexPath + TEMP_SUFFIX;
-            Map<String, String> fieldAttributes = field.attributes();
-            String spaceType = SpaceTypes.getValueByKey(fieldAttributes.getOrDefault(KNNConstants.SPACE_TYPE, SpaceTypes.l2.getKey()));
+            String spaceType = fieldAttributes.getOrDefault(KNNConstants.SPACE_TYPE, SpaceTypes.l2.getKey());
             String[] algoParams = getKNNIndexParams(fieldAttributes);
-            AccessController.doPrivileged(
-                    new PrivilegedAction<Void>() {
-                        public Void run() {
-                            KNNIndex.saveIndex(pair.docs, pair.vectors, tempIndexPath, algoParams, spaceType);
-                            return null;
+
+            // The build buffers are only accounted with the k-NN breaker. Tripping here would fail the flush or merge
+            // and with it the shard, so the limit is enforced on graph loads and on indexing instead.
+            long buildBufferBytes = estimateBuildBufferBytes(pair);
+            KNNCircuitBreaker.getInstance().addWithoutBreaking(buildBufferBytes);
+            try {
+                AccessController.doPrivileged(
+                        new PrivilegedAction<Void>() {
+                            public Void run() {
+                                knnEngine.buildIndex(pair.docs, pair.vectors, tempIndexPath, algoParams, spaceType);
+                                return null;
+                            }
                         }
-                    }
-            );
+                );
+            } finally {
+                KNNCircuitBreaker.getInstance().addWithoutBreaking(-buildBufferBytes);
+            }
 
             String hsnwTempFileName = hnswFileName + TEMP_SUFFIX;
 
@@ -197,6 +219,18 @@ class KNN80DocValuesConsumer extends DocValuesConsumer implements Closeable {
         );
     }
 
+    /**
+     * Estimates the memory held while building a graph: the vectors and doc ids collected on heap plus the copy
+     * nmslib makes of them in native memory
+     */
+    private long estimateBuildBufferBytes(KNNCodecUtil.Pair pair) {
+        long vectorBytes = RamUsageEstimator.shallowSizeOf(pair.vectors);
+        for (float[] vector : pair.vectors) {
+            vectorBytes += RamUsageEstimator.sizeOf(vector);
+        }
+        return 2 * vectorBytes + RamUsageEstimator.sizeOf(pair.docs);
+    }
+
     private String[] getKNNIndexParams(Map<String, String> fieldAttributes) {
         List<String> algoParams = new ArrayList<>();
         if (fieldAttributes.containsKey(KNNConstants.HNSW_ALGO_M)) {
@@ -16,6 +16,8 @@
 
 package com.amazon.opendistroforelasticsearch.knn.index.codec;
 
+import com.amazon.opendistroforelasticsearch.knn.index.QuantizationTypes;
+import com.amazon.opendistroforelasticsearch.knn.index.VectorDataTypes;
 import org.apache.lucene.index.BinaryDocValues;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.util.BytesRef;
@@ -23,6 +25,8 @@ import org.apache.lucene.util.BytesRef;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 
 public class KNNCodecUtil {
@@ -40,20 +44,134 @@ public class KNNCodecUtil {
         public float[][] vectors;
     }
 
+    /**
+     * Bytes written by ObjectOutputStream in front of the contents of a float[]: the stream magic and version followed
+     * by the class descriptor of "[F", its serialVersionUID, no fields and no superclass.
+     */
+    private static final byte[] SERIALIZED_FLOAT_ARRAY_HEADER = new byte[]{
+            (byte) 0xac, (byte) 0xed, 0x00, 0x05, 0x75, 0x72, 0x00, 0x02, 0x5b, 0x46,
+            0x0b, (byte) 0x9c, (byte) 0x81, (byte) 0x89, 0x22, (byte) 0xe0, 0x0c, 0x42,
+            0x02, 0x00, 0x00, 0x78, 0x70
+    };
+
+    /**
+     * Returns the build version of the library that wrote a graph file. Graph files are named
+     * {@code <segment>_<build version>_<field>.hnsw}, or .hnswc in compound segments. Segment names start with an
+     * underscore and hold no other one, and build versions hold none.
+     *
+     * @param hnswPath path or name of the graph file
+     * @return build version, or null if the name is not the one of a graph file
+     */
+    public static String getGraphBuildVersion(String hnswPath) {
+        String fileName = Paths.get(hnswPath).getFileName().toString();
+        int versionStart = fileName.indexOf('_', 1) + 1;
+        int versionEnd = versionStart > 0 ? fileName.indexOf('_', versionStart) : -1;
+        return versionEnd > versionStart ? fileName.substring(versionStart, versionEnd) : null;
+    }
+
+    /**
+     * Returns the name of the field a graph file was built for, everything between the build version and the
+     * extension of the file name
+     *
+     * @param hnswPath path or name of the graph file
+     * @return name of the field, or null if the name is not the one of a graph file
+     */
+    public static String getGraphFieldName(String hnswPath) {
+        String fileName = Paths.get(hnswPath).getFileName().toString();
+        String buildVersion = getGraphBuildVersion(fileName);
+        int extensionLength = fileName.endsWith(HNSW_EXTENSION) ? HNSW_EXTENSION.length()
+                : fileName.endsWith(HNSW_COMPOUND_EXTENSION) ? HNSW_COMPOUND_EXTENSION.length() : -1;
+        if (buildVersion == null || extensionLength == -1) {
+            return null;
+        }
+        int fieldStart = fileName.indexOf('_', 1) + buildVersion.length() + 2;
+        int fieldEnd = fileName.length() - extensionLength;
+        return fieldEnd > fieldStart ? fileName.substring(fieldStart, fieldEnd) : null;
+    }
+
+    /**
+     * Returns whether a graph file was built for the field
+     *
+     * @param hnswPath path or name of the graph file
+     * @param fieldName name of the field
+     * @return true if the graph belongs to the field
+     */
+    public static boolean isGraphFileOfField(String hnswPath, String fieldName) {
+        return fieldName.equals(getGraphFieldName(hnswPath));
+    }
+
     public static KNNCodecUtil.Pair getFloats(BinaryDocValues values) throws IOException {
         ArrayList<float[]> vectorList = new ArrayList<>();
         ArrayList<Integer> docIdList = new ArrayList<>();
         for (int doc = values.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = values.nextDoc()) {
-            BytesRef bytesref = values.binaryValue();
-            try (ByteArrayInputStream byteStream = new ByteArrayInputStream(bytesref.bytes, bytesref.offset, bytesref.length);
-                ObjectInputStream objectStream = new ObjectInputStream(byteStream)) {
-                float[] vector = (float[]) objectStream.readObject();
-                vectorList.add(vector);
-            } catch (ClassNotFoundException e) {
-                throw new RuntimeException(e);
-            }
+            vectorList.add(byteToFloatArray(values.binaryValue()));
             docIdList.add(doc);
         }
         return new KNNCodecUtil.Pair(docIdList.stream().mapToInt(Integer::intValue).toArray(), vectorList.toArray(new float[][]{}));
     }
+
+    /**
+     * Decodes a vector serialized by {@link com.amazon.opendistroforelasticsearch.knn.index.VectorField}. Quantized
+     * vectors are dequantized, float16 vectors widened and binary vectors unpacked into 0 and 1 values. The
+     * serialization header of a float[] is fixed, so the floats are read straight from the bytes when the header
+     * matches; anything else goes through ObjectInputStream.
+     *
+     * @param bytesRef serialized vector
+     * @return vector
+     * @throws IOException if the vector cannot be deserialized
+     */
+    public static float[] byteToFloatArray(BytesRef bytesRef) throws IOException {
+        return byteToFloatArray(bytesRef, null);
+    }
+
+    /**
+     * Decodes a vector like {@link #byteToFloatArray(BytesRef)}, filling the given array when its length matches the
+     * dimension of the vector.
+     *
+     * @param bytesRef serialized vector
+     * @param reuse array to decode the vector into, may be null
+     * @return vector, either reuse or a new array
+     * @throws IOException if the vector cannot be deserialized
+     */
+    public static float[] byteToFloatArray(BytesRef bytesRef, float[] reuse) throws IOException {
+        if (QuantizationTypes.isQuantized(bytesRef)) {
+            return QuantizationTypes.dequantize(bytesRef, reuse);
+        }
+
+        if (VectorDataTypes.isFloat16(bytesRef)) {
+            return VectorDataTypes.fromFloat16Bytes(bytesRef, reuse);
+        }
+
+        if (VectorDataTypes.isBinary(bytesRef)) {
+            return VectorDataTypes.fromBinaryBytes(bytesRef, reuse);
+        }
+
+        int headerLength = SERIALIZED_FLOAT_ARRAY_HEADER.length;
+        if (bytesRef.length >= headerLength + Integer.BYTES && hasSerializedFloatArrayHeader(bytesRef)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytesRef.bytes, bytesRef.offset + headerLength,
+                    bytesRef.length - headerLength);
+            int dimension = buffer.getInt();
+            if (buffer.remaining() == dimension * Float.BYTES) {
+                float[] vector = reuse != null && reuse.length == dimension ? reuse : new float[dimension];
+                buffer.asFloatBuffer().get(vector);
+                return vector;
+            }
+        }
+
+        try (ByteArrayInputStream byteStream = new ByteArrayInputStream(bytesRef.bytes, bytesRef.offset, bytesRef.length);
+             ObjectInputStream objectStream = new ObjectInputStream(byteStream)) {
+            return (float[]) objectStream.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static boolean hasSerializedFloatArrayHeader(BytesRef bytesRef) {
+        for (int i = 0; i < SERIALIZED_FLOAT_ARRAY_HEADER.length; i++) {
+            if (bytesRef.bytes[bytesRef.offset + i] != SERIALIZED_FLOAT_ARRAY_HEADER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
@@ -0,0 +1,151 @@
+/*
+ *   Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.knn.index.util;
+
+import com.amazon.opendistroforelasticsearch.knn.common.KNNConstants;
+import com.amazon.opendistroforelasticsearch.knn.index.SpaceTypes;
+import com.amazon.opendistroforelasticsearch.knn.index.codec.KNNCodecUtil;
+import com.amazon.opendistroforelasticsearch.knn.index.v2011.KNNIndex;
+
+/**
+ * Native libraries building and loading the graphs of knn_vector fields. The engine of a field is set by the method
+ * of its mapping and recorded in the attributes of the field. The build version of the engine is part of the name
+ * of the graph files, {@code <segment>_<build version>_<field>.hnsw}, so the engine that wrote a graph is known when
+ * it is loaded back.
+ *
+ * An engine binds its library through its own JNI class, as {@link KNNIndex} does for nmslib, so that libraries are
+ * loaded side by side. Loaded graphs are searched and freed through the {@link KNNIndexHandle} it returns.
+ */
+public enum KNNEngine {
+
+    NMSLIB(KNNConstants.NMSLIB, "2011") {
+        @Override
+        public boolean isSpaceTypeSupported(String spaceType) {
+            return SpaceTypes.contains(spaceType);
+        }
+
+        @Override
+        public void buildIndex(int[] ids, float[][] vectors, String indexPath, String[] algoParams,
+                               String spaceType) {
+            KNNIndex.saveIndex(ids, vectors, indexPath, algoParams, SpaceTypes.getValueByKey(spaceType));
+        }
+
+        @Override
+        public KNNIndexHandle loadIndex(String indexPath, String[] algoParams, String spaceType) {
+            return KNNIndex.loadIndex(indexPath, algoParams, SpaceTypes.getValueByKey(spaceType));
+        }
+    };
+
+    public static final KNNEngine DEFAULT = NMSLIB;
+
+    private final String name;
+    private final String buildVersion;
+
+    KNNEngine(String name, String buildVersion) {
+        this.name = name;
+        this.buildVersion = buildVersion;
+    }
+
+    /**
+     * Get engine name used in mappings
+     *
+     * @return name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the version of the library written in the names of the graph files. It must not contain an underscore.
+     *
+     * @return build version
+     */
+    public String getBuildVersion() {
+        return buildVersion;
+    }
+
+    /**
+     * Whether the engine builds graphs for the space type
+     *
+     * @param spaceType space type name in KNN plugin
+     * @return true if the space type is supported
+     */
+    public abstract boolean isSpaceTypeSupported(String spaceType);
+
+    /**
+     * Builds a graph and writes it to disk
+     *
+     * @param ids doc ids of the vectors
+     * @param vectors vectors to build the graph of
+     * @param indexPath path to write the graph to
+     * @param algoParams parameters of the graph construction
+     * @param spaceType space type name in KNN plugin
+     */
+    public abstract void buildIndex(int[] ids, float[][] vectors, String indexPath, String[] algoParams,
+                                    String spaceType);
+
+    /**
+     * Loads a graph written by {@link #buildIndex} to memory
+     *
+     * @param indexPath path of the graph
+     * @param algoParams parameters of the graph search
+     * @param spaceType space type name in KNN plugin
+     * @return handle of the graph that can be queried for k nearest neighbours
+     */
+    public abstract KNNIndexHandle loadIndex(String indexPath, String[] algoParams, String spaceType);
+
+    public static boolean contains(String name) {
+        for (KNNEngine engine : values()) {
+            if (engine.name.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the engine with the given name
+     *
+     * @param name engine name used in mappings
+     * @return engine
+     * @throws IllegalArgumentException if no engine has the name
+     */
+    public static KNNEngine getEngine(String name) {
+        for (KNNEngine engine : values()) {
+            if (engine.name.equals(name)) {
+                return engine;
+            }
+        }
+        throw new IllegalArgumentException("Invalid engine type: " + name);
+    }
+
+    /**
+     * Get the engine that wrote a graph, from the build version in the name of its file
+     *
+     * @param indexPath path of the graph
+     * @return engine
+     * @throws IllegalArgumentException if no engine has the build version of the file
+     */
+    public static KNNEngine getEngineOfGraph(String indexPath) {
+        String buildVersion = KNNCodecUtil.getGraphBuildVersion(indexPath);
+        for (KNNEngine engine : values()) {
+            if (engine.getBuildVersion().equals(buildVersion)) {
+                return engine;
+            }
+        }
+        throw new IllegalArgumentException("No engine found for graph: " + indexPath);
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ *   Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.knn.index.util;
+
+import com.amazon.opendistroforelasticsearch.knn.index.KNNQueryResult;
+
+import java.io.IOException;
+
+/**
+ * Graph loaded to native memory by a {@link KNNEngine}. The cache and the search only hold graphs through this
+ * handle, so they do not depend on the JNI class of the engine that loaded them.
+ */
+public interface KNNIndexHandle extends AutoCloseable {
+
+    /**
+     * Searches the graph for the k nearest neighbours of the query
+     *
+     * @param query query vector
+     * @param k number of neighbours to return
+     * @return doc ids of the neighbours with their distances to the query
+     * @throws IOException if the graph was already freed
+     */
+    KNNQueryResult[] queryIndex(float[] query, int k) throws IOException;
+
+    /**
+     * Get the size of the graph on disk, used to weigh it in the cache
+     *
+     * @return size of the graph in KB
+     */
+    long getIndexSize();
+
+    /**
+     * Frees the native memory of the graph once no query holds it anymore. Freeing twice has no effect.
+     */
+    @Override
+    void close();
+}
@@ -16,23 +16,23 @@
 package com.amazon.opendistroforelasticsearch.knn.index.v2011;
 
 import com.amazon.opendistroforelasticsearch.knn.index.KNNQueryResult;
+import com.amazon.opendistroforelasticsearch.knn.index.util.KNNIndexHandle;
 import com.amazon.opendistroforelasticsearch.knn.index.util.NmsLibVersion;
 import com.amazon.opendistroforelasticsearch.knn.plugin.stats.KNNCounter;
+import org.elasticsearch.common.util.concurrent.AbstractRefCounted;
 
 import java.io.File;
 import java.io.IOException;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * JNI layer to communicate with the nmslib
  * This class refers to the nms library build with version tag 2.0.11
  * See <a href="https://github.com/nmslib/nmslib/tree/v2.0.11">tag2.0.11</a>
  */
-public class KNNIndex implements AutoCloseable {
+public class KNNIndex implements KNNIndexHandle {
     public static NmsLibVersion VERSION = NmsLibVersion.V2011;
 
     static {
@@ -45,8 +45,19 @@ public class KNNIndex implements AutoCloseable {
         initLibrary();
     }
 
-    private volatile boolean isClosed = false;
-    private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+    private final AtomicBoolean isClosed = new AtomicBoolean(false);
+
+    /**
+     * Queries hold a reference to the index for the duration of the JNI call, and close releases the reference held
+     * since the load. The native memory is freed when the last reference is released, so queries never wait on
+     * each other and close never frees the graph under a running query.
+     */
+    private final AbstractRefCounted refCounted = new AbstractRefCounted("knn-index") {
+        @Override
+        protected void closeInternal() {
+            gc(indexPointer);
+        }
+    };
 
     private final long indexPointer;
     private final long indexSize;
@@ -64,49 +75,42 @@ public class KNNIndex implements AutoCloseable {
      *
      * @return size of the hnsw index on the disk in KB.
      */
+    @Override
     public long getIndexSize() {
         return this.indexSize;
     }
 
+    @Override
     public KNNQueryResult[] queryIndex(final float[] query, final int k) throws IOException {
-        Lock readLock = readWriteLock.readLock();
-        readLock.lock();
         KNNCounter.GRAPH_QUERY_REQUESTS.increment();
         try {
-            if (this.isClosed) {
+            if (!refCounted.tryIncRef()) {
                 throw new IOException("Index is already closed");
             }
-            final long indexPointer = this.indexPointer;
-            return AccessController.doPrivileged(
-                    new PrivilegedAction<KNNQueryResult[]>() {
-                        public KNNQueryResult[] run() {
-                            return queryIndex(indexPointer, query, k);
+            try {
+                final long indexPointer = this.indexPointer;
+                return AccessController.doPrivileged(
+                        new PrivilegedAction<KNNQueryResult[]>() {
+                            public KNNQueryResult[] run() {
+                                return queryIndex(indexPointer, query, k);
+                            }
                         }
-                    }
-            );
-
+                );
+            } finally {
+                refCounted.decRef();
+            }
         } catch (Exception ex) {
             KNNCounter.GRAPH_QUERY_ERRORS.increment();
             throw new RuntimeException("Unable to query the index: " + ex);
-        } finally {
-            readLock.unlock();
         }
     }
 
     @Override
     public void close() {
-        Lock writeLock = readWriteLock.writeLock();
-        writeLock.lock();
         // Autocloseable documentation recommends making close idempotent. We don't expect to doubly close
-        // but this will help prevent a crash in that situation.    
-        if (this.isClosed) {
-            return;
-        }
-        try {
-            gc(this.indexPointer);
-        } finally {
-            this.isClosed = true;
-            writeLock.unlock();
+        // but this will help prevent a crash in that situation.
+        if (isClosed.compareAndSet(false, true)) {
+            refCounted.decRef();
         }
     }
 
@@ -144,13 +148,13 @@ public class KNNIndex implements AutoCloseable {
     // Builds index and writes to disk (no index pointer escapes).
     public static native void saveIndex(int[] ids, float[][] data, String indexPath, String[] algoParams, String spaceType);
 
-    // Queries index (thread safe with other readers, blocked by write lock)
+    // Queries index (thread safe with other readers, needs a reference to the index)
     private static native KNNQueryResult[] queryIndex(long indexPointer, float[] query, int k);
 
     // Loads index and returns pointer to index
     private static native long init(String indexPath, String[] algoParams, String spaceType);
 
-    // Deletes memory pointed to by index pointer (needs write lock)
+    // Deletes memory pointed to by index pointer (once no reference to the index is left)
     private static native void gc(long indexPointer);
 
     // Calls nmslib's initLibrary function: https://github.com/nmslib/nmslib/blob/v2.0.11/similarity_search/include/init.h#L27
@@ -16,13 +16,15 @@
 
 package com.amazon.opendistroforelasticsearch.knn.plugin;
 
+import com.amazon.opendistroforelasticsearch.knn.index.KNNSegmentWarmer;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.engine.EngineConfig;
 import org.elasticsearch.index.engine.EngineFactory;
 import org.elasticsearch.index.engine.InternalEngine;
 
 /**
- * EngineFactory to inject the KNNCodecService to help segments write using the KNNCodec.
+ * EngineFactory to inject the KNNCodecService to help segments write using the KNNCodec, and the KNNSegmentWarmer
+ * to load the graphs of new segments before they are searched.
  */
 class KNNEngineFactory implements EngineFactory {
 
@@ -32,7 +34,8 @@ class KNNEngineFactory implements EngineFactory {
     public Engine newReadWriteEngine(EngineConfig config) {
         codecService.setPostingsFormat(config.getCodec().postingsFormat());
         EngineConfig engineConfig = new EngineConfig(config.getShardId(),
-                config.getThreadPool(), config.getIndexSettings(), config.getWarmer(), config.getStore(),
+                config.getThreadPool(), config.getIndexSettings(),
+                new KNNSegmentWarmer(config.getWarmer(), config.getShardId().getIndexName()), config.getStore(),
                 config.getMergePolicy(), config.getAnalyzer(), config.getSimilarity(), codecService,
                 config.getEventListener(), config.getQueryCache(), config.getQueryCachingPolicy(),
                 config.getTranslogConfig(), config.getFlushMergesAfter(), config.getExternalRefreshListener(),
@@ -15,34 +15,45 @@
 
 package com.amazon.opendistroforelasticsearch.knn.plugin;
 
+import com.amazon.opendistroforelasticsearch.knn.common.KNNConstants;
 import com.amazon.opendistroforelasticsearch.knn.index.KNNCircuitBreaker;
-import com.amazon.opendistroforelasticsearch.knn.index.KNNIndexCache;
+import com.amazon.opendistroforelasticsearch.knn.index.KNNIndexEventListener;
+import com.amazon.opendistroforelasticsearch.knn.index.KNNIndexingCircuitBreakerFilter;
 import com.amazon.opendistroforelasticsearch.knn.index.KNNQueryBuilder;
 import com.amazon.opendistroforelasticsearch.knn.index.KNNSettings;
 import com.amazon.opendistroforelasticsearch.knn.index.KNNVectorFieldMapper;
 
+import com.amazon.opendistroforelasticsearch.knn.plugin.rest.RestKNNClearCacheHandler;
 import com.amazon.opendistroforelasticsearch.knn.plugin.rest.RestKNNStatsHandler;
 import com.amazon.opendistroforelasticsearch.knn.plugin.rest.RestKNNWarmupHandler;
 import com.amazon.opendistroforelasticsearch.knn.plugin.script.KNNScoringScriptEngine;
 import com.amazon.opendistroforelasticsearch.knn.plugin.stats.KNNStats;
+import com.amazon.opendistroforelasticsearch.knn.plugin.transport.KNNCacheCapacityAction;
+import com.amazon.opendistroforelasticsearch.knn.plugin.transport.KNNCacheCapacityTransportAction;
+import com.amazon.opendistroforelasticsearch.knn.plugin.transport.KNNClearCacheAction;
+import com.amazon.opendistroforelasticsearch.knn.plugin.transport.KNNClearCacheTransportAction;
 import com.amazon.opendistroforelasticsearch.knn.plugin.transport.KNNStatsAction;
 import com.amazon.opendistroforelasticsearch.knn.plugin.transport.KNNStatsTransportAction;
 import com.amazon.opendistroforelasticsearch.knn.plugin.transport.KNNWarmupAction;
+import com.amazon.opendistroforelasticsearch.knn.plugin.transport.KNNWarmupShardTask;
 import com.amazon.opendistroforelasticsearch.knn.plugin.transport.KNNWarmupTransportAction;
 import com.google.common.collect.ImmutableList;
 
 import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.support.ActionFilter;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
 import org.elasticsearch.cluster.node.DiscoveryNodes;
 import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.breaker.CircuitBreaker;
 import org.elasticsearch.common.io.stream.NamedWriteableRegistry;
 import org.elasticsearch.common.settings.ClusterSettings;
 import org.elasticsearch.common.settings.IndexScopedSettings;
 import org.elasticsearch.common.settings.Setting;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.settings.SettingsFilter;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.elasticsearch.common.xcontent.NamedXContentRegistry;
 import org.elasticsearch.env.Environment;
 import org.elasticsearch.env.NodeEnvironment;
@@ -50,7 +61,9 @@ import org.elasticsearch.index.IndexModule;
 import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.engine.EngineFactory;
 import org.elasticsearch.index.mapper.Mapper;
+import org.elasticsearch.indices.breaker.BreakerSettings;
 import org.elasticsearch.plugins.ActionPlugin;
+import org.elasticsearch.plugins.CircuitBreakerPlugin;
 import org.elasticsearch.plugins.EnginePlugin;
 import org.elasticsearch.plugins.MapperPlugin;
 import org.elasticsearch.plugins.Plugin;
@@ -62,6 +75,9 @@ import org.elasticsearch.rest.RestHandler;
 import org.elasticsearch.script.ScriptContext;
 import org.elasticsearch.script.ScriptEngine;
 import org.elasticsearch.script.ScriptService;
+import org.elasticsearch.tasks.Task;
+import org.elasticsearch.threadpool.ExecutorBuilder;
+import org.elasticsearch.threadpool.FixedExecutorBuilder;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.watcher.ResourceWatcherService;
 
@@ -106,7 +122,8 @@ import static java.util.Collections.singletonList;
  *   }
  *
  */
-public class KNNPlugin extends Plugin implements MapperPlugin, SearchPlugin, ActionPlugin, EnginePlugin, ScriptPlugin {
+public class KNNPlugin extends Plugin implements MapperPlugin, SearchPlugin, ActionPlugin, EnginePlugin, ScriptPlugin,
+        CircuitBreakerPlugin {
 
     public static final String KNN_BASE_URI = "/_opendistro/_knn";
 
@@ -131,7 +148,6 @@ public class KNNPlugin extends Plugin implements MapperPlugin, SearchPlugin, Act
                                                IndexNameExpressionResolver indexNameExpressionResolver,
                                                Supplier<RepositoriesService> repositoriesServiceSupplier) {
         this.clusterService = clusterService;
-        KNNIndexCache.setResourceWatcherService(resourceWatcherService);
         KNNSettings.state().initialize(client, clusterService);
         KNNCircuitBreaker.getInstance().initialize(threadPool, clusterService, client);
         knnStats = new KNNStats(KNN_STATS);
@@ -154,8 +170,10 @@ public class KNNPlugin extends Plugin implements MapperPlugin, SearchPlugin, Act
         RestKNNStatsHandler restKNNStatsHandler = new RestKNNStatsHandler(settings, restController, knnStats);
         RestKNNWarmupHandler restKNNWarmupHandler = new RestKNNWarmupHandler(settings, restController, clusterService,
                 indexNameExpressionResolver);
+        RestKNNClearCacheHandler restKNNClearCacheHandler = new RestKNNClearCacheHandler(settings, restController,
+                clusterService, indexNameExpressionResolver);
 
-        return Arrays.asList(restKNNStatsHandler, restKNNWarmupHandler);
+        return Arrays.asList(restKNNStatsHandler, restKNNWarmupHandler, restKNNClearCacheHandler);
     }
 
     /**
@@ -165,10 +183,34 @@ public class KNNPlugin extends Plugin implements MapperPlugin, SearchPlugin, Act
     public List<ActionHandler<? extends ActionRequest, ? extends ActionResponse>> getActions() {
         return Arrays.asList(
                 new ActionHandler<>(KNNStatsAction.INSTANCE, KNNStatsTransportAction.class),
-                new ActionHandler<>(KNNWarmupAction.INSTANCE, KNNWarmupTransportAction.class)
+                new ActionHandler<>(KNNWarmupAction.INSTANCE, KNNWarmupTransportAction.class),
+                new ActionHandler<>(KNNCacheCapacityAction.INSTANCE, KNNCacheCapacityTransportAction.class),
+                new ActionHandler<>(KNNClearCacheAction.INSTANCE, KNNClearCacheTransportAction.class)
         );
     }
 
+    @Override
+    public List<ActionFilter> getActionFilters() {
+        return singletonList(new KNNIndexingCircuitBreakerFilter(() -> clusterService));
+    }
+
+    /**
+     * Registers the knn_warmup thread pool, on which the graphs are loaded by the warmup API. Its size, which bounds
+     * the number of graphs loaded concurrently on a node, can be set with thread_pool.knn_warmup.size
+     */
+    @Override
+    public List<ExecutorBuilder<?>> getExecutorBuilders(Settings settings) {
+        int warmupThreads = Math.max(1, EsExecutors.allocatedProcessors(settings) / 2);
+        return singletonList(new FixedExecutorBuilder(settings, KNNConstants.KNN_WARMUP_THREAD_POOL, warmupThreads,
+                -1));
+    }
+
+    @Override
+    public List<NamedWriteableRegistry.Entry> getNamedWriteables() {
+        return singletonList(new NamedWriteableRegistry.Entry(Task.Status.class, KNNWarmupShardTask.Status.NAME,
+                KNNWarmupShardTask.Status::new));
+    }
+
     @Override
     public Optional<EngineFactory> getEngineFactory(IndexSettings indexSettings) {
         if (indexSettings.getValue(KNNSettings.IS_KNN_INDEX_SETTING)) {
@@ -180,6 +222,9 @@ public class KNNPlugin extends Plugin implements MapperPlugin, SearchPlugin, Act
     @Override
     public void onIndexModule(IndexModule indexModule) {
         KNNSettings.state().onIndexModule(indexModule);
+        if (KNNSettings.IS_KNN_INDEX_SETTING.get(indexModule.getSettings())) {
+            indexModule.addIndexEventListener(new KNNIndexEventListener());
+        }
     }
 
     /**
@@ -213,4 +258,18 @@ public class KNNPlugin extends Plugin implements MapperPlugin, SearchPlugin, Act
     public ScriptEngine getScriptEngine(Settings settings, Collection<ScriptContext<?>> contexts) {
         return new KNNScoringScriptEngine();
     }
+
+    /**
+     * Registers the knn_graph breaker, which accounts the native memory of the graphs loaded in the cache and of
+     * the graphs being built
+     */
+    @Override
+    public BreakerSettings getCircuitBreaker(Settings settings) {
+        return KNNCircuitBreaker.getGraphMemoryBreakerSettings(settings);
+    }
+
+    @Override
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        KNNCircuitBreaker.getInstance().setGraphMemoryBreaker(circuitBreaker);
+    }
 }
@@ -27,11 +27,17 @@ import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.index.Index;
 import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.BytesRestResponse;
 import org.elasticsearch.rest.RestController;
 import org.elasticsearch.rest.RestRequest;
+import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.rest.action.RestToXContentListener;
+import org.elasticsearch.tasks.LoggingTaskListener;
+import org.elasticsearch.tasks.Task;
+import org.elasticsearch.tasks.TaskId;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -42,10 +48,12 @@ import static org.elasticsearch.action.support.IndicesOptions.strictExpandOpen;
 
 /**
  * RestHandler for k-NN index warmup API. API provides the ability for a user to load specific indices' k-NN graphs
- * into memory.
+ * into memory. With wait_for_completion=false, the warmup runs in the background and the API returns the id of its
+ * task, whose progress can be followed through the tasks API.
  */
 public class RestKNNWarmupHandler extends BaseRestHandler {
     public static String NAME = "knn_warmup_action";
+    public static final String WAIT_FOR_COMPLETION = "wait_for_completion";
 
     private static final Logger logger = LogManager.getLogger(RestKNNWarmupHandler.class);
 
@@ -75,7 +83,22 @@ public class RestKNNWarmupHandler extends BaseRestHandler {
         KNNWarmupRequest knnWarmupRequest = createKNNWarmupRequest(request);
         logger.info("[KNN] Warmup started for the following indices: "
                 + String.join(",", knnWarmupRequest.indices()));
-        return channel -> client.execute(KNNWarmupAction.INSTANCE, knnWarmupRequest, new RestToXContentListener<>(channel));
+        if (request.paramAsBoolean(WAIT_FOR_COMPLETION, true)) {
+            return channel -> client.execute(KNNWarmupAction.INSTANCE, knnWarmupRequest,
+                    new RestToXContentListener<>(channel));
+        }
+
+        knnWarmupRequest.setShouldStoreResult(true);
+        Task task = client.executeLocally(KNNWarmupAction.INSTANCE, knnWarmupRequest, LoggingTaskListener.instance());
+        TaskId taskId = new TaskId(client.getLocalNodeId(), task.getId());
+        return channel -> {
+            try (XContentBuilder builder = channel.newBuilder()) {
+                builder.startObject();
+                builder.field("task", taskId.toString());
+                builder.endObject();
+                channel.sendResponse(new BytesRestResponse(RestStatus.OK, builder));
+            }
+        };
     }
 
     private KNNWarmupRequest createKNNWarmupRequest(RestRequest request) {
@@ -15,21 +15,26 @@
 
 package com.amazon.opendistroforelasticsearch.knn.plugin.script;
 
-import com.amazon.opendistroforelasticsearch.knn.index.KNNVectorScriptDocValues;
+import com.amazon.opendistroforelasticsearch.knn.index.KNNWeight;
+import com.amazon.opendistroforelasticsearch.knn.index.codec.KNNCodecUtil;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
 import org.elasticsearch.index.fielddata.ScriptDocValues;
 import org.elasticsearch.script.ScoreScript;
 import org.elasticsearch.search.lookup.SearchLookup;
 
 import java.io.IOException;
-import java.math.BigInteger;
+import java.io.UncheckedIOException;
 import java.util.Map;
 import java.util.function.BiFunction;
 
 /**
  * KNNScoreScript is used for adjusting the score of query results based on similarity distance methods. Scripts
  * operate on a per document basis. Because the scoring method is passed in during construction, KNNScoreScripts are
- * only concerned with the types of the query and docs being processed.
+ * only concerned with the types of the query and docs being processed. KNNVectors are the exception: every space has
+ * its own subclass of {@link KNNVectorType} so the exact search loop does not go through the generic scoring method.
  */
 public abstract class KNNScoreScript<T> extends ScoreScript {
     protected final T queryValue;
@@ -73,14 +78,19 @@ public abstract class KNNScoreScript<T> extends ScoreScript {
     }
 
     /**
-     * KNNScoreScript with BigInteger type. The query value passed in as well as the DocValues being searched over
-     * are expected to be BigInteger.
+     * Script scoring binary doc values by their hamming distance to the query. The query value passed in is expected
+     * to be the bits of the query packed into 64 bit words by {@link KNNScoringSpaceUtil#parseToLongArray(Object)},
+     * which are compared in place with the bytes of the doc values without any allocation per doc.
      */
-    public static class BigIntegerType extends KNNScoreScript<BigInteger> {
-        public BigIntegerType(Map<String, Object> params, BigInteger queryValue, String field,
-                              BiFunction<BigInteger, BigInteger, Float> scoringMethod, SearchLookup lookup,
-                              LeafReaderContext leafContext) {
-            super(params, queryValue, field, scoringMethod, lookup, leafContext);
+    public static class BytesRefType extends ScoreScript {
+        private final long[] queryValue;
+        private final String field;
+
+        public BytesRefType(Map<String, Object> params, long[] queryValue, String field, SearchLookup lookup,
+                            LeafReaderContext leafContext) {
+            super(params, lookup, leafContext);
+            this.queryValue = queryValue;
+            this.field = field;
         }
 
         /**
@@ -96,20 +106,32 @@ public abstract class KNNScoreScript<T> extends ScoreScript {
             if (scriptDocValues.isEmpty()) {
                 return 0.0;
             }
-            return this.scoringMethod.apply(this.queryValue, new BigInteger(1, scriptDocValues.getValue().bytes));
+            return 1.0f / (1 + KNNScoringUtil.calculateHammingBit(this.queryValue, scriptDocValues.getValue()));
         }
     }
 
     /**
-     * KNNVectors with float[] type. The query value passed in is expected to be float[]. The fieldType of the docs
-     * being searched over are expected to be KNNVector type.
+     * Base of the scripts scoring KNNVectors. The query value passed in is expected to be float[] and the fieldType of
+     * the docs being searched over is expected to be KNNVector type. The vectors are read straight from the binary
+     * doc values of the segment rather than through the doc lookup, and every space scores them with its own
+     * primitive distance function.
      */
-    public static class KNNVectorType extends KNNScoreScript<float[]> {
+    public abstract static class KNNVectorType extends ScoreScript {
+        protected final float[] queryValue;
+        private final BinaryDocValues vectorValues;
+        protected int docId;
 
-        public KNNVectorType(Map<String, Object> params, float[] queryValue, String field,
-                             BiFunction<float[], float[], Float> scoringMethod, SearchLookup lookup,
+        public KNNVectorType(Map<String, Object> params, float[] queryValue, String field, SearchLookup lookup,
                              LeafReaderContext leafContext) throws IOException {
-            super(params, queryValue, field, scoringMethod, lookup, leafContext);
+            super(params, lookup, leafContext);
+            this.queryValue = queryValue;
+            this.vectorValues = DocValues.getBinary(leafContext.reader(), field);
+        }
+
+        @Override
+        public void setDocument(int docid) {
+            super.setDocument(docid);
+            this.docId = docid;
         }
 
         /**
@@ -121,11 +143,115 @@ public abstract class KNNScoreScript<T> extends ScoreScript {
          */
         @Override
         public double execute(ScoreScript.ExplanationHolder explanationHolder) {
-            KNNVectorScriptDocValues scriptDocValues = (KNNVectorScriptDocValues) getDoc().get(this.field);
-            if (scriptDocValues.isEmpty()) {
-                return 0.0;
+            try {
+                if (!vectorValues.advanceExact(docId)) {
+                    return 0.0;
+                }
+                return score(KNNCodecUtil.byteToFloatArray(vectorValues.binaryValue()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
-            return this.scoringMethod.apply(this.queryValue, scriptDocValues.getValue());
+        }
+
+        /**
+         * @param inputVector vector of the current doc
+         * @return score of the vector to the query vector
+         * @throws IOException if additional doc values of the current doc cannot be read
+         */
+        protected abstract float score(float[] inputVector) throws IOException;
+    }
+
+    public static final class L2Type extends KNNVectorType {
+        public L2Type(Map<String, Object> params, float[] queryValue, String field, SearchLookup lookup,
+                      LeafReaderContext leafContext) throws IOException {
+            super(params, queryValue, field, lookup, leafContext);
+        }
+
+        @Override
+        protected float score(float[] inputVector) {
+            return 1 / (1 + KNNScoringUtil.l2Squared(this.queryValue, inputVector));
+        }
+    }
+
+    public static final class L1Type extends KNNVectorType {
+        public L1Type(Map<String, Object> params, float[] queryValue, String field, SearchLookup lookup,
+                      LeafReaderContext leafContext) throws IOException {
+            super(params, queryValue, field, lookup, leafContext);
+        }
+
+        @Override
+        protected float score(float[] inputVector) {
+            return 1 / (1 + KNNScoringUtil.l1Norm(this.queryValue, inputVector));
+        }
+    }
+
+    public static final class LInfType extends KNNVectorType {
+        public LInfType(Map<String, Object> params, float[] queryValue, String field, SearchLookup lookup,
+                        LeafReaderContext leafContext) throws IOException {
+            super(params, queryValue, field, lookup, leafContext);
+        }
+
+        @Override
+        protected float score(float[] inputVector) {
+            return 1 / (1 + KNNScoringUtil.lInfNorm(this.queryValue, inputVector));
+        }
+    }
+
+    public static final class InnerProdType extends KNNVectorType {
+        public InnerProdType(Map<String, Object> params, float[] queryValue, String field, SearchLookup lookup,
+                             LeafReaderContext leafContext) throws IOException {
+            super(params, queryValue, field, lookup, leafContext);
+        }
+
+        @Override
+        protected float score(float[] inputVector) {
+            return KNNWeight.normalizeScore(-KNNScoringUtil.innerProduct(this.queryValue, inputVector));
+        }
+    }
+
+    public static final class CosineSimilarityType extends KNNVectorType {
+        private final float queryVectorSquaredMagnitude;
+
+        public CosineSimilarityType(Map<String, Object> params, float[] queryValue, float queryVectorSquaredMagnitude,
+                                    String field, SearchLookup lookup, LeafReaderContext leafContext)
+                throws IOException {
+            super(params, queryValue, field, lookup, leafContext);
+            this.queryVectorSquaredMagnitude = queryVectorSquaredMagnitude;
+        }
+
+        @Override
+        protected float score(float[] inputVector) {
+            return 1 + KNNScoringUtil.cosinesimilOptimized(this.queryValue, inputVector,
+                    this.queryVectorSquaredMagnitude);
+        }
+    }
+
+    /**
+     * Cosine similarity over KNNVectors whose L2 norm was stored at index time. The stored norm replaces the per
+     * document norm computation; documents without a stored norm fall back to computing it.
+     */
+    public static final class StoredNormCosineType extends KNNVectorType {
+        private final float queryVectorSquaredMagnitude;
+        private final float queryNorm;
+        private final NumericDocValues norms;
+
+        public StoredNormCosineType(Map<String, Object> params, float[] queryValue, float queryVectorSquaredMagnitude,
+                                    String field, String normField, SearchLookup lookup, LeafReaderContext leafContext)
+                throws IOException {
+            super(params, queryValue, field, lookup, leafContext);
+            this.queryVectorSquaredMagnitude = queryVectorSquaredMagnitude;
+            this.queryNorm = (float) Math.sqrt(queryVectorSquaredMagnitude);
+            this.norms = DocValues.getNumeric(leafContext.reader(), normField);
+        }
+
+        @Override
+        protected float score(float[] inputVector) throws IOException {
+            if (norms.advanceExact(this.docId)) {
+                return 1 + KNNScoringUtil.cosinesimilWithNorms(this.queryValue, inputVector, this.queryNorm,
+                        Float.intBitsToFloat((int) norms.longValue()));
+            }
+            return 1 + KNNScoringUtil.cosinesimilOptimized(this.queryValue, inputVector,
+                    this.queryVectorSquaredMagnitude);
         }
     }
 }
@@ -17,14 +17,12 @@ package com.amazon.opendistroforelasticsearch.knn.plugin.script;
 
 import com.amazon.opendistroforelasticsearch.knn.common.KNNConstants;
 import com.amazon.opendistroforelasticsearch.knn.index.KNNVectorFieldMapper;
-import com.amazon.opendistroforelasticsearch.knn.index.KNNWeight;
 import org.apache.lucene.index.LeafReaderContext;
 import org.elasticsearch.index.mapper.MappedFieldType;
 import org.elasticsearch.script.ScoreScript;
 import org.elasticsearch.search.lookup.SearchLookup;
 
 import java.io.IOException;
-import java.math.BigInteger;
 import java.util.Map;
 import java.util.function.BiFunction;
 
@@ -32,9 +30,9 @@ import static com.amazon.opendistroforelasticsearch.knn.plugin.script.KNNScoring
 import static com.amazon.opendistroforelasticsearch.knn.plugin.script.KNNScoringSpaceUtil.isBinaryFieldType;
 import static com.amazon.opendistroforelasticsearch.knn.plugin.script.KNNScoringSpaceUtil.isKNNVectorFieldType;
 import static com.amazon.opendistroforelasticsearch.knn.plugin.script.KNNScoringSpaceUtil.isLongFieldType;
-import static com.amazon.opendistroforelasticsearch.knn.plugin.script.KNNScoringSpaceUtil.parseToBigInteger;
 import static com.amazon.opendistroforelasticsearch.knn.plugin.script.KNNScoringSpaceUtil.parseToFloatArray;
 import static com.amazon.opendistroforelasticsearch.knn.plugin.script.KNNScoringSpaceUtil.parseToLong;
+import static com.amazon.opendistroforelasticsearch.knn.plugin.script.KNNScoringSpaceUtil.parseToLongArray;
 
 
 public interface KNNScoringSpace {
@@ -54,7 +52,6 @@ public interface KNNScoringSpace {
     class L2 implements KNNScoringSpace {
 
         float[] processedQuery;
-        BiFunction<float[], float[], Float> scoringMethod;
 
         /**
          * Constructor for L2 scoring space. L2 scoring space expects values to be of type float[].
@@ -70,20 +67,19 @@ public interface KNNScoringSpace {
 
             this.processedQuery = parseToFloatArray(query,
                     ((KNNVectorFieldMapper.KNNVectorFieldType) fieldType).getDimension());
-            this.scoringMethod = (float[] q, float[] v) -> 1 / (1 + KNNScoringUtil.l2Squared(q, v));
         }
 
         public ScoreScript getScoreScript(Map<String, Object> params, String field, SearchLookup lookup,
                                           LeafReaderContext ctx) throws IOException {
-            return new KNNScoreScript.KNNVectorType(params, this.processedQuery, field, this.scoringMethod, lookup,
-                    ctx);
+            return new KNNScoreScript.L2Type(params, this.processedQuery, field, lookup, ctx);
         }
     }
 
     class CosineSimilarity implements KNNScoringSpace {
 
         float[] processedQuery;
-        BiFunction<float[], float[], Float> scoringMethod;
+        float queryVectorSquaredMagnitude;
+        boolean normStored;
 
         /**
          * Constructor for CosineSimilarity scoring space. CosineSimilarity scoring space expects values to be of type
@@ -100,22 +96,26 @@ public interface KNNScoringSpace {
 
             this.processedQuery = parseToFloatArray(query,
                     ((KNNVectorFieldMapper.KNNVectorFieldType) fieldType).getDimension());
-            float qVectorSquaredMagnitude = getVectorMagnitudeSquared(this.processedQuery);
-            this.scoringMethod = (float[] q, float[] v) -> 1 + KNNScoringUtil.cosinesimilOptimized(q, v,
-                    qVectorSquaredMagnitude);
+            this.queryVectorSquaredMagnitude = getVectorMagnitudeSquared(this.processedQuery);
+            this.normStored = ((KNNVectorFieldMapper.KNNVectorFieldType) fieldType).isNormStored();
         }
 
         public ScoreScript getScoreScript(Map<String, Object> params, String field, SearchLookup lookup,
                                           LeafReaderContext ctx) throws IOException {
-                return new KNNScoreScript.KNNVectorType(params, this.processedQuery, field, this.scoringMethod, lookup,
-                        ctx);
+                if (this.normStored) {
+                    return new KNNScoreScript.StoredNormCosineType(params, this.processedQuery,
+                            this.queryVectorSquaredMagnitude, field, KNNVectorFieldMapper.normFieldName(field), lookup,
+                            ctx);
+                }
+                return new KNNScoreScript.CosineSimilarityType(params, this.processedQuery,
+                        this.queryVectorSquaredMagnitude, field, lookup, ctx);
         }
     }
 
     class HammingBit implements KNNScoringSpace {
 
         Object processedQuery;
-        BiFunction<?, ?, Float> scoringMethod;
+        BiFunction<Long, Long, Float> scoringMethod;
 
         /**
          * Constructor for HammingBit scoring space. HammingBit scoring space expects values to either be of type
@@ -129,32 +129,27 @@ public interface KNNScoringSpace {
                 this.processedQuery = parseToLong(query);
                 this.scoringMethod = (Long q, Long v) -> 1.0f / (1 + KNNScoringUtil.calculateHammingBit(q, v));
             } else if (isBinaryFieldType(fieldType)) {
-                this.processedQuery = parseToBigInteger(query);
-                this.scoringMethod = (BigInteger q, BigInteger v) ->
-                        1.0f / (1 + KNNScoringUtil.calculateHammingBit(q, v));
+                this.processedQuery = parseToLongArray(query);
             } else {
                 throw new IllegalArgumentException("Incompatible field_type for hamming space. The field type must " +
                         "of type long or binary.");
             }
         }
 
-        @SuppressWarnings("unchecked")
         public ScoreScript getScoreScript(Map<String, Object> params, String field, SearchLookup lookup,
                                           LeafReaderContext ctx) throws IOException {
             if (this.processedQuery instanceof Long) {
-                return new KNNScoreScript.LongType(params, (Long) this.processedQuery, field,
-                        (BiFunction<Long, Long, Float>) this.scoringMethod, lookup, ctx);
+                return new KNNScoreScript.LongType(params, (Long) this.processedQuery, field, this.scoringMethod,
+                        lookup, ctx);
             }
 
-            return new KNNScoreScript.BigIntegerType(params, (BigInteger) this.processedQuery, field,
-                    (BiFunction<BigInteger, BigInteger, Float>) this.scoringMethod, lookup, ctx);
+            return new KNNScoreScript.BytesRefType(params, (long[]) this.processedQuery, field, lookup, ctx);
         }
     }
 
     class L1 implements KNNScoringSpace {
 
         float[] processedQuery;
-        BiFunction<float[], float[], Float> scoringMethod;
 
         /**
          * Constructor for L1 scoring space. L1 scoring space expects values to be of type float[].
@@ -170,20 +165,17 @@ public interface KNNScoringSpace {
 
             this.processedQuery = parseToFloatArray(query,
                     ((KNNVectorFieldMapper.KNNVectorFieldType) fieldType).getDimension());
-            this.scoringMethod = (float[] q, float[] v) -> 1 / (1 + KNNScoringUtil.l1Norm(q, v));
         }
 
         public ScoreScript getScoreScript(Map<String, Object> params, String field, SearchLookup lookup,
                                           LeafReaderContext ctx) throws IOException {
-            return new KNNScoreScript.KNNVectorType(params, this.processedQuery, field, this.scoringMethod, lookup,
-                    ctx);
+            return new KNNScoreScript.L1Type(params, this.processedQuery, field, lookup, ctx);
         }
     }
 
     class LInf implements KNNScoringSpace {
 
         float[] processedQuery;
-        BiFunction<float[], float[], Float> scoringMethod;
 
         /**
          * Constructor for L-inf scoring space. L-inf scoring space expects values to be of type float[].
@@ -199,20 +191,17 @@ public interface KNNScoringSpace {
 
             this.processedQuery = parseToFloatArray(query,
                     ((KNNVectorFieldMapper.KNNVectorFieldType) fieldType).getDimension());
-            this.scoringMethod = (float[] q, float[] v) -> 1 / (1 + KNNScoringUtil.lInfNorm(q, v));
         }
 
         public ScoreScript getScoreScript(Map<String, Object> params, String field, SearchLookup lookup,
                                           LeafReaderContext ctx) throws IOException {
-            return new KNNScoreScript.KNNVectorType(params, this.processedQuery, field, this.scoringMethod, lookup,
-                    ctx);
+            return new KNNScoreScript.LInfType(params, this.processedQuery, field, lookup, ctx);
         }
     }
 
     class InnerProd implements KNNScoringSpace {
 
         float[] processedQuery;
-        BiFunction<float[], float[], Float> scoringMethod;
 
         /**
          * Constructor for innerproduct scoring space. innerproduct scoring space expects values to be of type float[].
@@ -228,13 +217,11 @@ public interface KNNScoringSpace {
 
             this.processedQuery = parseToFloatArray(query,
                     ((KNNVectorFieldMapper.KNNVectorFieldType) fieldType).getDimension());
-            this.scoringMethod = (float[] q, float[] v) -> KNNWeight.normalizeScore(-KNNScoringUtil.innerProduct(q, v));
         }
 
         @Override
         public ScoreScript getScoreScript(Map<String, Object> params, String field, SearchLookup lookup, LeafReaderContext ctx) throws IOException {
-            return new KNNScoreScript.KNNVectorType(params, this.processedQuery, field, this.scoringMethod, lookup,
-                    ctx);
+            return new KNNScoreScript.InnerProdType(params, this.processedQuery, field, lookup, ctx);
         }
     }
 }
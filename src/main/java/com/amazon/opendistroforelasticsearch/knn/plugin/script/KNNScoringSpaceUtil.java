@@ -21,9 +21,8 @@ import org.elasticsearch.index.mapper.BinaryFieldMapper;
 import org.elasticsearch.index.mapper.MappedFieldType;
 import org.elasticsearch.index.mapper.NumberFieldMapper;
 
-import java.math.BigInteger;
-import java.util.ArrayList;
 import java.util.Base64;
+import java.util.List;
 
 import static org.elasticsearch.index.mapper.NumberFieldMapper.NumberType.LONG;
 
@@ -79,13 +78,21 @@ public class KNNScoringSpaceUtil {
     }
 
     /**
-     * Convert an Object to a BigInteger.
+     * Convert an Object to the 64 bit words of its bytes, aligned on the last bit like the magnitude of a BigInteger:
+     * the last byte goes to the lowest bits of the last word.
      *
      * @param object Base64 encoded String
-     * @return BigInteger containing the bytes of decoded object
+     * @return long[] containing the bytes of decoded object
      */
-    public static BigInteger parseToBigInteger(Object object) {
-        return new BigInteger(1, Base64.getDecoder().decode((String) object));
+    public static long[] parseToLongArray(Object object) {
+        byte[] bytes = Base64.getDecoder().decode((String) object);
+        long[] words = new long[(bytes.length + Long.BYTES - 1) / Long.BYTES];
+        for (int i = 0; i < bytes.length; i++) {
+            int fromEnd = bytes.length - 1 - i;
+            words[words.length - 1 - fromEnd / Long.BYTES] |=
+                    (bytes[i] & 0xFFL) << (Byte.SIZE * (fromEnd % Long.BYTES));
+        }
+        return words;
     }
 
     /**
@@ -106,20 +113,22 @@ public class KNNScoringSpaceUtil {
     }
 
     /**
-     * Converts Object vector to primitive float[]
+     * Converts Object vector to primitive float[]. The vector is expected to be a float[], which is returned as is, or
+     * a list of numbers.
      *
      * @param vector input vector
      * @return Float array representing the vector
      */
-    @SuppressWarnings("unchecked")
     public static float[] convertVectorToPrimitive(Object vector) {
-        float[] primitiveVector = null;
-        if (vector != null) {
-            final ArrayList<Double> tmp = (ArrayList<Double>) vector;
-            primitiveVector = new float[tmp.size()];
-            for (int i = 0; i < primitiveVector.length; i++) {
-                primitiveVector[i] = tmp.get(i).floatValue();
-            }
+        if (vector == null || vector instanceof float[]) {
+            return (float[]) vector;
+        }
+
+        final List<?> values = (List<?>) vector;
+        float[] primitiveVector = new float[values.size()];
+        int i = 0;
+        for (Object value : values) {
+            primitiveVector[i++] = ((Number) value).floatValue();
         }
         return primitiveVector;
     }
@@ -18,12 +18,19 @@ package com.amazon.opendistroforelasticsearch.knn.plugin.script;
 import com.amazon.opendistroforelasticsearch.knn.index.KNNVectorScriptDocValues;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.script.ScoreScript;
 
 import java.math.BigInteger;
 import java.lang.Math;
 import java.util.List;
 import java.util.Objects;
 
+/**
+ * Distance functions used by the scoring script and the painless extensions. The loops over the vectors are unrolled
+ * by 4 with independent accumulators: a single accumulator serializes every iteration on the latency of the previous
+ * addition, and float reductions are not reordered, hence not vectorized, by the JIT.
+ */
 public class KNNScoringUtil {
     private static Logger logger = LogManager.getLogger(KNNScoringUtil.class);
 
@@ -56,12 +63,23 @@ public class KNNScoringUtil {
      */
     public static float l2Squared(float[] queryVector, float[] inputVector) {
         requireEqualDimension(queryVector, inputVector);
-        float squaredDistance = 0;
-        for (int i = 0; i < inputVector.length; i++) {
+        float sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+        int i = 0;
+        for (int bound = inputVector.length & ~3; i < bound; i += 4) {
+            float diff0 = queryVector[i] - inputVector[i];
+            float diff1 = queryVector[i + 1] - inputVector[i + 1];
+            float diff2 = queryVector[i + 2] - inputVector[i + 2];
+            float diff3 = queryVector[i + 3] - inputVector[i + 3];
+            sum0 += diff0 * diff0;
+            sum1 += diff1 * diff1;
+            sum2 += diff2 * diff2;
+            sum3 += diff3 * diff3;
+        }
+        for (; i < inputVector.length; i++) {
             float diff = queryVector[i] - inputVector[i];
-            squaredDistance += diff * diff;
+            sum0 += diff * diff;
         }
-        return squaredDistance;
+        return (sum0 + sum1) + (sum2 + sum3);
     }
 
     private static float[] toFloat(List<Number> inputVector) {
@@ -105,12 +123,25 @@ public class KNNScoringUtil {
      */
     public static float cosinesimilOptimized(float[] queryVector, float[] inputVector, float normQueryVector) {
         requireEqualDimension(queryVector, inputVector);
-        float dotProduct = 0.0f;
-        float normInputVector = 0.0f;
-        for (int i = 0; i < queryVector.length; i++) {
-            dotProduct += queryVector[i] * inputVector[i];
-            normInputVector += inputVector[i] * inputVector[i];
+        float dot0 = 0, dot1 = 0, dot2 = 0, dot3 = 0;
+        float norm0 = 0, norm1 = 0, norm2 = 0, norm3 = 0;
+        int i = 0;
+        for (int bound = queryVector.length & ~3; i < bound; i += 4) {
+            dot0 += queryVector[i] * inputVector[i];
+            dot1 += queryVector[i + 1] * inputVector[i + 1];
+            dot2 += queryVector[i + 2] * inputVector[i + 2];
+            dot3 += queryVector[i + 3] * inputVector[i + 3];
+            norm0 += inputVector[i] * inputVector[i];
+            norm1 += inputVector[i + 1] * inputVector[i + 1];
+            norm2 += inputVector[i + 2] * inputVector[i + 2];
+            norm3 += inputVector[i + 3] * inputVector[i + 3];
+        }
+        for (; i < queryVector.length; i++) {
+            dot0 += queryVector[i] * inputVector[i];
+            norm0 += inputVector[i] * inputVector[i];
         }
+        float dotProduct = (dot0 + dot1) + (dot2 + dot3);
+        float normInputVector = (norm0 + norm1) + (norm2 + norm3);
         float normalizedProduct = normQueryVector * normInputVector;
         if (normalizedProduct == 0) {
             logger.debug("Invalid vectors for cosine. Returning minimum score to put this result to end");
@@ -141,6 +172,26 @@ public class KNNScoringUtil {
         return cosinesimilOptimized(toFloat(queryVector), docValues.getValue(), queryVectorMagnitude.floatValue());
     }
 
+    /**
+     * This method calculates cosine similarity when the norms of both vectors are already known, e.g. because the
+     * norm of the document vector was stored at index time. Only the dot product is computed per document.
+     *
+     * @param queryVector query vector
+     * @param inputVector input vector
+     * @param queryNorm L2 norm of the query vector
+     * @param inputNorm L2 norm of the input vector
+     * @return cosine score
+     */
+    public static float cosinesimilWithNorms(float[] queryVector, float[] inputVector, float queryNorm,
+                                             float inputNorm) {
+        float normalizedProduct = queryNorm * inputNorm;
+        if (normalizedProduct == 0) {
+            logger.debug("Invalid vectors for cosine. Returning minimum score to put this result to end");
+            return 0.0f;
+        }
+        return innerProduct(queryVector, inputVector) / normalizedProduct;
+    }
+
     /**
      * This method calculates cosine similarity
      *
@@ -150,14 +201,32 @@ public class KNNScoringUtil {
      */
     public static float cosinesimil(float[] queryVector, float[] inputVector) {
         requireEqualDimension(queryVector, inputVector);
-        float dotProduct = 0.0f;
-        float normQueryVector = 0.0f;
-        float normInputVector = 0.0f;
-        for (int i = 0; i < queryVector.length; i++) {
-            dotProduct += queryVector[i] * inputVector[i];
-            normQueryVector += queryVector[i] * queryVector[i];
-            normInputVector += inputVector[i] * inputVector[i];
+        float dot0 = 0, dot1 = 0, dot2 = 0, dot3 = 0;
+        float queryNorm0 = 0, queryNorm1 = 0, queryNorm2 = 0, queryNorm3 = 0;
+        float inputNorm0 = 0, inputNorm1 = 0, inputNorm2 = 0, inputNorm3 = 0;
+        int i = 0;
+        for (int bound = queryVector.length & ~3; i < bound; i += 4) {
+            dot0 += queryVector[i] * inputVector[i];
+            dot1 += queryVector[i + 1] * inputVector[i + 1];
+            dot2 += queryVector[i + 2] * inputVector[i + 2];
+            dot3 += queryVector[i + 3] * inputVector[i + 3];
+            queryNorm0 += queryVector[i] * queryVector[i];
+            queryNorm1 += queryVector[i + 1] * queryVector[i + 1];
+            queryNorm2 += queryVector[i + 2] * queryVector[i + 2];
+            queryNorm3 += queryVector[i + 3] * queryVector[i + 3];
+            inputNorm0 += inputVector[i] * inputVector[i];
+            inputNorm1 += inputVector[i + 1] * inputVector[i + 1];
+            inputNorm2 += inputVector[i + 2] * inputVector[i + 2];
+            inputNorm3 += inputVector[i + 3] * inputVector[i + 3];
+        }
+        for (; i < queryVector.length; i++) {
+            dot0 += queryVector[i] * inputVector[i];
+            queryNorm0 += queryVector[i] * queryVector[i];
+            inputNorm0 += inputVector[i] * inputVector[i];
         }
+        float dotProduct = (dot0 + dot1) + (dot2 + dot3);
+        float normQueryVector = (queryNorm0 + queryNorm1) + (queryNorm2 + queryNorm3);
+        float normInputVector = (inputNorm0 + inputNorm1) + (inputNorm2 + inputNorm3);
         float normalizedProduct = normQueryVector * normInputVector;
         if (normalizedProduct == 0) {
             logger.debug("Invalid vectors for cosine. Returning minimum score to put this result to end");
@@ -198,6 +267,44 @@ public class KNNScoringUtil {
         return inputBigInteger.xor(queryBigInteger).bitCount();
     }
 
+    /**
+     * This method calculates hamming distance between the bits of a query, packed into 64 bit words by
+     * {@link KNNScoringSpaceUtil#parseToLongArray(Object)}, and the bytes of a doc value. Both are aligned on their
+     * last bit, like the magnitudes of BigIntegers, and compared word by word from the end.
+     *
+     * @param queryWords query bits, the last bit in the lowest bit of the last word
+     * @param inputValue input bytes
+     * @return hamming distance
+     */
+    public static float calculateHammingBit(long[] queryWords, BytesRef inputValue) {
+        byte[] bytes = inputValue.bytes;
+        int start = inputValue.offset;
+        int end = inputValue.offset + inputValue.length;
+        int wordIndex = queryWords.length - 1;
+        int distance = 0;
+        for (; end - start >= Long.BYTES; end -= Long.BYTES, wordIndex--) {
+            long word = readLong(bytes, end - Long.BYTES, end);
+            distance += Long.bitCount(wordIndex >= 0 ? word ^ queryWords[wordIndex] : word);
+        }
+        if (end > start) {
+            long word = readLong(bytes, start, end);
+            distance += Long.bitCount(wordIndex >= 0 ? word ^ queryWords[wordIndex] : word);
+            wordIndex--;
+        }
+        for (; wordIndex >= 0; wordIndex--) {
+            distance += Long.bitCount(queryWords[wordIndex]);
+        }
+        return distance;
+    }
+
+    private static long readLong(byte[] bytes, int from, int to) {
+        long word = 0;
+        for (int i = from; i < to; i++) {
+            word = (word << 8) | (bytes[i] & 0xFFL);
+        }
+        return word;
+    }
+
     /**
      * This method calculates hamming distance on 2 longs
      *
@@ -219,12 +326,18 @@ public class KNNScoringUtil {
      */
     public static float l1Norm(float[] queryVector, float[] inputVector) {
         requireEqualDimension(queryVector, inputVector);
-        float distance = 0;
-        for (int i = 0; i < inputVector.length; i++) {
-            float diff = queryVector[i] - inputVector[i];
-            distance += Math.abs(diff);
+        float sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+        int i = 0;
+        for (int bound = inputVector.length & ~3; i < bound; i += 4) {
+            sum0 += Math.abs(queryVector[i] - inputVector[i]);
+            sum1 += Math.abs(queryVector[i + 1] - inputVector[i + 1]);
+            sum2 += Math.abs(queryVector[i + 2] - inputVector[i + 2]);
+            sum3 += Math.abs(queryVector[i + 3] - inputVector[i + 3]);
         }
-        return distance;
+        for (; i < inputVector.length; i++) {
+            sum0 += Math.abs(queryVector[i] - inputVector[i]);
+        }
+        return (sum0 + sum1) + (sum2 + sum3);
     }
 
     /**
@@ -257,12 +370,18 @@ public class KNNScoringUtil {
      */
     public static float lInfNorm(float[] queryVector, float[] inputVector) {
         requireEqualDimension(queryVector, inputVector);
-        float distance = 0;
-        for (int i = 0; i < inputVector.length; i++) {
-            float diff = queryVector[i] - inputVector[i];
-            distance = Math.max(Math.abs(diff), distance);
+        float max0 = 0, max1 = 0, max2 = 0, max3 = 0;
+        int i = 0;
+        for (int bound = inputVector.length & ~3; i < bound; i += 4) {
+            max0 = Math.max(Math.abs(queryVector[i] - inputVector[i]), max0);
+            max1 = Math.max(Math.abs(queryVector[i + 1] - inputVector[i + 1]), max1);
+            max2 = Math.max(Math.abs(queryVector[i + 2] - inputVector[i + 2]), max2);
+            max3 = Math.max(Math.abs(queryVector[i + 3] - inputVector[i + 3]), max3);
         }
-        return distance;
+        for (; i < inputVector.length; i++) {
+            max0 = Math.max(Math.abs(queryVector[i] - inputVector[i]), max0);
+        }
+        return Math.max(Math.max(max0, max1), Math.max(max2, max3));
     }
 
     /**
@@ -295,11 +414,18 @@ public class KNNScoringUtil {
      */
     public static float innerProduct(float[] queryVector, float[] inputVector) {
         requireEqualDimension(queryVector, inputVector);
-        float distance = 0;
-        for (int i = 0; i < inputVector.length; i++) {
-            distance += queryVector[i] * inputVector[i];
+        float sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+        int i = 0;
+        for (int bound = inputVector.length & ~3; i < bound; i += 4) {
+            sum0 += queryVector[i] * inputVector[i];
+            sum1 += queryVector[i + 1] * inputVector[i + 1];
+            sum2 += queryVector[i + 2] * inputVector[i + 2];
+            sum3 += queryVector[i + 3] * inputVector[i + 3];
         }
-        return distance;
+        for (; i < inputVector.length; i++) {
+            sum0 += queryVector[i] * inputVector[i];
+        }
+        return (sum0 + sum1) + (sum2 + sum3);
     }
 
     /**
@@ -321,4 +447,95 @@ public class KNNScoringUtil {
     public static float innerProduct(List<Number> queryVector, KNNVectorScriptDocValues docValues) {
         return innerProduct(toFloat(queryVector), docValues.getValue());
     }
+
+    /**
+     * Base of the Painless class bindings of the scoring functions. Painless creates a binding the first time its
+     * function is called by a script instance and calls the same binding for every other document the instance scores,
+     * so the query vector is converted once per script instance instead of once per document.
+     */
+    private abstract static class ConvertedQueryVector {
+        protected final float[] queryVector;
+
+        protected ConvertedQueryVector(List<Number> queryVector) {
+            this.queryVector = toFloat(queryVector);
+        }
+    }
+
+    /**
+     * Class binding of {@link #l2Squared(List, KNNVectorScriptDocValues)}
+     */
+    public static final class L2Squared extends ConvertedQueryVector {
+        public L2Squared(ScoreScript scoreScript, List<Number> queryVector) {
+            super(queryVector);
+        }
+
+        public float l2Squared(KNNVectorScriptDocValues docValues) {
+            return KNNScoringUtil.l2Squared(queryVector, docValues.getValue());
+        }
+    }
+
+    /**
+     * Class binding of {@link #l1Norm(List, KNNVectorScriptDocValues)}
+     */
+    public static final class L1Norm extends ConvertedQueryVector {
+        public L1Norm(ScoreScript scoreScript, List<Number> queryVector) {
+            super(queryVector);
+        }
+
+        public float l1Norm(KNNVectorScriptDocValues docValues) {
+            return KNNScoringUtil.l1Norm(queryVector, docValues.getValue());
+        }
+    }
+
+    /**
+     * Class binding of {@link #lInfNorm(List, KNNVectorScriptDocValues)}
+     */
+    public static final class LInfNorm extends ConvertedQueryVector {
+        public LInfNorm(ScoreScript scoreScript, List<Number> queryVector) {
+            super(queryVector);
+        }
+
+        public float lInfNorm(KNNVectorScriptDocValues docValues) {
+            return KNNScoringUtil.lInfNorm(queryVector, docValues.getValue());
+        }
+    }
+
+    /**
+     * Class binding of {@link #innerProduct(List, KNNVectorScriptDocValues)}
+     */
+    public static final class InnerProduct extends ConvertedQueryVector {
+        public InnerProduct(ScoreScript scoreScript, List<Number> queryVector) {
+            super(queryVector);
+        }
+
+        public float innerProduct(KNNVectorScriptDocValues docValues) {
+            return KNNScoringUtil.innerProduct(queryVector, docValues.getValue());
+        }
+    }
+
+    /**
+     * Class binding of {@link #cosineSimilarity(List, KNNVectorScriptDocValues)}
+     */
+    public static final class CosineSimilarity extends ConvertedQueryVector {
+        public CosineSimilarity(ScoreScript scoreScript, List<Number> queryVector) {
+            super(queryVector);
+        }
+
+        public float cosineSimilarity(KNNVectorScriptDocValues docValues) {
+            return cosinesimil(queryVector, docValues.getValue());
+        }
+    }
+
+    /**
+     * Class binding of {@link #cosineSimilarity(List, KNNVectorScriptDocValues, Number)}
+     */
+    public static final class CosineSimilarityWithMagnitude extends ConvertedQueryVector {
+        public CosineSimilarityWithMagnitude(ScoreScript scoreScript, List<Number> queryVector) {
+            super(queryVector);
+        }
+
+        public float cosineSimilarity(KNNVectorScriptDocValues docValues, Number queryVectorMagnitude) {
+            return cosinesimilOptimized(queryVector, docValues.getValue(), queryVectorMagnitude.floatValue());
+        }
+    }
 }
@@ -0,0 +1,38 @@
+/*
+ *   Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.knn.plugin.transport;
+
+import org.elasticsearch.action.ActionType;
+import org.elasticsearch.action.support.master.AcknowledgedResponse;
+import org.elasticsearch.common.io.stream.Writeable;
+
+/**
+ * Action used by data nodes to report transitions of their k-NN cache capacity state to the master
+ */
+public class KNNCacheCapacityAction extends ActionType<AcknowledgedResponse> {
+
+    public static final KNNCacheCapacityAction INSTANCE = new KNNCacheCapacityAction();
+    public static final String NAME = "cluster:admin/knn_cache_capacity_action";
+
+    private KNNCacheCapacityAction() {
+        super(NAME, AcknowledgedResponse::new);
+    }
+
+    @Override
+    public Writeable.Reader<AcknowledgedResponse> getResponseReader() {
+        return AcknowledgedResponse::new;
+    }
+}
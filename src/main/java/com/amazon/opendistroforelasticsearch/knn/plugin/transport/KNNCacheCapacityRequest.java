@@ -0,0 +1,69 @@
+/*
+ *   Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.knn.plugin.transport;
+
+import org.elasticsearch.action.ActionRequestValidationException;
+import org.elasticsearch.action.support.master.MasterNodeRequest;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+
+/**
+ * k-NN Cache Capacity Request. This request carries whether the cache of a node has reached its capacity.
+ */
+public class KNNCacheCapacityRequest extends MasterNodeRequest<KNNCacheCapacityRequest> {
+
+    private final String nodeId;
+    private final boolean cacheCapacityReached;
+
+    public KNNCacheCapacityRequest(StreamInput in) throws IOException {
+        super(in);
+        this.nodeId = in.readString();
+        this.cacheCapacityReached = in.readBoolean();
+    }
+
+    /**
+     * Constructor
+     *
+     * @param nodeId id of the node reporting its state
+     * @param cacheCapacityReached whether the cache of the node has reached its capacity
+     */
+    public KNNCacheCapacityRequest(String nodeId, boolean cacheCapacityReached) {
+        this.nodeId = nodeId;
+        this.cacheCapacityReached = cacheCapacityReached;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public boolean isCacheCapacityReached() {
+        return cacheCapacityReached;
+    }
+
+    @Override
+    public ActionRequestValidationException validate() {
+        return null;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeString(nodeId);
+        out.writeBoolean(cacheCapacityReached);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ *   Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.knn.plugin.transport;
+
+import com.amazon.opendistroforelasticsearch.knn.index.KNNCircuitBreaker;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.master.AcknowledgedResponse;
+import org.elasticsearch.action.support.master.TransportMasterNodeAction;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.block.ClusterBlockException;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import java.io.IOException;
+
+/**
+ * Transport Action executed on the master when a node reports a transition of its k-NN cache capacity state. The
+ * master keeps track of the nodes at capacity and updates knn.circuit_breaker.triggered accordingly.
+ */
+public class KNNCacheCapacityTransportAction extends TransportMasterNodeAction<KNNCacheCapacityRequest, AcknowledgedResponse> {
+
+    @Inject
+    public KNNCacheCapacityTransportAction(TransportService transportService, ClusterService clusterService,
+                                           ThreadPool threadPool, ActionFilters actionFilters,
+                                           IndexNameExpressionResolver indexNameExpressionResolver) {
+        super(KNNCacheCapacityAction.NAME, transportService, clusterService, threadPool, actionFilters,
+                KNNCacheCapacityRequest::new, indexNameExpressionResolver);
+    }
+
+    @Override
+    protected String executor() {
+        return ThreadPool.Names.SAME;
+    }
+
+    @Override
+    protected AcknowledgedResponse read(StreamInput in) throws IOException {
+        return new AcknowledgedResponse(in);
+    }
+
+    @Override
+    protected void masterOperation(KNNCacheCapacityRequest request, ClusterState state,
+                                   ActionListener<AcknowledgedResponse> listener) {
+        KNNCircuitBreaker.getInstance().onNodeCacheCapacityUpdate(request.getNodeId(), request.isCacheCapacityReached());
+        listener.onResponse(new AcknowledgedResponse(true));
+    }
+
+    @Override
+    protected ClusterBlockException checkBlock(KNNCacheCapacityRequest request, ClusterState state) {
+        return null;
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ *   Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.knn.plugin.transport;
+
+import org.elasticsearch.action.support.broadcast.BroadcastRequest;
+import org.elasticsearch.common.io.stream.StreamInput;
+
+import java.io.IOException;
+
+/**
+ * k-NN Clear Cache Request. This request contains a list of indices whose graphs should be evicted from the cache.
+ */
+public class KNNClearCacheRequest extends BroadcastRequest<KNNClearCacheRequest> {
+
+    public KNNClearCacheRequest(StreamInput in) throws IOException {
+        super(in);
+    }
+
+    public KNNClearCacheRequest(String... indices) {
+        super(indices);
+    }
+}
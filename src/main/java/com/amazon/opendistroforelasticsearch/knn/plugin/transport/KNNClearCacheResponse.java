@@ -0,0 +1,65 @@
+/*
+ *   Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.knn.plugin.transport;
+
+import org.elasticsearch.action.support.DefaultShardOperationFailedException;
+import org.elasticsearch.action.support.broadcast.BroadcastResponse;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.ToXContentObject;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Response returned for k-NN Clear Cache. Returns total number of shards the graphs were evicted for, as well as
+ * the number of shards that succeeded and failed, and the number of graphs evicted.
+ */
+public class KNNClearCacheResponse extends BroadcastResponse implements ToXContentObject {
+
+    private int evictedGraphs;
+
+    public KNNClearCacheResponse() {}
+
+    public KNNClearCacheResponse(StreamInput in) throws IOException {
+        super(in);
+        evictedGraphs = in.readVInt();
+    }
+
+    public KNNClearCacheResponse(int totalShards, int successfulShards, int failedShards,
+                                 List<DefaultShardOperationFailedException> shardFailures, int evictedGraphs) {
+        super(totalShards, successfulShards, failedShards, shardFailures);
+        this.evictedGraphs = evictedGraphs;
+    }
+
+    public int getEvictedGraphs() {
+        return evictedGraphs;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(evictedGraphs);
+    }
+
+    @Override
+    protected void addCustomXContentFields(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject("graphs");
+        builder.field("evicted", evictedGraphs);
+        builder.endObject();
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ *   Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.knn.plugin.transport;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+
+import java.io.IOException;
+
+/**
+ * Result of clearing the graphs of a shard from the cache: the number of graphs evicted.
+ */
+public class KNNClearCacheShardResult implements Writeable {
+
+    private final int evictedGraphs;
+
+    public KNNClearCacheShardResult(int evictedGraphs) {
+        this.evictedGraphs = evictedGraphs;
+    }
+
+    public KNNClearCacheShardResult(StreamInput in) throws IOException {
+        this.evictedGraphs = in.readVInt();
+    }
+
+    public int getEvictedGraphs() {
+        return evictedGraphs;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVInt(evictedGraphs);
+    }
+}
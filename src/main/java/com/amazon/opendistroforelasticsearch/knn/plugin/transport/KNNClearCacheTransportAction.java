@@ -0,0 +1,109 @@
+/*
+ *   Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.knn.plugin.transport;
+
+import com.amazon.opendistroforelasticsearch.knn.index.KNNIndexShard;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.DefaultShardOperationFailedException;
+import org.elasticsearch.action.support.broadcast.node.TransportBroadcastByNodeAction;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.block.ClusterBlockException;
+import org.elasticsearch.cluster.block.ClusterBlockLevel;
+import org.elasticsearch.cluster.metadata.IndexNameExpressionResolver;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.cluster.routing.ShardsIterator;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.transport.TransportService;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Transport Action for evicting the graphs of k-NN indices from the cache. TransportBroadcastByNodeAction will
+ * distribute the request to all shards across the cluster for the given indices. For each shard, shardOperation will
+ * be called and the graphs of the shard will be evicted.
+ */
+public class KNNClearCacheTransportAction extends TransportBroadcastByNodeAction<KNNClearCacheRequest,
+        KNNClearCacheResponse, KNNClearCacheShardResult> {
+
+    public static Logger logger = LogManager.getLogger(KNNClearCacheTransportAction.class);
+
+    private IndicesService indicesService;
+
+    @Inject
+    public KNNClearCacheTransportAction(ClusterService clusterService, TransportService transportService,
+                                        IndicesService indicesService, ActionFilters actionFilters,
+                                        IndexNameExpressionResolver indexNameExpressionResolver) {
+        super(KNNClearCacheAction.NAME, clusterService, transportService, actionFilters, indexNameExpressionResolver,
+                KNNClearCacheRequest::new, ThreadPool.Names.MANAGEMENT);
+        this.indicesService = indicesService;
+    }
+
+    @Override
+    protected KNNClearCacheShardResult readShardResult(StreamInput in) throws IOException {
+        return new KNNClearCacheShardResult(in);
+    }
+
+    @Override
+    protected KNNClearCacheResponse newResponse(KNNClearCacheRequest request, int totalShards, int successfulShards,
+                                                int failedShards, List<KNNClearCacheShardResult> shardResults,
+                                                List<DefaultShardOperationFailedException> shardFailures,
+                                                ClusterState clusterState) {
+        int evictedGraphs = 0;
+        for (KNNClearCacheShardResult shardResult : shardResults) {
+            if (shardResult != null) {
+                evictedGraphs += shardResult.getEvictedGraphs();
+            }
+        }
+        return new KNNClearCacheResponse(totalShards, successfulShards, failedShards, shardFailures, evictedGraphs);
+    }
+
+    @Override
+    protected KNNClearCacheRequest readRequestFrom(StreamInput in) throws IOException {
+        return new KNNClearCacheRequest(in);
+    }
+
+    @Override
+    protected KNNClearCacheShardResult shardOperation(KNNClearCacheRequest request, ShardRouting shardRouting) {
+        ShardId shardId = shardRouting.shardId();
+        KNNIndexShard knnIndexShard = new KNNIndexShard(indicesService.indexServiceSafe(shardId.getIndex())
+                .getShard(shardId.id()));
+        return new KNNClearCacheShardResult(knnIndexShard.clearCache());
+    }
+
+    @Override
+    protected ShardsIterator shards(ClusterState state, KNNClearCacheRequest request, String[] concreteIndices) {
+        return state.routingTable().allShards(concreteIndices);
+    }
+
+    @Override
+    protected ClusterBlockException checkGlobalBlock(ClusterState state, KNNClearCacheRequest request) {
+        return state.blocks().globalBlockedException(ClusterBlockLevel.METADATA_READ);
+    }
+
+    @Override
+    protected ClusterBlockException checkRequestBlock(ClusterState state, KNNClearCacheRequest request,
+                                                      String[] concreteIndices) {
+        return state.blocks().indicesBlockedException(ClusterBlockLevel.METADATA_READ, concreteIndices);
+    }
+}
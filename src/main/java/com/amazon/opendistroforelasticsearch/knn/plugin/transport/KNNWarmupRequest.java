@@ -25,6 +25,8 @@ import java.io.IOException;
  */
 public class KNNWarmupRequest extends BroadcastRequest<KNNWarmupRequest> {
 
+    private boolean shouldStoreResult = false;
+
     public KNNWarmupRequest(StreamInput in) throws IOException {
         super(in);
     }
@@ -32,4 +34,19 @@ public class KNNWarmupRequest extends BroadcastRequest<KNNWarmupRequest> {
     public KNNWarmupRequest(String... indices) {
         super(indices);
     }
+
+    /**
+     * Store the response of the warmup in the tasks index, so it can be fetched by task id once the warmup is done.
+     * Used when the warmup runs asynchronously.
+     *
+     * @param shouldStoreResult whether the result should be stored
+     */
+    public void setShouldStoreResult(boolean shouldStoreResult) {
+        this.shouldStoreResult = shouldStoreResult;
+    }
+
+    @Override
+    public boolean getShouldStoreResult() {
+        return shouldStoreResult;
+    }
 }
@@ -18,25 +18,73 @@ package com.amazon.opendistroforelasticsearch.knn.plugin.transport;
 import org.elasticsearch.action.support.DefaultShardOperationFailedException;
 import org.elasticsearch.action.support.broadcast.BroadcastResponse;
 import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.common.xcontent.ToXContentObject;
+import org.elasticsearch.common.xcontent.XContentBuilder;
 
 import java.io.IOException;
 import java.util.List;
 
 /**
  * Response returned for k-NN Warmup. Returns total number of shards Warmup was performed on, as well as
- * the number of shards that succeeded and the number of shards that failed.
+ * the number of shards that succeeded and the number of shards that failed. Also returns the number of graphs loaded
+ * and the number and size of the graphs skipped because they did not fit in the cache.
  */
 public class KNNWarmupResponse extends BroadcastResponse implements ToXContentObject {
 
+    private int loadedGraphs;
+    private int skippedGraphs;
+    private long skippedSizeInKB;
+
     public KNNWarmupResponse() {}
 
     public KNNWarmupResponse(StreamInput in) throws IOException {
         super(in);
+        loadedGraphs = in.readVInt();
+        skippedGraphs = in.readVInt();
+        skippedSizeInKB = in.readVLong();
     }
 
     public KNNWarmupResponse(int totalShards, int successfulShards, int failedShards,
                              List<DefaultShardOperationFailedException> shardFailures) {
+        this(totalShards, successfulShards, failedShards, shardFailures, 0, 0, 0L);
+    }
+
+    public KNNWarmupResponse(int totalShards, int successfulShards, int failedShards,
+                             List<DefaultShardOperationFailedException> shardFailures, int loadedGraphs,
+                             int skippedGraphs, long skippedSizeInKB) {
         super(totalShards, successfulShards, failedShards, shardFailures);
+        this.loadedGraphs = loadedGraphs;
+        this.skippedGraphs = skippedGraphs;
+        this.skippedSizeInKB = skippedSizeInKB;
+    }
+
+    public int getLoadedGraphs() {
+        return loadedGraphs;
+    }
+
+    public int getSkippedGraphs() {
+        return skippedGraphs;
+    }
+
+    public long getSkippedSizeInKB() {
+        return skippedSizeInKB;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(loadedGraphs);
+        out.writeVInt(skippedGraphs);
+        out.writeVLong(skippedSizeInKB);
+    }
+
+    @Override
+    protected void addCustomXContentFields(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject("graphs");
+        builder.field("loaded", loadedGraphs);
+        builder.field("skipped", skippedGraphs);
+        builder.field("skipped_size_in_kb", skippedSizeInKB);
+        builder.endObject();
     }
 }
@@ -0,0 +1,65 @@
+/*
+ *   Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.knn.plugin.transport;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Writeable;
+
+import java.io.IOException;
+
+/**
+ * Result of the warmup of a shard: the number of graphs in the cache after the warmup and the graphs skipped because
+ * they did not fit in the cache. Earlier builds of the plugin return an empty shard result, so nodes of both builds
+ * cannot warm up the same indices: upgrading requires a full cluster restart.
+ */
+public class KNNWarmupShardResult implements Writeable {
+
+    private final int loadedGraphs;
+    private final int skippedGraphs;
+    private final long skippedSizeInKB;
+
+    public KNNWarmupShardResult(int loadedGraphs, int skippedGraphs, long skippedSizeInKB) {
+        this.loadedGraphs = loadedGraphs;
+        this.skippedGraphs = skippedGraphs;
+        this.skippedSizeInKB = skippedSizeInKB;
+    }
+
+    public KNNWarmupShardResult(StreamInput in) throws IOException {
+        this.loadedGraphs = in.readVInt();
+        this.skippedGraphs = in.readVInt();
+        this.skippedSizeInKB = in.readVLong();
+    }
+
+    public int getLoadedGraphs() {
+        return loadedGraphs;
+    }
+
+    public int getSkippedGraphs() {
+        return skippedGraphs;
+    }
+
+    public long getSkippedSizeInKB() {
+        return skippedSizeInKB;
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVInt(loadedGraphs);
+        out.writeVInt(skippedGraphs);
+        out.writeVLong(skippedSizeInKB);
+    }
+}
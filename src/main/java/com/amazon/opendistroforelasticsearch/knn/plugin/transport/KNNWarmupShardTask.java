@@ -0,0 +1,190 @@
+/*
+ *   Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.knn.plugin.transport;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.tasks.Task;
+import org.elasticsearch.tasks.TaskId;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Task registered for the warmup of a single shard. It is a child of the warmup task of the coordinating node, so the
+ * progress of a warmup can be followed per shard through the tasks API.
+ */
+public class KNNWarmupShardTask extends Task {
+
+    private final ShardId shardId;
+    private final AtomicInteger totalGraphs = new AtomicInteger();
+    private final AtomicInteger loadedGraphs = new AtomicInteger();
+    private final AtomicLong loadedSizeInKB = new AtomicLong();
+    private volatile int skippedGraphs;
+    private volatile long skippedSizeInKB;
+
+    public KNNWarmupShardTask(long id, String type, String action, TaskId parentTaskId, Map<String, String> headers,
+                              ShardId shardId) {
+        super(id, type, action, "warmup " + shardId, parentTaskId, headers);
+        this.shardId = shardId;
+    }
+
+    /**
+     * Set the number of graphs of the shard to be loaded
+     *
+     * @param totalGraphs number of graphs
+     */
+    public void setTotalGraphs(int totalGraphs) {
+        this.totalGraphs.set(totalGraphs);
+    }
+
+    /**
+     * Set the graphs of the shard that are not loaded because they do not fit in the cache
+     *
+     * @param skippedGraphs number of graphs skipped
+     * @param skippedSizeInKB total size of the graphs skipped in KB
+     */
+    public void setSkippedGraphs(int skippedGraphs, long skippedSizeInKB) {
+        this.skippedGraphs = skippedGraphs;
+        this.skippedSizeInKB = skippedSizeInKB;
+    }
+
+    /**
+     * Account a graph of the shard that is now loaded in the cache
+     *
+     * @param graphSizeInKB size of the graph in KB
+     */
+    public void onGraphLoaded(long graphSizeInKB) {
+        loadedGraphs.incrementAndGet();
+        loadedSizeInKB.addAndGet(graphSizeInKB);
+    }
+
+    @Override
+    public Status getStatus() {
+        return new Status(shardId.getIndexName(), shardId.id(), totalGraphs.get(), loadedGraphs.get(),
+                loadedSizeInKB.get(), skippedGraphs, skippedSizeInKB);
+    }
+
+    /**
+     * Progress of the warmup of a shard
+     */
+    public static class Status implements Task.Status {
+        public static final String NAME = "knn_warmup_shard";
+
+        private final String index;
+        private final int shard;
+        private final int totalGraphs;
+        private final int loadedGraphs;
+        private final long loadedSizeInKB;
+        private final int skippedGraphs;
+        private final long skippedSizeInKB;
+
+        public Status(String index, int shard, int totalGraphs, int loadedGraphs, long loadedSizeInKB,
+                      int skippedGraphs, long skippedSizeInKB) {
+            this.index = index;
+            this.shard = shard;
+            this.totalGraphs = totalGraphs;
+            this.loadedGraphs = loadedGraphs;
+            this.loadedSizeInKB = loadedSizeInKB;
+            this.skippedGraphs = skippedGraphs;
+            this.skippedSizeInKB = skippedSizeInKB;
+        }
+
+        public Status(StreamInput in) throws IOException {
+            this.index = in.readString();
+            this.shard = in.readVInt();
+            this.totalGraphs = in.readVInt();
+            this.loadedGraphs = in.readVInt();
+            this.loadedSizeInKB = in.readVLong();
+            this.skippedGraphs = in.readVInt();
+            this.skippedSizeInKB = in.readVLong();
+        }
+
+        public int getTotalGraphs() {
+            return totalGraphs;
+        }
+
+        public int getLoadedGraphs() {
+            return loadedGraphs;
+        }
+
+        public long getLoadedSizeInKB() {
+            return loadedSizeInKB;
+        }
+
+        public int getSkippedGraphs() {
+            return skippedGraphs;
+        }
+
+        public long getSkippedSizeInKB() {
+            return skippedSizeInKB;
+        }
+
+        @Override
+        public String getWriteableName() {
+            return NAME;
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeString(index);
+            out.writeVInt(shard);
+            out.writeVInt(totalGraphs);
+            out.writeVInt(loadedGraphs);
+            out.writeVLong(loadedSizeInKB);
+            out.writeVInt(skippedGraphs);
+            out.writeVLong(skippedSizeInKB);
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.startObject();
+            builder.field("index", index);
+            builder.field("shard", shard);
+            builder.field("total_graphs", totalGraphs);
+            builder.field("loaded_graphs", loadedGraphs);
+            builder.field("loaded_size_in_kb", loadedSizeInKB);
+            builder.field("skipped_graphs", skippedGraphs);
+            builder.field("skipped_size_in_kb", skippedSizeInKB);
+            return builder.endObject();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Status other = (Status) o;
+            return shard == other.shard && totalGraphs == other.totalGraphs && loadedGraphs == other.loadedGraphs
+                    && loadedSizeInKB == other.loadedSizeInKB && skippedGraphs == other.skippedGraphs
+                    && skippedSizeInKB == other.skippedSizeInKB && Objects.equals(index, other.index);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(index, shard, totalGraphs, loadedGraphs, loadedSizeInKB, skippedGraphs,
+                    skippedSizeInKB);
+        }
+    }
+}
@@ -18,6 +18,7 @@ package com.amazon.opendistroforelasticsearch.knn.plugin.transport;
 import com.amazon.opendistroforelasticsearch.knn.index.KNNIndexShard;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.support.ActionFilters;
 import org.elasticsearch.action.support.DefaultShardOperationFailedException;
 import org.elasticsearch.action.support.broadcast.node.TransportBroadcastByNodeAction;
@@ -30,20 +31,26 @@ import org.elasticsearch.cluster.routing.ShardsIterator;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.tasks.Task;
+import org.elasticsearch.tasks.TaskAwareRequest;
+import org.elasticsearch.tasks.TaskId;
 import org.elasticsearch.transport.TransportService;
 import org.elasticsearch.threadpool.ThreadPool;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Transport Action for warming up k-NN indices. TransportBroadcastByNodeAction will distribute the request to
  * all shards across the cluster for the given indices. For each shard, shardOperation will be called and the
- * warmup will take place.
+ * warmup will take place. The graphs that do not fit in the cache are skipped and reported in the response. The
+ * warmup of each shard is registered as a child task of the warmup task, reporting the number of graphs loaded so far.
  */
 public class KNNWarmupTransportAction extends TransportBroadcastByNodeAction<KNNWarmupRequest, KNNWarmupResponse,
-        TransportBroadcastByNodeAction.EmptyResult> {
+        KNNWarmupShardResult> {
 
     public static Logger logger = LogManager.getLogger(KNNWarmupTransportAction.class);
 
@@ -58,16 +65,27 @@ public class KNNWarmupTransportAction extends TransportBroadcastByNodeAction<KNN
     }
 
     @Override
-    protected EmptyResult readShardResult(StreamInput in) throws IOException {
-        return EmptyResult.readEmptyResultFrom(in);
+    protected KNNWarmupShardResult readShardResult(StreamInput in) throws IOException {
+        return new KNNWarmupShardResult(in);
     }
 
     @Override
     protected KNNWarmupResponse newResponse(KNNWarmupRequest request, int totalShards, int successfulShards,
-                                            int failedShards, List<EmptyResult> emptyResults,
+                                            int failedShards, List<KNNWarmupShardResult> shardResults,
                                             List<DefaultShardOperationFailedException> shardFailures,
                                             ClusterState clusterState) {
-        return new KNNWarmupResponse(totalShards, successfulShards, failedShards, shardFailures);
+        int loadedGraphs = 0;
+        int skippedGraphs = 0;
+        long skippedSizeInKB = 0;
+        for (KNNWarmupShardResult shardResult : shardResults) {
+            if (shardResult != null) {
+                loadedGraphs += shardResult.getLoadedGraphs();
+                skippedGraphs += shardResult.getSkippedGraphs();
+                skippedSizeInKB += shardResult.getSkippedSizeInKB();
+            }
+        }
+        return new KNNWarmupResponse(totalShards, successfulShards, failedShards, shardFailures, loadedGraphs,
+                skippedGraphs, skippedSizeInKB);
     }
 
     @Override
@@ -76,11 +94,28 @@ public class KNNWarmupTransportAction extends TransportBroadcastByNodeAction<KNN
     }
 
     @Override
-    protected EmptyResult shardOperation(KNNWarmupRequest request, ShardRouting shardRouting) throws IOException {
-        KNNIndexShard knnIndexShard = new KNNIndexShard(indicesService.indexServiceSafe(shardRouting.shardId()
-                .getIndex()).getShard(shardRouting.shardId().id()));
-        knnIndexShard.warmup();
-        return EmptyResult.INSTANCE;
+    protected void doExecute(Task task, KNNWarmupRequest request, ActionListener<KNNWarmupResponse> listener) {
+        // The parent task id is already part of the request on the wire, so the shards of every node find the
+        // warmup task through it. shardOperation is not given the task of the node request it runs under.
+        request.setParentTask(clusterService.localNode().getId(), task.getId());
+        super.doExecute(task, request, listener);
+    }
+
+    @Override
+    protected KNNWarmupShardResult shardOperation(KNNWarmupRequest request, ShardRouting shardRouting)
+            throws IOException {
+        ShardId shardId = shardRouting.shardId();
+        KNNIndexShard knnIndexShard = new KNNIndexShard(indicesService.indexServiceSafe(shardId.getIndex())
+                .getShard(shardId.id()));
+        KNNWarmupShardTask shardTask = (KNNWarmupShardTask) taskManager.register("transport",
+                KNNWarmupAction.NAME + "[s]", new ShardTaskRequest(request.getParentTask(), shardId));
+        try {
+            int loadedGraphs = knnIndexShard.warmup(shardTask).size();
+            KNNWarmupShardTask.Status status = (KNNWarmupShardTask.Status) shardTask.getStatus();
+            return new KNNWarmupShardResult(loadedGraphs, status.getSkippedGraphs(), status.getSkippedSizeInKB());
+        } finally {
+            taskManager.unregister(shardTask);
+        }
     }
 
     @Override
@@ -97,4 +132,29 @@ public class KNNWarmupTransportAction extends TransportBroadcastByNodeAction<KNN
     protected ClusterBlockException checkRequestBlock(ClusterState state, KNNWarmupRequest request, String[] concreteIndices) {
         return state.blocks().indicesBlockedException(ClusterBlockLevel.METADATA_READ, concreteIndices);
     }
+
+    private static class ShardTaskRequest implements TaskAwareRequest {
+        private TaskId parentTaskId;
+        private final ShardId shardId;
+
+        ShardTaskRequest(TaskId parentTaskId, ShardId shardId) {
+            this.parentTaskId = parentTaskId;
+            this.shardId = shardId;
+        }
+
+        @Override
+        public void setParentTask(TaskId taskId) {
+            this.parentTaskId = taskId;
+        }
+
+        @Override
+        public TaskId getParentTask() {
+            return parentTaskId;
+        }
+
+        @Override
+        public Task createTask(long id, String type, String action, TaskId parentTaskId, Map<String, String> headers) {
+            return new KNNWarmupShardTask(id, type, action, parentTaskId, headers, shardId);
+        }
+    }
 }
@@ -479,6 +479,21 @@ public class KNNRestTestCase extends ODFERestTestCase {
         return client().performRequest(request);
     }
 
+    /**
+     * Evict the graphs of KNN Indices from the cache
+     */
+    protected Response knnClearCache(List<String> indices) throws IOException {
+
+        String indicesSuffix = "/" + String.join(",", indices);
+
+        Request request = new Request(
+                "POST",
+                KNNPlugin.KNN_BASE_URI + "/clear_cache" + indicesSuffix
+        );
+
+        return client().performRequest(request);
+    }
+
     /**
      * Parse KNN Cluster stats from response
      */
@@ -16,11 +16,13 @@
 package com.amazon.opendistroforelasticsearch.knn.index;
 
 import com.amazon.opendistroforelasticsearch.knn.KNNRestTestCase;
+import com.amazon.opendistroforelasticsearch.knn.KNNResult;
 import org.apache.http.util.EntityUtils;
 import org.elasticsearch.client.Response;
 import org.elasticsearch.common.settings.Settings;
 
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import static com.amazon.opendistroforelasticsearch.knn.index.KNNCircuitBreaker.CB_TIME_INTERVAL;
@@ -94,12 +96,42 @@ public class KNNCircuitBreakerIT extends KNNRestTestCase {
         tripCb();
     }
 
+    public void testExactFallback() throws Exception {
+        // A single graph of this many documents does not fit in a 1 KB limit
+        updateClusterSettings("knn.memory.circuit_breaker.limit", "1kb");
+        updateClusterSettings("knn.exact_fallback.enabled", true);
+
+        Settings settings = Settings.builder()
+                .put("number_of_shards", 1)
+                .put("number_of_replicas", 0)
+                .put("index.knn", true)
+                .build();
+        createKnnIndex(INDEX_NAME, settings, createKnnIndexMapping(FIELD_NAME, 2));
+
+        int docsInIndex = 50;
+        for (int i = 0; i < docsInIndex; i++) {
+            Float[] vector = {(float) i, (float) i};
+            addKnnDoc(INDEX_NAME, Integer.toString(i), FIELD_NAME, vector);
+        }
+        forceMergeKnnIndex(INDEX_NAME);
+
+        float[] qvector = {3.1f, 3.1f};
+        int k = 5;
+        Response response = searchKNNIndex(INDEX_NAME, new KNNQueryBuilder(FIELD_NAME, qvector, k), k);
+        List<KNNResult> results = parseSearchResponse(EntityUtils.toString(response.getEntity()), FIELD_NAME);
+
+        assertEquals(k, results.size());
+        assertEquals("3", results.get(0).getDocId());
+        assertEquals(0, getTotalGraphsInCache());
+    }
+
     public void testCbUntrips() throws Exception {
         updateClusterSettings("knn.circuit_breaker.triggered", "true");
         assertTrue(isCbTripped());
 
+        // The master unsets the flag CB_TIME_INTERVAL seconds after it was set, as no node is at capacity
         int backOffInterval = 5; // seconds
-        for (int i = 0; i < CB_TIME_INTERVAL; i+=backOffInterval) {
+        for (int i = 0; i < 3 * CB_TIME_INTERVAL; i+=backOffInterval) {
             if (!isCbTripped()) {
                 break;
             }
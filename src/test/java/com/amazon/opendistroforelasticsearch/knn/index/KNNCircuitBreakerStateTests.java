@@ -0,0 +1,126 @@
+/*
+ *   Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.knn.index;
+
+import com.amazon.opendistroforelasticsearch.knn.KNNSingleNodeTestCase;
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.ClusterChangedEvent;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.node.DiscoveryNodes;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.settings.Settings;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Tests of the circuit breaker flags maintained by the master from the cache capacity reports of the nodes
+ */
+public class KNNCircuitBreakerStateTests extends KNNSingleNodeTestCase {
+
+    @Override
+    public void tearDown() throws Exception {
+        KNNCircuitBreaker knnCircuitBreaker = KNNCircuitBreaker.getInstance();
+        for (String nodeId : Arrays.asList(localNodeId(), "node-a", "node-b", "fake-node")) {
+            knnCircuitBreaker.onNodeCacheCapacityUpdate(nodeId, false);
+        }
+        KNNWeight.knnIndexCache.setCacheCapacityReached(false);
+        assertBusy(() -> assertFalse(KNNSettings.isCircuitBreakerTriggered()));
+        super.tearDown();
+    }
+
+    public void testTripAndUntripOnCapacityReports() throws Exception {
+        KNNWeight.knnIndexCache.setCacheCapacityReached(true);
+        assertBusy(() -> {
+            assertTrue(KNNSettings.isCircuitBreakerTriggered());
+            assertEquals(Collections.singletonList(localNodeId()), KNNSettings.getCircuitBreakerTriggeredNodes());
+        });
+
+        KNNWeight.knnIndexCache.setCacheCapacityReached(false);
+        assertBusy(() -> {
+            assertFalse(KNNSettings.isCircuitBreakerTriggered());
+            assertTrue(KNNSettings.getCircuitBreakerTriggeredNodes().isEmpty());
+        });
+    }
+
+    public void testTriggeredNodes() throws Exception {
+        KNNCircuitBreaker knnCircuitBreaker = KNNCircuitBreaker.getInstance();
+        knnCircuitBreaker.onNodeCacheCapacityUpdate("node-b", true);
+        knnCircuitBreaker.onNodeCacheCapacityUpdate("node-a", true);
+        assertBusy(() -> {
+            assertTrue(KNNSettings.isCircuitBreakerTriggered());
+            assertEquals(Arrays.asList("node-a", "node-b"), KNNSettings.getCircuitBreakerTriggeredNodes());
+        });
+
+        // The flag stays set while any node is at capacity
+        knnCircuitBreaker.onNodeCacheCapacityUpdate("node-a", false);
+        assertBusy(() -> {
+            assertTrue(KNNSettings.isCircuitBreakerTriggered());
+            assertEquals(Collections.singletonList("node-b"), KNNSettings.getCircuitBreakerTriggeredNodes());
+        });
+
+        knnCircuitBreaker.onNodeCacheCapacityUpdate("node-b", false);
+        assertBusy(() -> assertFalse(KNNSettings.isCircuitBreakerTriggered()));
+    }
+
+    public void testReportAgainOnMasterChange() throws Exception {
+        KNNCircuitBreaker knnCircuitBreaker = KNNCircuitBreaker.getInstance();
+        KNNWeight.knnIndexCache.setCacheCapacityReached(true);
+        assertBusy(() -> assertTrue(KNNSettings.isCircuitBreakerTriggered()));
+
+        // The node loses the master: the nodes at capacity it tracked are forgotten
+        ClusterState state = clusterService().state();
+        ClusterState noMasterState = ClusterState.builder(state)
+                .nodes(DiscoveryNodes.builder(state.nodes()).masterNodeId(null)).build();
+        knnCircuitBreaker.clusterChanged(new ClusterChangedEvent("test", noMasterState, state));
+        client().admin().cluster().prepareUpdateSettings().setPersistentSettings(Settings.builder()
+                .putNull(KNNSettings.KNN_CIRCUIT_BREAKER_TRIGGERED)
+                .putNull(KNNSettings.KNN_CIRCUIT_BREAKER_TRIGGERED_NODES)).get();
+        assertBusy(() -> assertFalse(KNNSettings.isCircuitBreakerTriggered()));
+
+        // The node at capacity reports again to the newly elected master, which sets the flag back
+        knnCircuitBreaker.clusterChanged(new ClusterChangedEvent("test", clusterService().state(), noMasterState));
+        assertBusy(() -> {
+            assertTrue(KNNSettings.isCircuitBreakerTriggered());
+            assertEquals(Collections.singletonList(localNodeId()), KNNSettings.getCircuitBreakerTriggeredNodes());
+        });
+    }
+
+    public void testUntripOnNodeRemoval() throws Exception {
+        KNNCircuitBreaker knnCircuitBreaker = KNNCircuitBreaker.getInstance();
+        knnCircuitBreaker.onNodeCacheCapacityUpdate("fake-node", true);
+        assertBusy(() -> assertEquals(Collections.singletonList("fake-node"),
+                KNNSettings.getCircuitBreakerTriggeredNodes()));
+
+        ClusterState state = clusterService().state();
+        ClusterState stateWithFakeNode = ClusterState.builder(state).nodes(DiscoveryNodes.builder(state.nodes())
+                .add(new DiscoveryNode("fake-node", buildNewFakeTransportAddress(), Version.CURRENT))).build();
+        knnCircuitBreaker.clusterChanged(new ClusterChangedEvent("test", state, stateWithFakeNode));
+        assertBusy(() -> {
+            assertFalse(KNNSettings.isCircuitBreakerTriggered());
+            assertTrue(KNNSettings.getCircuitBreakerTriggeredNodes().isEmpty());
+        });
+    }
+
+    private ClusterService clusterService() {
+        return node().injector().getInstance(ClusterService.class);
+    }
+
+    private String localNodeId() {
+        return clusterService().localNode().getId();
+    }
+}
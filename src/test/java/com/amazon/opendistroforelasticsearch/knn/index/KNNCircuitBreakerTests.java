@@ -0,0 +1,88 @@
+/*
+ *   Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.knn.index;
+
+import com.amazon.opendistroforelasticsearch.knn.KNNTestCase;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.indices.breaker.BreakerSettings;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class KNNCircuitBreakerTests extends KNNTestCase {
+
+    public void testGraphMemoryBreakerSettings() {
+        Settings settings = Settings.builder().put(KNNSettings.KNN_MEMORY_CIRCUIT_BREAKER_LIMIT, "1kb").build();
+        BreakerSettings breakerSettings = KNNCircuitBreaker.getGraphMemoryBreakerSettings(settings);
+        assertEquals(KNNCircuitBreaker.KNN_GRAPH_BREAKER_NAME, breakerSettings.getName());
+        assertEquals(1024, breakerSettings.getLimit());
+        assertEquals(0.0, breakerSettings.getOverhead(), 0.0);
+        assertEquals(CircuitBreaker.Durability.TRANSIENT, breakerSettings.getDurability());
+    }
+
+    public void testAddGraphMemory() {
+        CircuitBreaker breaker = mock(CircuitBreaker.class);
+        KNNCircuitBreaker.getInstance().setGraphMemoryBreaker(breaker);
+        try {
+            KNNCircuitBreaker.getInstance().addGraphMemoryAndMaybeBreak(1024, 0, "graph");
+            verify(breaker).addWithoutBreaking(1024);
+
+            KNNCircuitBreaker.getInstance().addWithoutBreaking(-1024);
+            verify(breaker).addWithoutBreaking(-1024);
+        } finally {
+            KNNCircuitBreaker.getInstance().setGraphMemoryBreaker(null);
+        }
+    }
+
+    public void testAddGraphMemoryLargerThanLimit() {
+        CircuitBreaker breaker = mock(CircuitBreaker.class);
+        KNNCircuitBreaker.getInstance().setGraphMemoryBreaker(breaker);
+        try {
+            long graphSize = KNNSettings.getCircuitBreakerLimit().getBytes() + 1;
+            CircuitBreakingException e = expectThrows(CircuitBreakingException.class,
+                    () -> KNNCircuitBreaker.getInstance().addGraphMemoryAndMaybeBreak(graphSize, 0, "graph"));
+            assertEquals(graphSize, e.getBytesWanted());
+            assertEquals(CircuitBreaker.Durability.TRANSIENT, e.getDurability());
+            verify(breaker, never()).addWithoutBreaking(graphSize);
+        } finally {
+            KNNCircuitBreaker.getInstance().setGraphMemoryBreaker(null);
+        }
+    }
+
+    public void testAddGraphMemoryOverCumulativeLimit() {
+        CircuitBreaker breaker = mock(CircuitBreaker.class);
+        long limit = KNNSettings.getCircuitBreakerLimit().getBytes();
+        when(breaker.getUsed()).thenReturn(limit - 100);
+        KNNCircuitBreaker.getInstance().setGraphMemoryBreaker(breaker);
+        try {
+            // Memory held by loads and builds in flight is not freed by evicting graphs
+            CircuitBreakingException e = expectThrows(CircuitBreakingException.class,
+                    () -> KNNCircuitBreaker.getInstance().addGraphMemoryAndMaybeBreak(200, 0, "graph"));
+            assertEquals(limit + 100, e.getBytesWanted());
+            verify(breaker, never()).addWithoutBreaking(200);
+
+            // Graphs in the cache are evicted to make room for the new graph
+            KNNCircuitBreaker.getInstance().addGraphMemoryAndMaybeBreak(200, limit - 100, "graph");
+            verify(breaker).addWithoutBreaking(200);
+        } finally {
+            KNNCircuitBreaker.getInstance().setGraphMemoryBreaker(null);
+        }
+    }
+}
@@ -261,6 +261,30 @@ public class KNNESIT extends KNNRestTestCase {
         assertThat(ex.getMessage(), containsString("KNN vector values cannot be infinity"));
     }
 
+    public void testVectorMappingValidationQuantizationOutOfRange() throws IOException {
+        Settings settings = Settings.builder()
+                .put(getKNNDefaultIndexSettings())
+                .build();
+
+        String mapping = Strings.toString(XContentFactory.jsonBuilder().startObject()
+                .startObject("properties")
+                .startObject(FIELD_NAME)
+                .field("type", "knn_vector")
+                .field("dimension", 2)
+                .field("quantization", "uint8")
+                .field("quantization_min", 0.0f)
+                .field("quantization_max", 10.0f)
+                .endObject()
+                .endObject()
+                .endObject());
+        createKnnIndex(INDEX_NAME, settings, mapping);
+
+        addKnnDoc(INDEX_NAME, "1", FIELD_NAME, new Float[] {0.0f, 10.0f});
+        Float[] vector = {5.0f, 10.5f};
+        Exception ex = expectThrows(ResponseException.class, () -> addKnnDoc(INDEX_NAME, "2", FIELD_NAME, vector));
+        assertThat(ex.getMessage(), containsString("quantized fields must be within [0.0, 10.0]"));
+    }
+
     public void testVectorMappingValidationUpdateDimension() throws Exception {
         Settings settings = Settings.builder()
                                     .put(getKNNDefaultIndexSettings())
@@ -15,8 +15,8 @@
 
 package com.amazon.opendistroforelasticsearch.knn.index;
 
-import com.amazon.opendistroforelasticsearch.knn.index.v2011.KNNIndex;
 import com.amazon.opendistroforelasticsearch.knn.KNNTestCase;
+import com.amazon.opendistroforelasticsearch.knn.index.util.KNNIndexHandle;
 import com.amazon.opendistroforelasticsearch.knn.plugin.KNNPlugin;
 import org.elasticsearch.action.admin.indices.mapping.put.PutMappingRequest;
 import org.elasticsearch.action.index.IndexRequest;
@@ -38,6 +38,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 
 import static com.amazon.opendistroforelasticsearch.knn.index.KNNIndexCache.GRAPH_COUNT;
@@ -238,13 +239,35 @@ public class KNNIndexCacheTests extends ESSingleNodeTestCase {
         Engine.Searcher searcher = knnIndexShard.getIndexShard().acquireSearcher("test-cache");
         List<String> segmentPaths = knnIndexShard.getHNSWPaths(searcher.getIndexReader());
 
-        List<KNNIndex> knnIndices = KNNIndexCache.getInstance().getIndices(segmentPaths, testIndexName);
+        List<KNNIndexHandle> knnIndices = KNNIndexCache.getInstance().getIndices(segmentPaths, testIndexName);
         assertEquals(2, knnIndices.size());
         assertEquals(2, KNNIndexCache.getInstance().getIndicesCacheStats().get(testIndexName).get(GRAPH_COUNT));
 
         searcher.close();
     }
 
+    public void testGraphsEvictedWhenSegmentsMerged() throws Exception {
+        createIndex(testIndexName, getKNNDefaultIndexSettings());
+        createKnnIndexMapping(testIndexName, testFieldName, 2);
+
+        Long[] vector = {0L, 0L};
+        float[] queryVector = {0L, 0L};
+        addKnnDoc(testIndexName, "1", testFieldName, vector);
+        addKnnDoc(testIndexName, "2", testFieldName, vector);
+        searchKNNIndex(testIndexName, testFieldName, queryVector, 2);
+        Set<String> mergedGraphs = KNNIndexCache.getInstance().getGraphNamesForIndex(testIndexName);
+        assertEquals(2, mergedGraphs.size());
+
+        // Merging drops the segments, which evicts their graphs without waiting for the files to be deleted
+        client().admin().indices().prepareForceMerge(testIndexName).setMaxNumSegments(1).get();
+        client().admin().indices().prepareRefresh(testIndexName).get();
+        assertBusy(() -> assertTrue(Collections.disjoint(mergedGraphs,
+                KNNIndexCache.getInstance().getGraphNamesForIndex(testIndexName))));
+
+        searchKNNIndex(testIndexName, testFieldName, queryVector, 2);
+        assertEquals(1, KNNIndexCache.getInstance().getIndicesCacheStats().get(testIndexName).get(GRAPH_COUNT));
+    }
+
     protected void createKnnIndexMapping(String indexName, String fieldName, Integer dimensions) {
         PutMappingRequest request = new PutMappingRequest(indexName).type("_doc");
         request.source(fieldName, "type=knn_vector,dimension="+dimensions);
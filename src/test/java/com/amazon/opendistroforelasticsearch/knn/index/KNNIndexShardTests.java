@@ -16,11 +16,15 @@
 package com.amazon.opendistroforelasticsearch.knn.index;
 
 import com.amazon.opendistroforelasticsearch.knn.KNNSingleNodeTestCase;
+import com.amazon.opendistroforelasticsearch.knn.plugin.transport.KNNWarmupShardTask;
+import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.index.IndexService;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.tasks.TaskId;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 
@@ -77,6 +81,50 @@ public class KNNIndexShardTests extends KNNSingleNodeTestCase {
         assertEquals(1, KNNIndexCache.getInstance().getIndicesCacheStats().get(testIndexName).get(GRAPH_COUNT));
     }
 
+    public void testWarmup_reportsProgress() throws IOException {
+        IndexService indexService = createKNNIndex(testIndexName);
+        createKnnIndexMapping(testIndexName, testFieldName, dimensions);
+        addKnnDoc(testIndexName, "1", testFieldName, new Float[] {2.5F, 3.5F});
+        addKnnDoc(testIndexName, "2", testFieldName, new Float[] {2.5F, 3.5F});
+
+        IndexShard indexShard = indexService.iterator().next();
+        KNNIndexShard knnIndexShard = new KNNIndexShard(indexShard);
+        KNNWarmupShardTask task = new KNNWarmupShardTask(1, "transport", "warmup", TaskId.EMPTY_TASK_ID,
+                Collections.emptyMap(), indexShard.shardId());
+        assertEquals(2, knnIndexShard.warmup(task).size());
+
+        KNNWarmupShardTask.Status status = (KNNWarmupShardTask.Status) task.getStatus();
+        assertEquals(2, status.getTotalGraphs());
+        assertEquals(2, status.getLoadedGraphs());
+        assertTrue(status.getLoadedSizeInKB() > 0);
+    }
+
+    public void testWarmup_skipsGraphsNotFittingInCache() throws IOException {
+        IndexService indexService = createKNNIndex(testIndexName);
+        createKnnIndexMapping(testIndexName, testFieldName, dimensions);
+        addKnnDoc(testIndexName, "1", testFieldName, new Float[] {2.5F, 3.5F});
+        addKnnDoc(testIndexName, "2", testFieldName, new Float[] {2.5F, 3.5F});
+
+        try {
+            client().admin().cluster().prepareUpdateSettings().setPersistentSettings(Settings.builder()
+                    .put(KNNSettings.KNN_MEMORY_CIRCUIT_BREAKER_LIMIT, "1kb")).get();
+
+            IndexShard indexShard = indexService.iterator().next();
+            KNNIndexShard knnIndexShard = new KNNIndexShard(indexShard);
+            KNNWarmupShardTask task = new KNNWarmupShardTask(1, "transport", "warmup", TaskId.EMPTY_TASK_ID,
+                    Collections.emptyMap(), indexShard.shardId());
+            assertEquals(1, knnIndexShard.warmup(task).size());
+
+            KNNWarmupShardTask.Status status = (KNNWarmupShardTask.Status) task.getStatus();
+            assertEquals(1, status.getSkippedGraphs());
+            assertTrue(status.getSkippedSizeInKB() > 0);
+            assertEquals(1, KNNIndexCache.getInstance().getIndicesCacheStats().get(testIndexName).get(GRAPH_COUNT));
+        } finally {
+            client().admin().cluster().prepareUpdateSettings().setPersistentSettings(Settings.builder()
+                    .putNull(KNNSettings.KNN_MEMORY_CIRCUIT_BREAKER_LIMIT)).get();
+        }
+    }
+
     public void testWarmup_shardNotPresentInCache() throws InterruptedException, ExecutionException, IOException {
         IndexService indexService = createKNNIndex(testIndexName);
         createKnnIndexMapping(testIndexName, testFieldName, dimensions);
@@ -98,6 +146,17 @@ public class KNNIndexShardTests extends KNNSingleNodeTestCase {
         assertEquals(2, KNNIndexCache.getInstance().getIndicesCacheStats().get(testIndexName).get(GRAPH_COUNT));
     }
 
+    public void testPrefetch() throws InterruptedException, ExecutionException, IOException {
+        IndexService indexService = createKNNIndex(testIndexName);
+        createKnnIndexMapping(testIndexName, testFieldName, dimensions);
+        addKnnDoc(testIndexName, "1", testFieldName, new Float[] {2.5F, 3.5F});
+
+        KNNIndexShard knnIndexShard = new KNNIndexShard(indexService.iterator().next());
+        assertEquals(0, knnIndexShard.prefetch(Collections.singletonList("other-field")).size());
+        assertEquals(1, knnIndexShard.prefetch(Collections.singletonList(testFieldName)).size());
+        assertEquals(1, KNNIndexCache.getInstance().getIndicesCacheStats().get(testIndexName).get(GRAPH_COUNT));
+    }
+
     public void testGetHNSWPaths() throws IOException, ExecutionException, InterruptedException {
         IndexService indexService = createKNNIndex(testIndexName);
         createKnnIndexMapping(testIndexName, testFieldName, dimensions);
@@ -122,4 +181,19 @@ public class KNNIndexShardTests extends KNNSingleNodeTestCase {
         assertTrue(hnswPaths.get(0).contains("hnsw") || hnswPaths.get(0).contains("hnswc"));
         searcher.close();
     }
+
+    public void testClearCache() throws IOException {
+        IndexService indexService = createKNNIndex(testIndexName);
+        createKnnIndexMapping(testIndexName, testFieldName, dimensions);
+        addKnnDoc(testIndexName, "1", testFieldName, new Float[] {2.5F, 3.5F});
+        addKnnDoc(testIndexName, "2", testFieldName, new Float[] {2.5F, 3.5F});
+
+        IndexShard indexShard = indexService.iterator().next();
+        KNNIndexShard knnIndexShard = new KNNIndexShard(indexShard);
+        assertEquals(0, knnIndexShard.clearCache());
+
+        assertEquals(2, knnIndexShard.warmup().size());
+        assertEquals(2, knnIndexShard.clearCache());
+        assertNull(KNNIndexCache.getInstance().getIndicesCacheStats().get(testIndexName));
+    }
 }
@@ -0,0 +1,128 @@
+/*
+ *   Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.knn.index;
+
+import com.amazon.opendistroforelasticsearch.knn.KNNSingleNodeTestCase;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.rest.RestStatus;
+
+import java.util.concurrent.ExecutionException;
+
+public class KNNIndexingCircuitBreakerFilterTests extends KNNSingleNodeTestCase {
+
+    private final String testIndexName = "test-index";
+    private final String testFieldName = "test-field";
+    private final int dimensions = 2;
+
+    public void testRejectWritesToTriggeredNode() throws Exception {
+        createKNNIndex(testIndexName);
+        createKnnIndexMapping(testIndexName, testFieldName, dimensions);
+        createIndex("non-knn-index");
+
+        try {
+            updateCircuitBreakerSettings(KNNSettings.KNN_CIRCUIT_BREAKER_SCOPE_NODE,
+                    node().injector().getInstance(ClusterService.class).localNode().getId());
+
+            ExecutionException e = expectThrows(ExecutionException.class,
+                    () -> addKnnDoc(testIndexName, "1", testFieldName, new Float[] {2.5F, 3.5F}));
+            assertTrue(e.getCause() instanceof CircuitBreakingException);
+            assertEquals(RestStatus.TOO_MANY_REQUESTS, ((CircuitBreakingException) e.getCause()).status());
+
+            // Writes to other indices are not affected
+            client().index(new IndexRequest("non-knn-index").id("1").source("field", "value")).get();
+        } finally {
+            updateCircuitBreakerSettings(null, null);
+        }
+    }
+
+    public void testAcceptWritesToOtherNodesWithNodeScope() throws Exception {
+        createKNNIndex(testIndexName);
+        createKnnIndexMapping(testIndexName, testFieldName, dimensions);
+
+        try {
+            // Only the nodes at capacity reject writes to their primaries
+            updateCircuitBreakerSettings(KNNSettings.KNN_CIRCUIT_BREAKER_SCOPE_NODE, "other-node");
+            addKnnDoc(testIndexName, "1", testFieldName, new Float[] {2.5F, 3.5F});
+
+            // The cluster scope rejects writes to every k-NN index when any node is at capacity
+            updateCircuitBreakerSettings(KNNSettings.KNN_CIRCUIT_BREAKER_SCOPE_CLUSTER, "other-node");
+            client().admin().cluster().prepareUpdateSettings()
+                    .setPersistentSettings(Settings.builder().put(KNNSettings.KNN_CIRCUIT_BREAKER_TRIGGERED, true)).get();
+            ExecutionException e = expectThrows(ExecutionException.class,
+                    () -> addKnnDoc(testIndexName, "2", testFieldName, new Float[] {2.5F, 3.5F}));
+            assertTrue(e.getCause() instanceof CircuitBreakingException);
+        } finally {
+            client().admin().cluster().prepareUpdateSettings()
+                    .setPersistentSettings(Settings.builder().putNull(KNNSettings.KNN_CIRCUIT_BREAKER_TRIGGERED)).get();
+            updateCircuitBreakerSettings(null, null);
+        }
+    }
+
+    public void testRejectWritesWithClusterScope() throws Exception {
+        createKNNIndex(testIndexName);
+        createKnnIndexMapping(testIndexName, testFieldName, dimensions);
+        createIndex("non-knn-index");
+
+        try {
+            client().admin().cluster().prepareUpdateSettings()
+                    .setPersistentSettings(Settings.builder().put(KNNSettings.KNN_CIRCUIT_BREAKER_TRIGGERED, true)).get();
+
+            // Rejected before the document is parsed, so that the client sees the breaker response
+            ExecutionException e = expectThrows(ExecutionException.class,
+                    () -> addKnnDoc(testIndexName, "1", testFieldName, new Float[] {2.5F, 3.5F}));
+            assertTrue(e.getCause() instanceof CircuitBreakingException);
+            assertEquals(RestStatus.TOO_MANY_REQUESTS, ((CircuitBreakingException) e.getCause()).status());
+
+            // Documents without vectors are still accepted, in k-NN indices or not
+            client().index(new IndexRequest(testIndexName).id("2").source("field", "value")).get();
+            client().index(new IndexRequest("non-knn-index").id("1").source("field", "value")).get();
+        } finally {
+            client().admin().cluster().prepareUpdateSettings()
+                    .setPersistentSettings(Settings.builder().putNull(KNNSettings.KNN_CIRCUIT_BREAKER_TRIGGERED)).get();
+        }
+    }
+
+    public void testClusterFlagIgnoredWithNodeScope() throws Exception {
+        createKNNIndex(testIndexName);
+        createKnnIndexMapping(testIndexName, testFieldName, dimensions);
+
+        try {
+            updateCircuitBreakerSettings(KNNSettings.KNN_CIRCUIT_BREAKER_SCOPE_NODE, null);
+            client().admin().cluster().prepareUpdateSettings()
+                    .setPersistentSettings(Settings.builder().put(KNNSettings.KNN_CIRCUIT_BREAKER_TRIGGERED, true)).get();
+
+            addKnnDoc(testIndexName, "1", testFieldName, new Float[] {2.5F, 3.5F});
+        } finally {
+            client().admin().cluster().prepareUpdateSettings()
+                    .setPersistentSettings(Settings.builder().putNull(KNNSettings.KNN_CIRCUIT_BREAKER_TRIGGERED)).get();
+            updateCircuitBreakerSettings(null, null);
+        }
+    }
+
+    private void updateCircuitBreakerSettings(String scope, String triggeredNode)
+            throws ExecutionException, InterruptedException {
+        Settings.Builder settings = Settings.builder().put(KNNSettings.KNN_CIRCUIT_BREAKER_SCOPE, scope);
+        if (triggeredNode == null) {
+            settings.putNull(KNNSettings.KNN_CIRCUIT_BREAKER_TRIGGERED_NODES);
+        } else {
+            settings.putList(KNNSettings.KNN_CIRCUIT_BREAKER_TRIGGERED_NODES, triggeredNode);
+        }
+        client().admin().cluster().prepareUpdateSettings().setPersistentSettings(settings).get();
+    }
+}
@@ -111,6 +111,58 @@ public class KNNJNITests extends KNNTestCase {
         dir.close();
     }
 
+    public void testQueryAndCloseHnswIndexConcurrently() throws Exception {
+        int[] docs = {0, 1, 2};
+
+        float[][] vectors = {
+                {5.0f, 6.0f, 7.0f, 8.0f},
+                {1.0f, 2.0f, 3.0f, 4.0f},
+                {9.0f, 10.0f, 11.0f, 12.0f}
+        };
+
+        Directory dir = newFSDirectory(createTempDir());
+        String segmentName = "_dummy1";
+        String indexPath = Paths.get(((FSDirectory) (FilterDirectory.unwrap(dir))).getDirectory().toString(),
+                String.format("%s.hnsw", segmentName)).toString();
+
+        String[] algoParams = {};
+        AccessController.doPrivileged(
+                new PrivilegedAction<Void>() {
+                    public Void run() {
+                        KNNIndex.saveIndex(docs, vectors, indexPath, algoParams, "l2");
+                        return null;
+                    }
+                }
+        );
+
+        float[] queryVector = {1.0f, 1.0f, 1.0f, 1.0f};
+        final KNNIndex knnIndex = KNNIndex.loadIndex(indexPath, new String[] {"efSearch=20"}, "l2");
+
+        // Queries running while the index gets closed either complete or fail cleanly, never on a freed graph
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 100; j++) {
+                    try {
+                        assertEquals(3, knnIndex.queryIndex(queryVector, 3).length);
+                    } catch (Exception e) {
+                        assertTrue(e.getMessage().contains("Index is already closed"));
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        knnIndex.close();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        expectThrows(RuntimeException.class, () -> knnIndex.queryIndex(queryVector, 3));
+        // close is idempotent
+        knnIndex.close();
+        dir.close();
+    }
+
     public void testAddAndQueryHnswIndexCosineSimil() throws Exception {
         int[] docs = {0, 1, 2};
 
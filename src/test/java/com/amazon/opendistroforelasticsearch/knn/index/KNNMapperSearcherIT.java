@@ -218,6 +218,22 @@ public class KNNMapperSearcherIT extends KNNRestTestCase {
         }
     }
 
+    public void testExactKNNResultsWithDeleteDoc() throws Exception {
+        createKnnIndex(INDEX_NAME, createKnnIndexMapping(FIELD_NAME, 2));
+        addTestData();
+        deleteKnnDoc(INDEX_NAME, "2");
+
+        float[] queryVector = {1.0f, 1.0f}; // vector to be queried
+        int k = 2;
+        KNNQueryBuilder knnQueryBuilder = new KNNQueryBuilder(FIELD_NAME, queryVector, k).exact(true);
+        Response response = searchKNNIndex(INDEX_NAME, knnQueryBuilder, k);
+        List<KNNResult> results = parseSearchResponse(EntityUtils.toString(response.getEntity()), FIELD_NAME);
+
+        assertEquals(k, results.size());
+        assertEquals("4", results.get(0).getDocId());
+        assertEquals("3", results.get(1).getDocId());
+    }
+
     /**
      * For negative K, query builder should throw Exception
      */
@@ -0,0 +1,62 @@
+/*
+ *   Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.knn.index;
+
+import com.amazon.opendistroforelasticsearch.knn.KNNTestCase;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.shard.ShardId;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class KNNQueryHistoryTests extends KNNTestCase {
+
+    private final ShardId shardId = new ShardId(new Index("test-index", "test-uuid"), 0);
+
+    public void testGetHotFields() {
+        KNNQueryHistory queryHistory = KNNQueryHistory.getInstance();
+        try {
+            assertEquals(Collections.emptyList(), queryHistory.getHotFields(shardId));
+
+            queryHistory.record(shardId, "field1");
+            queryHistory.record(shardId, "field2");
+            queryHistory.record(shardId, "field2");
+            assertEquals(Arrays.asList("field2", "field1"), queryHistory.getHotFields(shardId));
+        } finally {
+            queryHistory.remove(shardId);
+        }
+    }
+
+    public void testPersistAndLoad() {
+        KNNQueryHistory queryHistory = KNNQueryHistory.getInstance();
+        Path shardDataPath = createTempDir();
+        try {
+            queryHistory.record(shardId, "field1");
+            queryHistory.record(shardId, "field2");
+            queryHistory.record(shardId, "field2");
+            queryHistory.persist(shardId, shardDataPath);
+            assertTrue(Files.exists(shardDataPath.resolve(KNNQueryHistory.HISTORY_FILE_NAME)));
+            assertEquals(Collections.emptyList(), queryHistory.getHotFields(shardId));
+
+            queryHistory.load(shardId, shardDataPath);
+            assertEquals(Arrays.asList("field2", "field1"), queryHistory.getHotFields(shardId));
+        } finally {
+            queryHistory.remove(shardId);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ *   Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.knn.index;
+
+import com.amazon.opendistroforelasticsearch.knn.KNNSingleNodeTestCase;
+import org.elasticsearch.common.settings.Settings;
+
+import static com.amazon.opendistroforelasticsearch.knn.index.KNNIndexCache.GRAPH_COUNT;
+
+public class KNNSegmentWarmerTests extends KNNSingleNodeTestCase {
+
+    private final String testIndexName = "test-index";
+    private final String testFieldName = "test-field";
+    private final int dimensions = 2;
+
+    public void testWarmNewSegments_indexInCache() throws Exception {
+        createKNNIndex(testIndexName);
+        createKnnIndexMapping(testIndexName, testFieldName, dimensions);
+        addKnnDoc(testIndexName, "1", testFieldName, new Float[] {2.5F, 3.5F});
+
+        searchKNNIndex(testIndexName, testFieldName, new float[] {1.0f, 2.0f}, 1);
+        assertEquals(1, KNNIndexCache.getInstance().getIndicesCacheStats().get(testIndexName).get(GRAPH_COUNT));
+
+        // The refresh creates a new segment, whose graph is loaded without searching it
+        addKnnDoc(testIndexName, "2", testFieldName, new Float[] {2.5F, 3.5F});
+        assertEquals(2, KNNIndexCache.getInstance().getIndicesCacheStats().get(testIndexName).get(GRAPH_COUNT));
+    }
+
+    public void testWarmNewSegments_indexNotInCache() throws Exception {
+        createKNNIndex(testIndexName);
+        createKnnIndexMapping(testIndexName, testFieldName, dimensions);
+        addKnnDoc(testIndexName, "1", testFieldName, new Float[] {2.5F, 3.5F});
+        addKnnDoc(testIndexName, "2", testFieldName, new Float[] {2.5F, 3.5F});
+
+        assertNull(KNNIndexCache.getInstance().getIndicesCacheStats().get(testIndexName));
+    }
+
+    public void testWarmNewSegments_cacheFull() throws Exception {
+        createKNNIndex(testIndexName);
+        createKnnIndexMapping(testIndexName, testFieldName, dimensions);
+        addKnnDoc(testIndexName, "1", testFieldName, new Float[] {2.5F, 3.5F});
+
+        try {
+            client().admin().cluster().prepareUpdateSettings().setPersistentSettings(Settings.builder()
+                    .put(KNNSettings.KNN_MEMORY_CIRCUIT_BREAKER_LIMIT, "1kb")).get();
+            searchKNNIndex(testIndexName, testFieldName, new float[] {1.0f, 2.0f}, 1);
+            assertEquals(1, KNNIndexCache.getInstance().getIndicesCacheStats().get(testIndexName).get(GRAPH_COUNT));
+
+            // The graph of the new segment does not fit next to the loaded one, so it is left for the first query
+            addKnnDoc(testIndexName, "2", testFieldName, new Float[] {2.5F, 3.5F});
+            assertEquals(1, KNNIndexCache.getInstance().getIndicesCacheStats().get(testIndexName).get(GRAPH_COUNT));
+            assertFalse(KNNIndexCache.getInstance().isCacheCapacityReached());
+        } finally {
+            client().admin().cluster().prepareUpdateSettings().setPersistentSettings(Settings.builder()
+                    .putNull(KNNSettings.KNN_MEMORY_CIRCUIT_BREAKER_LIMIT)).get();
+        }
+    }
+}
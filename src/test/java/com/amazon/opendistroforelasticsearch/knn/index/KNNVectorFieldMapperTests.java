@@ -29,11 +29,13 @@ import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.fielddata.IndexFieldData;
 import org.elasticsearch.index.mapper.ContentPath;
 import org.elasticsearch.index.mapper.Mapper;
+import org.elasticsearch.index.mapper.MapperParsingException;
 import org.elasticsearch.index.mapper.MapperService;
 import org.elasticsearch.search.aggregations.support.CoreValuesSourceType;
 
 import java.io.IOException;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -41,6 +43,7 @@ import java.util.Set;
 import static com.amazon.opendistroforelasticsearch.knn.index.KNNSettings.INDEX_KNN_SPACE_TYPE;
 import static com.amazon.opendistroforelasticsearch.knn.index.KNNSettings.INDEX_KNN_ALGO_PARAM_M_SETTING;
 import static com.amazon.opendistroforelasticsearch.knn.index.KNNSettings.INDEX_KNN_ALGO_PARAM_EF_CONSTRUCTION_SETTING;
+import static com.amazon.opendistroforelasticsearch.knn.index.KNNSettings.INDEX_KNN_ALGO_PARAM_GRAPH_BUILD_THRESHOLD_SETTING;
 import static org.elasticsearch.Version.CURRENT;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -73,6 +76,7 @@ public class KNNVectorFieldMapperTests extends KNNTestCase {
         String fieldName = "test-field-name";
         int m = 73;
         int efConstruction = 47;
+        int graphBuildThreshold = 1000;
         int dimension = 100;
 
         Settings settings = Settings.builder()
@@ -80,6 +84,7 @@ public class KNNVectorFieldMapperTests extends KNNTestCase {
                 .put(KNNSettings.KNN_SPACE_TYPE, KNNConstants.COSINESIMIL)
                 .put(KNNSettings.KNN_ALGO_PARAM_M, m)
                 .put(KNNSettings.KNN_ALGO_PARAM_EF_CONSTRUCTION, efConstruction)
+                .put(KNNSettings.KNN_ALGO_PARAM_GRAPH_BUILD_THRESHOLD, graphBuildThreshold)
                 .build();
         IndexMetadata indexMetadata = buildIndexMetaData(indexName, settings);
 
@@ -87,6 +92,7 @@ public class KNNVectorFieldMapperTests extends KNNTestCase {
         settingSet.add(INDEX_KNN_SPACE_TYPE);
         settingSet.add(INDEX_KNN_ALGO_PARAM_M_SETTING);
         settingSet.add(INDEX_KNN_ALGO_PARAM_EF_CONSTRUCTION_SETTING);
+        settingSet.add(INDEX_KNN_ALGO_PARAM_GRAPH_BUILD_THRESHOLD_SETTING);
 
         IndexSettings indexSettings = new IndexSettings(indexMetadata, Settings.EMPTY,
                 new IndexScopedSettings(Settings.EMPTY, settingSet));
@@ -109,6 +115,7 @@ public class KNNVectorFieldMapperTests extends KNNTestCase {
         assertEquals(KNNConstants.COSINESIMIL, knnVectorFieldMapper.spaceType);
         assertEquals(String.valueOf(m), knnVectorFieldMapper.m);
         assertEquals(String.valueOf(efConstruction), knnVectorFieldMapper.efConstruction);
+        assertEquals(String.valueOf(graphBuildThreshold), knnVectorFieldMapper.graphBuildThreshold);
     }
 
     public void testBuildKNNIndexSettings_emptySettings() throws IOException {
@@ -141,6 +148,8 @@ public class KNNVectorFieldMapperTests extends KNNTestCase {
         assertEquals(KNNSettings.INDEX_KNN_DEFAULT_ALGO_PARAM_M.toString(), knnVectorFieldMapper.m);
         assertEquals(KNNSettings.INDEX_KNN_DEFAULT_ALGO_PARAM_EF_CONSTRUCTION.toString(),
                 knnVectorFieldMapper.efConstruction);
+        assertEquals(KNNSettings.INDEX_KNN_DEFAULT_ALGO_PARAM_GRAPH_BUILD_THRESHOLD.toString(),
+                knnVectorFieldMapper.graphBuildThreshold);
     }
 
     public void testVectorFieldMapperTypeFieldDataBuilder() {
@@ -157,4 +166,214 @@ public class KNNVectorFieldMapperTests extends KNNTestCase {
         assertEquals(CoreValuesSourceType.BYTES, knnVectorIndexField.getValuesSourceType());
 
     }
+
+    public void testBuildKNNVectorFieldMapper_storeNorm() throws IOException {
+        String indexName = "test-index";
+        String fieldName = "test-field-name";
+
+        Settings settings = Settings.builder()
+                .put(settings(CURRENT).build())
+                .build();
+        IndexMetadata indexMetadata = buildIndexMetaData(indexName, settings);
+        IndexSettings indexSettings = new IndexSettings(indexMetadata, Settings.EMPTY,
+                new IndexScopedSettings(Settings.EMPTY, IndexScopedSettings.BUILT_IN_INDEX_SETTINGS));
+        MapperService mapperService = mock(MapperService.class);
+        when(mapperService.getIndexSettings()).thenReturn(indexSettings);
+
+        Mapper.TypeParser.ParserContext context = new Mapper.TypeParser.ParserContext(null,
+                mapperService, type -> new KNNVectorFieldMapper.TypeParser(), CURRENT, null,
+                null, null);
+        KNNVectorFieldMapper.TypeParser typeParser = new KNNVectorFieldMapper.TypeParser();
+
+        Map<String, Object> knnNodeMap = buildKnnNodeMap(10);
+        KNNVectorFieldMapper.Builder builder = (KNNVectorFieldMapper.Builder) typeParser.parse(fieldName, knnNodeMap,
+                context);
+        Mapper.BuilderContext builderContext = new Mapper.BuilderContext(settings, new ContentPath());
+        assertFalse(builder.build(builderContext).fieldType().isNormStored());
+
+        knnNodeMap = buildKnnNodeMap(10);
+        knnNodeMap.put(KNNConstants.STORE_NORM, true);
+        builder = (KNNVectorFieldMapper.Builder) typeParser.parse(fieldName, knnNodeMap, context);
+        KNNVectorFieldMapper knnVectorFieldMapper = builder.build(builderContext);
+        assertTrue(knnVectorFieldMapper.fieldType().isNormStored());
+        assertEquals(fieldName + KNNConstants.NORM_FIELD_SUFFIX,
+                KNNVectorFieldMapper.normFieldName(knnVectorFieldMapper.fieldType().name()));
+    }
+
+    public void testBuildKNNVectorFieldMapper_quantization() throws IOException {
+        String indexName = "test-index";
+        String fieldName = "test-field-name";
+
+        Settings settings = Settings.builder()
+                .put(settings(CURRENT).build())
+                .build();
+        IndexMetadata indexMetadata = buildIndexMetaData(indexName, settings);
+        IndexSettings indexSettings = new IndexSettings(indexMetadata, Settings.EMPTY,
+                new IndexScopedSettings(Settings.EMPTY, IndexScopedSettings.BUILT_IN_INDEX_SETTINGS));
+        MapperService mapperService = mock(MapperService.class);
+        when(mapperService.getIndexSettings()).thenReturn(indexSettings);
+
+        Mapper.TypeParser.ParserContext context = new Mapper.TypeParser.ParserContext(null,
+                mapperService, type -> new KNNVectorFieldMapper.TypeParser(), CURRENT, null,
+                null, null);
+        KNNVectorFieldMapper.TypeParser typeParser = new KNNVectorFieldMapper.TypeParser();
+
+        Map<String, Object> knnNodeMap = buildKnnNodeMap(10);
+        knnNodeMap.put(KNNConstants.QUANTIZATION, QuantizationTypes.uint8.getKey());
+        knnNodeMap.put(KNNConstants.QUANTIZATION_MIN, 0.0f);
+        knnNodeMap.put(KNNConstants.QUANTIZATION_MAX, 10.0f);
+        assertNotNull(typeParser.parse(fieldName, knnNodeMap, context));
+
+        Map<String, Object> unknownTypeNodeMap = buildKnnNodeMap(10);
+        unknownTypeNodeMap.put(KNNConstants.QUANTIZATION, "int4");
+        expectThrows(MapperParsingException.class, () -> typeParser.parse(fieldName, unknownTypeNodeMap, context));
+
+        Map<String, Object> missingRangeNodeMap = buildKnnNodeMap(10);
+        missingRangeNodeMap.put(KNNConstants.QUANTIZATION, QuantizationTypes.int8.getKey());
+        missingRangeNodeMap.put(KNNConstants.QUANTIZATION_MAX, 1.0f);
+        expectThrows(IllegalArgumentException.class, () -> typeParser.parse(fieldName, missingRangeNodeMap, context));
+
+        Map<String, Object> invalidRangeNodeMap = buildKnnNodeMap(10);
+        invalidRangeNodeMap.put(KNNConstants.QUANTIZATION, QuantizationTypes.int8.getKey());
+        invalidRangeNodeMap.put(KNNConstants.QUANTIZATION_MIN, 1.0f);
+        invalidRangeNodeMap.put(KNNConstants.QUANTIZATION_MAX, 1.0f);
+        expectThrows(IllegalArgumentException.class, () -> typeParser.parse(fieldName, invalidRangeNodeMap, context));
+    }
+
+    public void testBuildKNNVectorFieldMapper_dataType() throws IOException {
+        String indexName = "test-index";
+        String fieldName = "test-field-name";
+
+        Settings settings = Settings.builder()
+                .put(settings(CURRENT).build())
+                .build();
+        IndexMetadata indexMetadata = buildIndexMetaData(indexName, settings);
+        IndexSettings indexSettings = new IndexSettings(indexMetadata, Settings.EMPTY,
+                new IndexScopedSettings(Settings.EMPTY, IndexScopedSettings.BUILT_IN_INDEX_SETTINGS));
+        MapperService mapperService = mock(MapperService.class);
+        when(mapperService.getIndexSettings()).thenReturn(indexSettings);
+
+        Mapper.TypeParser.ParserContext context = new Mapper.TypeParser.ParserContext(null,
+                mapperService, type -> new KNNVectorFieldMapper.TypeParser(), CURRENT, null,
+                null, null);
+        KNNVectorFieldMapper.TypeParser typeParser = new KNNVectorFieldMapper.TypeParser();
+
+        Map<String, Object> knnNodeMap = buildKnnNodeMap(10);
+        knnNodeMap.put(KNNConstants.DATA_TYPE, VectorDataTypes.float16.getKey());
+        assertNotNull(typeParser.parse(fieldName, knnNodeMap, context));
+
+        Map<String, Object> unknownTypeNodeMap = buildKnnNodeMap(10);
+        unknownTypeNodeMap.put(KNNConstants.DATA_TYPE, "bfloat16");
+        expectThrows(MapperParsingException.class, () -> typeParser.parse(fieldName, unknownTypeNodeMap, context));
+
+        Map<String, Object> quantizedNodeMap = buildKnnNodeMap(10);
+        quantizedNodeMap.put(KNNConstants.DATA_TYPE, VectorDataTypes.float16.getKey());
+        quantizedNodeMap.put(KNNConstants.QUANTIZATION, QuantizationTypes.int8.getKey());
+        expectThrows(IllegalArgumentException.class, () -> typeParser.parse(fieldName, quantizedNodeMap, context));
+    }
+
+    public void testBuildKNNVectorFieldMapper_binary() throws IOException {
+        String indexName = "test-index";
+        String fieldName = "test-field-name";
+
+        Settings settings = Settings.builder()
+                .put(settings(CURRENT).build())
+                .put(KNNSettings.KNN_SPACE_TYPE, KNNConstants.COSINESIMIL)
+                .build();
+        IndexMetadata indexMetadata = buildIndexMetaData(indexName, settings);
+        IndexSettings indexSettings = new IndexSettings(indexMetadata, Settings.EMPTY,
+                new IndexScopedSettings(Settings.EMPTY, IndexScopedSettings.BUILT_IN_INDEX_SETTINGS));
+        MapperService mapperService = mock(MapperService.class);
+        when(mapperService.getIndexSettings()).thenReturn(indexSettings);
+
+        Mapper.TypeParser.ParserContext context = new Mapper.TypeParser.ParserContext(null,
+                mapperService, type -> new KNNVectorFieldMapper.TypeParser(), CURRENT, null,
+                null, null);
+        KNNVectorFieldMapper.TypeParser typeParser = new KNNVectorFieldMapper.TypeParser();
+
+        Map<String, Object> knnNodeMap = buildKnnNodeMap(64);
+        knnNodeMap.put(KNNConstants.DATA_TYPE, VectorDataTypes.binary.getKey());
+        KNNVectorFieldMapper.Builder builder = (KNNVectorFieldMapper.Builder) typeParser.parse(fieldName, knnNodeMap,
+                context);
+
+        // The hamming distance is only computed by the l2 and l1 graphs
+        expectThrows(IllegalArgumentException.class,
+                () -> builder.build(new Mapper.BuilderContext(settings, new ContentPath())));
+
+        Settings l1Settings = Settings.builder()
+                .put(settings(CURRENT).build())
+                .put(KNNSettings.KNN_SPACE_TYPE, SpaceTypes.l1.getKey())
+                .build();
+        Map<String, Object> l1NodeMap = buildKnnNodeMap(64);
+        l1NodeMap.put(KNNConstants.DATA_TYPE, VectorDataTypes.binary.getKey());
+        KNNVectorFieldMapper.Builder l1Builder = (KNNVectorFieldMapper.Builder) typeParser.parse(fieldName,
+                l1NodeMap, context);
+        KNNVectorFieldMapper knnVectorFieldMapper = l1Builder.build(new Mapper.BuilderContext(l1Settings,
+                new ContentPath()));
+        assertEquals(SpaceTypes.l1.getKey(), knnVectorFieldMapper.spaceType);
+    }
+
+    public void testBuildKNNVectorFieldMapper_method() throws IOException {
+        String indexName = "test-index";
+        String fieldName = "test-field-name";
+
+        Settings settings = Settings.builder()
+                .put(settings(CURRENT).build())
+                .put(KNNSettings.KNN_SPACE_TYPE, KNNConstants.L2)
+                .put(KNNSettings.KNN_ALGO_PARAM_M, 16)
+                .put(KNNSettings.KNN_ALGO_PARAM_EF_CONSTRUCTION, 512)
+                .build();
+        IndexMetadata indexMetadata = buildIndexMetaData(indexName, settings);
+        IndexSettings indexSettings = new IndexSettings(indexMetadata, Settings.EMPTY,
+                new IndexScopedSettings(Settings.EMPTY, IndexScopedSettings.BUILT_IN_INDEX_SETTINGS));
+        MapperService mapperService = mock(MapperService.class);
+        when(mapperService.getIndexSettings()).thenReturn(indexSettings);
+
+        Mapper.TypeParser.ParserContext context = new Mapper.TypeParser.ParserContext(null,
+                mapperService, type -> new KNNVectorFieldMapper.TypeParser(), CURRENT, null,
+                null, null);
+        KNNVectorFieldMapper.TypeParser typeParser = new KNNVectorFieldMapper.TypeParser();
+
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put(KNNConstants.METHOD_PARAMETER_M, 48);
+        Map<String, Object> method = new HashMap<>();
+        method.put(KNNConstants.METHOD_NAME, KNNConstants.METHOD_HNSW);
+        method.put(KNNConstants.METHOD_SPACE_TYPE, KNNConstants.COSINESIMIL);
+        method.put(KNNConstants.KNN_ENGINE, KNNConstants.NMSLIB);
+        method.put(KNNConstants.METHOD_PARAMETERS, parameters);
+
+        Map<String, Object> knnNodeMap = buildKnnNodeMap(10);
+        knnNodeMap.put(KNNConstants.METHOD, method);
+        KNNVectorFieldMapper.Builder builder = (KNNVectorFieldMapper.Builder) typeParser.parse(fieldName, knnNodeMap,
+                context);
+        KNNVectorFieldMapper knnVectorFieldMapper = builder.build(new Mapper.BuilderContext(settings,
+                new ContentPath()));
+
+        // The method takes precedence over the index settings, which still hold the parameters it does not set
+        assertEquals(KNNConstants.COSINESIMIL, knnVectorFieldMapper.spaceType);
+        assertEquals("48", knnVectorFieldMapper.m);
+        assertEquals("512", knnVectorFieldMapper.efConstruction);
+
+        Map<String, Object> unknownEngineNodeMap = buildKnnNodeMap(10);
+        unknownEngineNodeMap.put(KNNConstants.METHOD, Collections.singletonMap(KNNConstants.KNN_ENGINE, "faiss"));
+        expectThrows(IllegalArgumentException.class, () -> typeParser.parse(fieldName, unknownEngineNodeMap,
+                context));
+
+        Map<String, Object> unknownSpaceNodeMap = buildKnnNodeMap(10);
+        unknownSpaceNodeMap.put(KNNConstants.METHOD, Collections.singletonMap(KNNConstants.METHOD_SPACE_TYPE,
+                "hamming"));
+        expectThrows(IllegalArgumentException.class, () -> typeParser.parse(fieldName, unknownSpaceNodeMap,
+                context));
+
+        Map<String, Object> invalidParameterNodeMap = buildKnnNodeMap(10);
+        invalidParameterNodeMap.put(KNNConstants.METHOD, Collections.singletonMap(KNNConstants.METHOD_PARAMETERS,
+                Collections.singletonMap(KNNConstants.METHOD_PARAMETER_M, 1)));
+        expectThrows(IllegalArgumentException.class, () -> typeParser.parse(fieldName, invalidParameterNodeMap,
+                context));
+
+        Map<String, Object> unknownEntryNodeMap = buildKnnNodeMap(10);
+        unknownEntryNodeMap.put(KNNConstants.METHOD, Collections.singletonMap("ef_search", 100));
+        expectThrows(IllegalArgumentException.class, () -> typeParser.parse(fieldName, unknownEntryNodeMap,
+                context));
+    }
 }
@@ -26,4 +26,12 @@ public class KNN87CodecTests extends KNNCodecTestCase {
     public void testMultiFieldsKnnIndex() throws Exception {
         testMultiFieldsKnnIndex(new KNN87Codec());
     }
+
+    public void testExactQuery() throws Exception {
+        testExactQuery(new KNN87Codec());
+    }
+
+    public void testGraphBuildThreshold() throws Exception {
+        testGraphBuildThreshold(new KNN87Codec());
+    }
 }
@@ -16,15 +16,22 @@
 package com.amazon.opendistroforelasticsearch.knn.index.codec;
 
 import com.amazon.opendistroforelasticsearch.knn.KNNTestCase;
+import com.amazon.opendistroforelasticsearch.knn.common.KNNConstants;
+import com.amazon.opendistroforelasticsearch.knn.index.KNNExactQuery;
 import com.amazon.opendistroforelasticsearch.knn.index.KNNIndexCache;
 import com.amazon.opendistroforelasticsearch.knn.index.KNNQuery;
 import com.amazon.opendistroforelasticsearch.knn.index.KNNSettings;
 import com.amazon.opendistroforelasticsearch.knn.index.KNNVectorFieldMapper;
+import com.amazon.opendistroforelasticsearch.knn.index.KNNWeight;
 import com.amazon.opendistroforelasticsearch.knn.index.VectorField;
 import com.amazon.opendistroforelasticsearch.knn.index.codec.KNN87Codec.KNN87Codec;
+import com.amazon.opendistroforelasticsearch.knn.plugin.script.KNNScoringUtil;
 import org.apache.lucene.codecs.Codec;
 import org.apache.lucene.codecs.CodecUtil;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.StringField;
 import org.apache.lucene.index.FilterLeafReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriterConfig;
@@ -32,18 +39,21 @@ import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.RandomIndexWriter;
 import org.apache.lucene.index.SegmentReader;
 import org.apache.lucene.index.SerialMergeScheduler;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.ChecksumIndexInput;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IOContext;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.settings.Settings;
-import org.elasticsearch.watcher.ResourceWatcherService;
 import org.mockito.Mockito;
 
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
 import static org.mockito.Mockito.mock;
@@ -61,16 +71,6 @@ public class  KNNCodecTestCase extends KNNTestCase {
         KNNSettings.state().setClusterService(clusterService);
     }
 
-    protected ResourceWatcherService createDisabledResourceWatcherService() {
-        final Settings settings = Settings.builder()
-                .put("resource.reload.enabled", false)
-                .build();
-        return new ResourceWatcherService(
-                settings,
-                null
-        );
-    }
-
     public void testFooter(Codec codec) throws Exception {
         setUpMockClusterService();
         Directory dir = newFSDirectory(createTempDir());
@@ -85,7 +85,6 @@ public class  KNNCodecTestCase extends KNNTestCase {
         doc.add(vectorField);
         writer.addDocument(doc);
 
-        KNNIndexCache.setResourceWatcherService(createDisabledResourceWatcherService());
         IndexReader reader = writer.getReader();
         LeafReaderContext lrc = reader.getContext().leaves().iterator().next(); // leaf reader context
         SegmentReader segmentReader = (SegmentReader) FilterLeafReader.unwrap(lrc.reader());
@@ -103,9 +102,12 @@ public class  KNNCodecTestCase extends KNNTestCase {
 
         IndexSearcher searcher = new IndexSearcher(reader);
         assertEquals(1, searcher.count(new KNNQuery("test_vector", new float[] {1.0f, 2.5f}, 1, "myindex")));
+        assertEquals(1, KNNIndexCache.getInstance().getGraphNamesForIndex("myindex").size());
 
         reader.close();
         writer.close();
+        // the graph is evicted once its segment is no longer used by any reader
+        assertTrue(KNNIndexCache.getInstance().getGraphNamesForIndex("myindex").isEmpty());
         dir.close();
     }
 
@@ -141,7 +143,6 @@ public class  KNNCodecTestCase extends KNNTestCase {
         writer.addDocument(doc1);
         IndexReader reader = writer.getReader();
         writer.close();
-        KNNIndexCache.setResourceWatcherService(createDisabledResourceWatcherService());
         List<String> hnswfiles = Arrays.stream(dir.listAll()).filter(x -> x.contains("hnsw")).collect(Collectors.toList());
 
         // there should be 2 hnsw index files created. one for test_vector and one for my_vector
@@ -163,5 +164,98 @@ public class  KNNCodecTestCase extends KNNTestCase {
         reader.close();
         dir.close();
     }
-}
 
+    public void testExactQuery(Codec codec) throws Exception {
+        setUpMockClusterService();
+        Directory dir = newFSDirectory(createTempDir());
+        IndexWriterConfig iwc = newIndexWriterConfig();
+        iwc.setMergeScheduler(new SerialMergeScheduler());
+        iwc.setCodec(codec);
+        RandomIndexWriter writer = new RandomIndexWriter(random(), dir, iwc);
+
+        // More documents than fit in one block of the exact search
+        int numDocs = 300;
+        float[][] vectors = new float[numDocs][];
+        for (int i = 0; i < numDocs; i++) {
+            vectors[i] = new float[]{randomFloat(), randomFloat(), randomFloat()};
+            Document doc = new Document();
+            doc.add(new StringField("id", String.valueOf(i), Field.Store.YES));
+            doc.add(new VectorField("test_vector", vectors[i], KNNVectorFieldMapper.Defaults.FIELD_TYPE));
+            writer.addDocument(doc);
+        }
+        writer.deleteDocuments(new Term("id", "0"));
+        IndexReader reader = writer.getReader();
+        writer.close();
+
+        float[] queryVector = {0.5f, 0.5f, 0.5f};
+        int k = 10;
+        List<Integer> expectedIds = IntStream.range(1, numDocs).boxed()
+                .sorted(Comparator.comparingDouble(i -> KNNScoringUtil.l2Squared(queryVector, vectors[i])))
+                .limit(k)
+                .collect(Collectors.toList());
+
+        IndexSearcher searcher = new IndexSearcher(reader);
+        TopDocs topDocs = searcher.search(new KNNExactQuery("test_vector", queryVector, k), k);
+        assertEquals(k, topDocs.scoreDocs.length);
+        for (int i = 0; i < k; i++) {
+            int id = Integer.parseInt(searcher.doc(topDocs.scoreDocs[i].doc).get("id"));
+            assertEquals(expectedIds.get(i).intValue(), id);
+            assertEquals(KNNWeight.normalizeScore(KNNScoringUtil.l2Squared(queryVector, vectors[id])),
+                    topDocs.scoreDocs[i].score, 0.0001f);
+        }
+
+        reader.close();
+        dir.close();
+    }
+
+    public void testGraphBuildThreshold(Codec codec) throws Exception {
+        setUpMockClusterService();
+        Directory dir = newFSDirectory(createTempDir());
+        IndexWriterConfig iwc = newIndexWriterConfig();
+        iwc.setMergeScheduler(new SerialMergeScheduler());
+        iwc.setCodec(codec);
+        RandomIndexWriter writer = new RandomIndexWriter(random(), dir, iwc);
+
+        FieldType fieldType = new FieldType(KNNVectorFieldMapper.Defaults.FIELD_TYPE);
+        fieldType.putAttribute(KNNConstants.GRAPH_BUILD_THRESHOLD, "10");
+        fieldType.freeze();
+        float[][] vectors = {{1.0f, 1.0f}, {2.0f, 2.0f}, {5.0f, 5.0f}};
+        for (float[] vector : vectors) {
+            Document doc = new Document();
+            doc.add(new VectorField("test_vector", vector, fieldType));
+            writer.addDocument(doc);
+        }
+        IndexReader reader = writer.getReader();
+        writer.close();
+
+        // The segment has fewer vectors than the threshold: no graph, the query searches it exactly
+        assertTrue(Arrays.stream(dir.listAll()).noneMatch(fileName -> fileName.contains("hnsw")));
+        IndexSearcher searcher = new IndexSearcher(reader);
+        TopDocs topDocs = searcher.search(new KNNQuery("test_vector", new float[]{2.0f, 3.0f}, 2, "myindex"), 10);
+        assertEquals(2, topDocs.scoreDocs.length);
+        assertEquals(KNNWeight.normalizeScore(1.0f), topDocs.scoreDocs[0].score, 0.0001f);
+        assertEquals(KNNWeight.normalizeScore(5.0f), topDocs.scoreDocs[1].score, 0.0001f);
+        assertTrue(KNNIndexCache.getInstance().getGraphNamesForIndex("myindex").isEmpty());
+
+        reader.close();
+        dir.close();
+
+        // Without a threshold, segments without graph, here written by a codec that does not build them, match nothing
+        dir = newFSDirectory(createTempDir());
+        writer = new RandomIndexWriter(random(), dir, newIndexWriterConfig());
+        for (float[] vector : vectors) {
+            Document doc = new Document();
+            doc.add(new VectorField("test_vector", vector, KNNVectorFieldMapper.Defaults.FIELD_TYPE));
+            writer.addDocument(doc);
+        }
+        reader = writer.getReader();
+        writer.close();
+
+        searcher = new IndexSearcher(reader);
+        topDocs = searcher.search(new KNNQuery("test_vector", new float[]{2.0f, 3.0f}, 2, "myindex"), 10);
+        assertEquals(0, topDocs.scoreDocs.length);
+
+        reader.close();
+        dir.close();
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ *   Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+package com.amazon.opendistroforelasticsearch.knn.index.codec;
+
+import com.amazon.opendistroforelasticsearch.knn.KNNTestCase;
+import com.amazon.opendistroforelasticsearch.knn.index.QuantizationTypes;
+import com.amazon.opendistroforelasticsearch.knn.index.VectorDataTypes;
+import com.amazon.opendistroforelasticsearch.knn.index.VectorField;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+public class KNNCodecUtilTests extends KNNTestCase {
+
+    public void testByteToFloatArray() throws Exception {
+        for (int dimension : new int[]{0, 1, 3, 128}) {
+            float[] vector = new float[dimension];
+            for (int i = 0; i < dimension; i++) {
+                vector[i] = randomFloat() * (randomBoolean() ? -1 : 1);
+            }
+            byte[] bytes = VectorField.floatToByte(vector);
+
+            assertArrayEquals(vector, KNNCodecUtil.byteToFloatArray(new BytesRef(bytes)), 0.0f);
+
+            // Vector in the middle of a larger buffer
+            byte[] padded = new byte[bytes.length + 10];
+            System.arraycopy(bytes, 0, padded, 5, bytes.length);
+            assertArrayEquals(vector, KNNCodecUtil.byteToFloatArray(new BytesRef(padded, 5, bytes.length)), 0.0f);
+        }
+    }
+
+    public void testByteToFloatArray_unexpectedHeader() throws Exception {
+        float[] vector = new float[]{1.0f, 2.0f, 3.0f};
+        byte[] bytes;
+        try (ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+             ObjectOutputStream objectStream = new ObjectOutputStream(byteStream)) {
+            // A reset marker in front of the array does not match the expected header
+            objectStream.reset();
+            objectStream.writeObject(vector);
+            objectStream.flush();
+            bytes = byteStream.toByteArray();
+        }
+
+        assertFalse(Arrays.equals(VectorField.floatToByte(vector), bytes));
+        assertArrayEquals(vector, KNNCodecUtil.byteToFloatArray(new BytesRef(bytes)), 0.0f);
+    }
+
+    public void testByteToFloatArray_quantized() throws Exception {
+        float[] vector = new float[]{-1.0f, -0.5f, 0.0f, 0.25f, 1.0f, 3.0f};
+
+        float[] int8 = KNNCodecUtil.byteToFloatArray(new BytesRef(QuantizationTypes.int8.quantize(vector, -1.0f, 1.0f)));
+        assertArrayEquals(new float[]{-1.0f, -0.5f, 0.0f, 0.25f, 1.0f, 1.0f}, int8, 1.0f / 127);
+        assertEquals(0.0f, int8[2], 0.0f);
+
+        float[] uint8 = KNNCodecUtil.byteToFloatArray(new BytesRef(QuantizationTypes.uint8.quantize(vector, -1.0f, 1.0f)));
+        assertArrayEquals(new float[]{-1.0f, -0.5f, 0.0f, 0.25f, 1.0f, 1.0f}, uint8, 2.0f / 255);
+
+        byte[] bytes = QuantizationTypes.uint8.quantize(vector, -1.0f, 1.0f);
+        assertEquals(QuantizationTypes.HEADER_LENGTH + vector.length, bytes.length);
+        assertFalse(QuantizationTypes.isQuantized(new BytesRef(VectorField.floatToByte(vector))));
+    }
+
+    public void testByteToFloatArray_float16() throws Exception {
+        float[] vector = new float[]{-65504.0f, -1.0f, 0.0f, 0.1f, 1.0f / 3, 6.0e-8f, 2049.0f};
+
+        byte[] bytes = VectorDataTypes.toFloat16Bytes(vector);
+        assertEquals(1 + vector.length * Short.BYTES, bytes.length);
+        assertFalse(QuantizationTypes.isQuantized(new BytesRef(bytes)));
+
+        float[] halves = KNNCodecUtil.byteToFloatArray(new BytesRef(bytes));
+        // 0.1 and 1/3 round to the nearest half, 6.0e-8 to the smallest subnormal and 2049 to even
+        assertArrayEquals(new float[]{-65504.0f, -1.0f, 0.0f, 0.099975586f, 0.33325195f, 5.9604645e-8f, 2048.0f},
+                halves, 0.0f);
+
+        float[] reuse = new float[vector.length];
+        assertSame(reuse, KNNCodecUtil.byteToFloatArray(new BytesRef(bytes), reuse));
+        assertArrayEquals(halves, reuse, 0.0f);
+    }
+
+    public void testByteToFloatArray_binary() throws Exception {
+        float[] vector = new float[]{1, 0, 1, 1, 0, 0, 0, 1, 1, 1};
+
+        byte[] bytes = VectorDataTypes.toBinaryBytes(vector);
+        assertEquals(2 + 2, bytes.length);
+        assertEquals((byte) 0b10110001, bytes[2]);
+        assertEquals((byte) 0b11000000, bytes[3]);
+        assertFalse(VectorDataTypes.isFloat16(new BytesRef(bytes)));
+
+        assertArrayEquals(vector, KNNCodecUtil.byteToFloatArray(new BytesRef(bytes)), 0.0f);
+        float[] reuse = new float[vector.length];
+        assertSame(reuse, KNNCodecUtil.byteToFloatArray(new BytesRef(bytes), reuse));
+        assertArrayEquals(vector, reuse, 0.0f);
+    }
+
+    public void testGetGraphFieldName() {
+        assertEquals("b", KNNCodecUtil.getGraphFieldName("_0_2011_b.hnsw"));
+        assertEquals("a_b", KNNCodecUtil.getGraphFieldName("/data/index/_1a_2011_a_b.hnswc"));
+        assertEquals("2011", KNNCodecUtil.getGraphBuildVersion("_1a_2011_a_b.hnswc"));
+        assertNull(KNNCodecUtil.getGraphFieldName("_0_2011_b.cfs"));
+        assertNull(KNNCodecUtil.getGraphFieldName("_0_2011_.hnsw"));
+        assertNull(KNNCodecUtil.getGraphFieldName("_0.hnsw"));
+
+        // The graph of field "a_b" must not be claimed by field "b"
+        assertTrue(KNNCodecUtil.isGraphFileOfField("_0_2011_a_b.hnsw", "a_b"));
+        assertFalse(KNNCodecUtil.isGraphFileOfField("_0_2011_a_b.hnsw", "b"));
+        assertFalse(KNNCodecUtil.isGraphFileOfField("_0_2011_b.hnsw", "a_b"));
+    }
+}
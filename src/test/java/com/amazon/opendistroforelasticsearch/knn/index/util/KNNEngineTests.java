@@ -0,0 +1,50 @@
+/*
+ *   Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.knn.index.util;
+
+import com.amazon.opendistroforelasticsearch.knn.KNNTestCase;
+import com.amazon.opendistroforelasticsearch.knn.common.KNNConstants;
+import com.amazon.opendistroforelasticsearch.knn.index.SpaceTypes;
+import com.amazon.opendistroforelasticsearch.knn.index.codec.KNNCodecUtil;
+
+public class KNNEngineTests extends KNNTestCase {
+
+    public void testGetEngine() {
+        assertEquals(KNNEngine.NMSLIB, KNNEngine.getEngine(KNNConstants.NMSLIB));
+        assertTrue(KNNEngine.contains(KNNConstants.NMSLIB));
+        assertFalse(KNNEngine.contains("faiss"));
+        expectThrows(IllegalArgumentException.class, () -> KNNEngine.getEngine("faiss"));
+
+        for (SpaceTypes spaceType : SpaceTypes.values()) {
+            assertTrue(KNNEngine.NMSLIB.isSpaceTypeSupported(spaceType.getKey()));
+        }
+        assertFalse(KNNEngine.NMSLIB.isSpaceTypeSupported(KNNConstants.HAMMING_BIT));
+    }
+
+    public void testGetEngineOfGraph() {
+        String buildVersion = KNNEngine.NMSLIB.getBuildVersion();
+        assertEquals("2011", buildVersion);
+        assertEquals(KNNEngine.NMSLIB, KNNEngine.getEngineOfGraph("/data/index/_0_" + buildVersion + "_my_vector" +
+                KNNCodecUtil.HNSW_EXTENSION));
+        assertEquals(KNNEngine.NMSLIB, KNNEngine.getEngineOfGraph("_1a_" + buildVersion + "_nested.field" +
+                KNNCodecUtil.HNSW_COMPOUND_EXTENSION));
+
+        expectThrows(IllegalArgumentException.class, () -> KNNEngine.getEngineOfGraph("_0_9999_my_vector" +
+                KNNCodecUtil.HNSW_EXTENSION));
+        expectThrows(IllegalArgumentException.class, () -> KNNEngine.getEngineOfGraph("my_vector" +
+                KNNCodecUtil.HNSW_EXTENSION));
+    }
+}
@@ -17,28 +17,47 @@ package com.amazon.opendistroforelasticsearch.knn.plugin.script;
 
 import com.amazon.opendistroforelasticsearch.knn.KNNTestCase;
 import com.amazon.opendistroforelasticsearch.knn.index.KNNVectorFieldMapper;
+import com.amazon.opendistroforelasticsearch.knn.index.VectorField;
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.FloatDocValuesField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.index.fielddata.FieldData;
+import org.elasticsearch.index.fielddata.ScriptDocValues;
 import org.elasticsearch.index.mapper.BinaryFieldMapper;
 import org.elasticsearch.index.mapper.NumberFieldMapper;
+import org.elasticsearch.script.ScoreScript;
+import org.elasticsearch.search.lookup.LeafDocLookup;
+import org.elasticsearch.search.lookup.LeafSearchLookup;
+import org.elasticsearch.search.lookup.SearchLookup;
 
-import java.math.BigInteger;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collections;
 import java.util.List;
-import java.util.function.BiFunction;
 
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class KNNScoringSpaceTests extends KNNTestCase {
 
-    public void testL2() {
-        float[] arrayFloat = new float[]{1.0f, 2.0f, 3.0f};
+    private static final String FIELD_NAME = "test";
+
+    public void testL2() throws IOException {
         List<Double> arrayListQueryObject = new ArrayList<>(Arrays.asList(1.0, 2.0, 3.0));
-        KNNVectorFieldMapper.KNNVectorFieldType fieldType = new KNNVectorFieldMapper.KNNVectorFieldType("test",
+        KNNVectorFieldMapper.KNNVectorFieldType fieldType = new KNNVectorFieldMapper.KNNVectorFieldType(FIELD_NAME,
                 Collections.emptyMap(), 3);
         KNNScoringSpace.L2 l2 = new KNNScoringSpace.L2(arrayListQueryObject, fieldType);
-        assertEquals(1F, l2.scoringMethod.apply(arrayFloat, arrayFloat), 0.1F);
+        assertEquals(1F, scoreDocument(l2, new float[]{1.0f, 2.0f, 3.0f}), 0.0F);
+        assertEquals(1F / 15, scoreDocument(l2, new float[]{2.0f, 4.0f, 6.0f}), 1.0E-6F);
 
         NumberFieldMapper.NumberFieldType invalidFieldType = new NumberFieldMapper.NumberFieldType("field",
                 NumberFieldMapper.NumberType.INTEGER);
@@ -46,17 +65,22 @@ public class KNNScoringSpaceTests extends KNNTestCase {
                 new KNNScoringSpace.L2(arrayListQueryObject, invalidFieldType));
     }
 
-    public void testCosineSimilarity() {
-        float[] arrayFloat = new float[]{1.0f, 2.0f, 3.0f};
+    public void testCosineSimilarity() throws IOException {
         List<Double> arrayListQueryObject = new ArrayList<>(Arrays.asList(1.0, 2.0, 3.0));
         float[] arrayFloat2 = new float[]{2.0f, 4.0f, 6.0f};
 
-        KNNVectorFieldMapper.KNNVectorFieldType fieldType = new KNNVectorFieldMapper.KNNVectorFieldType("test",
+        KNNVectorFieldMapper.KNNVectorFieldType fieldType = new KNNVectorFieldMapper.KNNVectorFieldType(FIELD_NAME,
                 Collections.emptyMap(), 3);
         KNNScoringSpace.CosineSimilarity cosineSimilarity =
                 new KNNScoringSpace.CosineSimilarity(arrayListQueryObject, fieldType);
+        assertEquals(2F, scoreDocument(cosineSimilarity, arrayFloat2), 1.0E-6F);
+        assertEquals(1F, scoreDocument(cosineSimilarity, new float[]{-3.0f, 0.0f, 1.0f}), 1.0E-6F);
 
-        assertEquals(3F, cosineSimilarity.scoringMethod.apply(arrayFloat2, arrayFloat), 0.1F);
+        // The same score is computed from the norms stored at index time
+        KNNVectorFieldMapper.KNNVectorFieldType normFieldType = new KNNVectorFieldMapper.KNNVectorFieldType(
+                FIELD_NAME, Collections.emptyMap(), 3, true);
+        cosineSimilarity = new KNNScoringSpace.CosineSimilarity(arrayListQueryObject, normFieldType);
+        assertEquals(2F, scoreDocument(cosineSimilarity, arrayFloat2), 1.0E-6F);
 
         NumberFieldMapper.NumberFieldType invalidFieldType = new NumberFieldMapper.NumberFieldType("field",
                 NumberFieldMapper.NumberType.INTEGER);
@@ -64,34 +88,30 @@ public class KNNScoringSpaceTests extends KNNTestCase {
                 new KNNScoringSpace.CosineSimilarity(arrayListQueryObject, invalidFieldType));
     }
 
-    public void testInnerProdSimilarity() {
-        float[] arrayFloat_case1 = new float[]{1.0f, 2.0f, 3.0f};
+    public void testInnerProdSimilarity() throws IOException {
         List<Double> arrayListQueryObject_case1 = new ArrayList<>(Arrays.asList(1.0, 2.0, 3.0));
         float[] arrayFloat2_case1 = new float[]{1.0f, 1.0f, 1.0f};
 
-        KNNVectorFieldMapper.KNNVectorFieldType fieldType = new KNNVectorFieldMapper.KNNVectorFieldType("test",
+        KNNVectorFieldMapper.KNNVectorFieldType fieldType = new KNNVectorFieldMapper.KNNVectorFieldType(FIELD_NAME,
                 Collections.emptyMap(), 3);
         KNNScoringSpace.InnerProd innerProd =
                 new KNNScoringSpace.InnerProd(arrayListQueryObject_case1, fieldType);
 
-        assertEquals(7.0F, innerProd.scoringMethod.apply(arrayFloat_case1, arrayFloat2_case1), 0.001F);
+        assertEquals(7.0F, scoreDocument(innerProd, arrayFloat2_case1), 0.001F);
 
-        float[] arrayFloat_case2 = new float[]{100_000.0f, 200_000.0f, 300_000.0f};
         List<Double> arrayListQueryObject_case2 = new ArrayList<>(Arrays.asList(100_000.0, 200_000.0, 300_000.0));
         float[] arrayFloat2_case2 = new float[]{-100_000.0f, -200_000.0f, -300_000.0f};
 
         innerProd = new KNNScoringSpace.InnerProd(arrayListQueryObject_case2, fieldType);
 
-        assertEquals(7.142857143E-12F, innerProd.scoringMethod.apply(arrayFloat_case2, arrayFloat2_case2),
-                1.0E-11F);
+        assertEquals(7.142857143E-12F, scoreDocument(innerProd, arrayFloat2_case2), 1.0E-11F);
 
-        float[] arrayFloat_case3 = new float[]{100_000.0f, 200_000.0f, 300_000.0f};
         List<Double> arrayListQueryObject_case3 = new ArrayList<>(Arrays.asList(100_000.0, 200_000.0, 300_000.0));
         float[] arrayFloat2_case3 = new float[]{100_000.0f, 200_000.0f, 300_000.0f};
 
         innerProd = new KNNScoringSpace.InnerProd(arrayListQueryObject_case3, fieldType);
 
-        assertEquals(140_000_000_001F, innerProd.scoringMethod.apply(arrayFloat_case3, arrayFloat2_case3), 0.01F);
+        assertEquals(140_000_000_001F, scoreDocument(innerProd, arrayFloat2_case3), 0.01F);
 
         NumberFieldMapper.NumberFieldType invalidFieldType = new NumberFieldMapper.NumberFieldType("field",
                 NumberFieldMapper.NumberType.INTEGER);
@@ -99,7 +119,34 @@ public class KNNScoringSpaceTests extends KNNTestCase {
                 new KNNScoringSpace.InnerProd(arrayListQueryObject_case2, invalidFieldType));
     }
 
-    @SuppressWarnings("unchecked")
+    public void testL1() throws IOException {
+        List<Double> arrayListQueryObject = new ArrayList<>(Arrays.asList(1.0, 2.0, 3.0));
+        KNNVectorFieldMapper.KNNVectorFieldType fieldType = new KNNVectorFieldMapper.KNNVectorFieldType(FIELD_NAME,
+                Collections.emptyMap(), 3);
+        KNNScoringSpace.L1 l1 = new KNNScoringSpace.L1(arrayListQueryObject, fieldType);
+        assertEquals(1F, scoreDocument(l1, new float[]{1.0f, 2.0f, 3.0f}), 0.0F);
+        assertEquals(1F / 7, scoreDocument(l1, new float[]{2.0f, 4.0f, 6.0f}), 1.0E-6F);
+
+        NumberFieldMapper.NumberFieldType invalidFieldType = new NumberFieldMapper.NumberFieldType("field",
+                NumberFieldMapper.NumberType.INTEGER);
+        expectThrows(IllegalArgumentException.class, () ->
+                new KNNScoringSpace.L1(arrayListQueryObject, invalidFieldType));
+    }
+
+    public void testLInf() throws IOException {
+        List<Double> arrayListQueryObject = new ArrayList<>(Arrays.asList(1.0, 2.0, 3.0));
+        KNNVectorFieldMapper.KNNVectorFieldType fieldType = new KNNVectorFieldMapper.KNNVectorFieldType(FIELD_NAME,
+                Collections.emptyMap(), 3);
+        KNNScoringSpace.LInf lInf = new KNNScoringSpace.LInf(arrayListQueryObject, fieldType);
+        assertEquals(1F, scoreDocument(lInf, new float[]{1.0f, 2.0f, 3.0f}), 0.0F);
+        assertEquals(1F / 4, scoreDocument(lInf, new float[]{2.0f, 4.0f, 6.0f}), 1.0E-6F);
+
+        NumberFieldMapper.NumberFieldType invalidFieldType = new NumberFieldMapper.NumberFieldType("field",
+                NumberFieldMapper.NumberType.INTEGER);
+        expectThrows(IllegalArgumentException.class, () ->
+                new KNNScoringSpace.LInf(arrayListQueryObject, invalidFieldType));
+    }
+
     public void testHammingBit_Long() {
         NumberFieldMapper.NumberFieldType fieldType = new NumberFieldMapper.NumberFieldType("field",
                 NumberFieldMapper.NumberType.LONG);
@@ -107,16 +154,14 @@ public class KNNScoringSpaceTests extends KNNTestCase {
         Long longObject2 = 2468L; // ..._0000_1001_1010_0100
         KNNScoringSpace.HammingBit hammingBit = new KNNScoringSpace.HammingBit(longObject1, fieldType);
 
-        assertEquals(0.1111F,
-                ((BiFunction<Long, Long, Float>)hammingBit.scoringMethod).apply(longObject1, longObject2), 0.1F);
+        assertEquals(0.1111F, hammingBit.scoringMethod.apply(longObject1, longObject2), 0.1F);
 
         KNNVectorFieldMapper.KNNVectorFieldType invalidFieldType = mock(KNNVectorFieldMapper.KNNVectorFieldType.class);
         expectThrows(IllegalArgumentException.class, () ->
                 new KNNScoringSpace.HammingBit(longObject1, invalidFieldType));
     }
 
-    @SuppressWarnings("unchecked")
-    public void testHammingBit_Base64() {
+    public void testHammingBit_Base64() throws IOException {
         BinaryFieldMapper.BinaryFieldType fieldType = new BinaryFieldMapper.BinaryFieldType("field");
         String base64Object1 = "q83vQUI=";
         String base64Object2 = "//43ITI=";
@@ -129,15 +174,59 @@ public class KNNScoringSpaceTests extends KNNTestCase {
 
         float expectedResult = 1F / (1 + 16);
         KNNScoringSpace.HammingBit hammingBit = new KNNScoringSpace.HammingBit(base64Object1, fieldType);
+        BytesRef docValue = new BytesRef(Base64.getDecoder().decode(base64Object2));
 
-        assertEquals(expectedResult,
-                ((BiFunction<BigInteger, BigInteger, Float>)hammingBit.scoringMethod).apply(
-                        new BigInteger(Base64.getDecoder().decode(base64Object1)),
-                        new BigInteger(Base64.getDecoder().decode(base64Object2))
-                ), 0.1F);
+        assertEquals(16F, KNNScoringUtil.calculateHammingBit((long[]) hammingBit.processedQuery, docValue), 0.0F);
+
+        Document document = new Document();
+        document.add(new BinaryDocValuesField(FIELD_NAME, docValue));
+        assertEquals(expectedResult, scoreDocument(hammingBit, document, KNNScoreScript.BytesRefType.class), 0.0F);
 
         KNNVectorFieldMapper.KNNVectorFieldType invalidFieldType = mock(KNNVectorFieldMapper.KNNVectorFieldType.class);
         expectThrows(IllegalArgumentException.class, () ->
                 new KNNScoringSpace.HammingBit(base64Object1, invalidFieldType));
     }
+
+    /**
+     * Indexes the vector, with its norm, in a single segment and scores it with the script of the space
+     */
+    private float scoreDocument(KNNScoringSpace space, float[] vector) throws IOException {
+        Document document = new Document();
+        document.add(new BinaryDocValuesField(FIELD_NAME,
+                new VectorField(FIELD_NAME, vector, new FieldType()).binaryValue()));
+        document.add(new FloatDocValuesField(KNNVectorFieldMapper.normFieldName(FIELD_NAME),
+                (float) Math.sqrt(KNNScoringSpaceUtil.getVectorMagnitudeSquared(vector))));
+        return scoreDocument(space, document, KNNScoreScript.KNNVectorType.class);
+    }
+
+    /**
+     * Indexes the document in a single segment and scores it with the script of the space. The doc lookup of the
+     * script serves the binary doc values of the field.
+     */
+    private float scoreDocument(KNNScoringSpace space, Document document,
+                                Class<? extends ScoreScript> scriptClass) throws IOException {
+        try (Directory directory = newDirectory()) {
+            try (IndexWriter writer = new IndexWriter(directory, newIndexWriterConfig())) {
+                writer.addDocument(document);
+            }
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                LeafReaderContext leafReaderContext = reader.leaves().get(0);
+                ScriptDocValues.BytesRefs docValues = new ScriptDocValues.BytesRefs(
+                        FieldData.singleton(DocValues.getBinary(leafReaderContext.reader(), FIELD_NAME)));
+                docValues.setNextDocId(0);
+                LeafDocLookup docLookup = mock(LeafDocLookup.class);
+                when(docLookup.get(FIELD_NAME)).thenReturn(docValues);
+                LeafSearchLookup leafLookup = mock(LeafSearchLookup.class);
+                when(leafLookup.doc()).thenReturn(docLookup);
+                SearchLookup lookup = mock(SearchLookup.class);
+                when(lookup.getLeafSearchLookup(leafReaderContext)).thenReturn(leafLookup);
+
+                ScoreScript scoreScript = space.getScoreScript(Collections.emptyMap(), FIELD_NAME, lookup,
+                        leafReaderContext);
+                assertTrue(scriptClass.isInstance(scoreScript));
+                scoreScript.setDocument(0);
+                return (float) scoreScript.execute(null);
+            }
+        }
+    }
 }
@@ -5,7 +5,6 @@ import com.amazon.opendistroforelasticsearch.knn.index.KNNVectorFieldMapper;
 import org.elasticsearch.index.mapper.BinaryFieldMapper;
 import org.elasticsearch.index.mapper.NumberFieldMapper;
 
-import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -13,9 +12,9 @@ import java.util.List;
 import static com.amazon.opendistroforelasticsearch.knn.plugin.script.KNNScoringSpaceUtil.isBinaryFieldType;
 import static com.amazon.opendistroforelasticsearch.knn.plugin.script.KNNScoringSpaceUtil.isKNNVectorFieldType;
 import static com.amazon.opendistroforelasticsearch.knn.plugin.script.KNNScoringSpaceUtil.isLongFieldType;
-import static com.amazon.opendistroforelasticsearch.knn.plugin.script.KNNScoringSpaceUtil.parseToBigInteger;
 import static com.amazon.opendistroforelasticsearch.knn.plugin.script.KNNScoringSpaceUtil.parseToFloatArray;
 import static com.amazon.opendistroforelasticsearch.knn.plugin.script.KNNScoringSpaceUtil.parseToLong;
+import static com.amazon.opendistroforelasticsearch.knn.plugin.script.KNNScoringSpaceUtil.parseToLongArray;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -46,15 +45,16 @@ public class KNNScoringSpaceUtilTests extends KNNTestCase {
         expectThrows(IllegalArgumentException.class, () -> parseToLong(invalidQueryObject));
     }
 
-    public void testParseBinaryQuery() {
-        String base64String = "SrtFZw==";
-
+    public void testParseBinaryQueryToLongArray() {
         /*
          * B64:         "SrtFZw=="
          * Decoded Hex: 4ABB4567
+         *
+         * B64:         "AQIDBAUGBwgJ"
+         * Decoded Hex: 010203040506070809
          */
-
-        assertEquals(new BigInteger("4ABB4567", 16), parseToBigInteger(base64String));
+        assertArrayEquals(new long[]{0x4ABB4567L}, parseToLongArray("SrtFZw=="));
+        assertArrayEquals(new long[]{0x01L, 0x0203040506070809L}, parseToLongArray("AQIDBAUGBwgJ"));
     }
 
     public void testParseKNNVectorQuery() {
@@ -71,4 +71,12 @@ public class KNNScoringSpaceUtilTests extends KNNTestCase {
         String invalidObject = "invalidObject";
         expectThrows(ClassCastException.class, () -> parseToFloatArray(invalidObject, 3));
     }
+
+    public void testParseKNNVectorQuery_mixedNumberTypes() {
+        float[] arrayFloat = new float[]{1.0f, 2.0f, 3.5f};
+        List<Number> mixedQueryObject = Arrays.asList(1, 2L, 3.5);
+
+        assertArrayEquals(arrayFloat, parseToFloatArray(mixedQueryObject, 3), 0.0f);
+        assertSame(arrayFloat, parseToFloatArray(arrayFloat, 3));
+    }
 }
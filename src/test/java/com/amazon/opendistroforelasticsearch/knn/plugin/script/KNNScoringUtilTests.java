@@ -28,10 +28,12 @@ import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.NoMergePolicy;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
 
 import java.io.IOException;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 
 import static com.amazon.opendistroforelasticsearch.knn.plugin.script.KNNScoringSpaceUtil.convertVectorToPrimitive;
@@ -87,6 +89,50 @@ public class KNNScoringUtilTests extends KNNTestCase {
         assertEquals(expectedScore, actualScore, 0.0001);
     }
 
+    public void testCosineSimilWithNormsScoringFunction() {
+        float[] queryVector = {1.0f, 2.0f, 3.0f};
+        float[] inputVector = {4.0f, -5.0f, 6.0f};
+        float queryNorm = (float) Math.sqrt(getVectorMagnitudeSquared(queryVector));
+        float inputNorm = (float) Math.sqrt(getVectorMagnitudeSquared(inputVector));
+
+        assertEquals(KNNScoringUtil.cosinesimil(queryVector, inputVector),
+                KNNScoringUtil.cosinesimilWithNorms(queryVector, inputVector, queryNorm, inputNorm), 0.0001);
+        assertEquals(0, KNNScoringUtil.cosinesimilWithNorms(queryVector, inputVector, 0.0f, inputNorm), 0.00001);
+    }
+
+    public void testScoringFunctionsMatchSequentialLoops() {
+        for (int dimension = 1; dimension <= 37; dimension++) {
+            float[] queryVector = new float[dimension];
+            float[] inputVector = new float[dimension];
+            for (int i = 0; i < dimension; i++) {
+                queryVector[i] = randomFloat() * 10 - 5;
+                inputVector[i] = randomFloat() * 10 - 5;
+            }
+
+            float l2 = 0, l1 = 0, lInf = 0, dotProduct = 0, dotProductMagnitude = 0, queryNorm = 0, inputNorm = 0;
+            for (int i = 0; i < dimension; i++) {
+                float diff = queryVector[i] - inputVector[i];
+                l2 += diff * diff;
+                l1 += Math.abs(diff);
+                lInf = Math.max(Math.abs(diff), lInf);
+                dotProduct += queryVector[i] * inputVector[i];
+                dotProductMagnitude += Math.abs(queryVector[i] * inputVector[i]);
+                queryNorm += queryVector[i] * queryVector[i];
+                inputNorm += inputVector[i] * inputVector[i];
+            }
+            float cosine = (float) (dotProduct / Math.sqrt(queryNorm * inputNorm));
+
+            // Summing in a different order only changes the result by a few ulps of the largest partial sum
+            assertEquals(l2, KNNScoringUtil.l2Squared(queryVector, inputVector), l2 * 1e-5f);
+            assertEquals(l1, KNNScoringUtil.l1Norm(queryVector, inputVector), l1 * 1e-5f);
+            assertEquals(lInf, KNNScoringUtil.lInfNorm(queryVector, inputVector), 0.0f);
+            assertEquals(dotProduct, KNNScoringUtil.innerProduct(queryVector, inputVector),
+                    dotProductMagnitude * 1e-5f);
+            assertEquals(cosine, KNNScoringUtil.cosinesimil(queryVector, inputVector), 0.0001);
+            assertEquals(cosine, KNNScoringUtil.cosinesimilOptimized(queryVector, inputVector, queryNorm), 0.0001);
+        }
+    }
+
     public void testGetInvalidVectorMagnitudeSquared() {
         float[] queryVector = null;
         // vector cannot be null
@@ -122,6 +168,30 @@ public class KNNScoringUtilTests extends KNNTestCase {
         expectThrows(IllegalArgumentException.class, () -> KNNScoringUtil.cosinesimilOptimized(queryVector, inputVector, 1.0f));
     }
 
+    public void testBitHammingDistance_LongArray() {
+        /*
+         * Hex to binary table:
+         *
+         * 4                  -> 0000 0100
+         * 1114AB5432         -> 0001 0001 0001 0100 1010 1011 0101 0100 0011 0010
+         * 0102030405060708FF -> 72 bits, across two 64 bit words
+         */
+        long[] query = KNNScoringSpaceUtil.parseToLongArray(Base64.getEncoder().encodeToString(new byte[]{0x04}));
+        byte[] input = new byte[]{0x55, 0x11, 0x14, (byte) 0xAB, 0x54, 0x32, 0x55};
+
+        // Only bytes 1 to 5 of the array are the value
+        assertEquals(16.0, KNNScoringUtil.calculateHammingBit(query, new BytesRef(input, 1, 5)), 0.1);
+
+        byte[] longInput = new byte[]{0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x08, (byte) 0xFF};
+        assertEquals(new BigInteger(1, longInput).xor(BigInteger.valueOf(4)).bitCount(),
+                KNNScoringUtil.calculateHammingBit(query, new BytesRef(longInput)), 0.1);
+
+        long[] longQuery = KNNScoringSpaceUtil.parseToLongArray(Base64.getEncoder().encodeToString(longInput));
+        assertEquals(0.0, KNNScoringUtil.calculateHammingBit(longQuery, new BytesRef(longInput)), 0.1);
+        assertEquals(new BigInteger(1, longInput).bitCount(),
+                KNNScoringUtil.calculateHammingBit(longQuery, new BytesRef(new byte[0])), 0.1);
+    }
+
     public void testBitHammingDistance_BitSet() {
         BigInteger bigInteger1 = new BigInteger("4", 16);
         BigInteger bigInteger2 = new BigInteger("32278", 16);
@@ -194,6 +264,36 @@ public class KNNScoringUtilTests extends KNNTestCase {
         dataset.close();
     }
 
+    public void testClassBindingsConvertQueryVectorOnce() throws IOException {
+        List<Number> queryVector = getTestQueryVector();
+        TestKNNScriptDocValues dataset = new TestKNNScriptDocValues();
+        dataset.createKNNVectorDocument(new float[]{4.0f, 4.0f, 4.0f}, "test-index-field-name");
+        KNNVectorScriptDocValues scriptDocValues = dataset.getScriptDocValues("test-index-field-name");
+        scriptDocValues.setNextDocId(0);
+
+        KNNScoringUtil.L2Squared l2Squared = new KNNScoringUtil.L2Squared(null, queryVector);
+        KNNScoringUtil.L1Norm l1Norm = new KNNScoringUtil.L1Norm(null, queryVector);
+        KNNScoringUtil.LInfNorm lInfNorm = new KNNScoringUtil.LInfNorm(null, queryVector);
+        KNNScoringUtil.InnerProduct innerProduct = new KNNScoringUtil.InnerProduct(null, queryVector);
+        KNNScoringUtil.CosineSimilarity cosineSimilarity = new KNNScoringUtil.CosineSimilarity(null, queryVector);
+        KNNScoringUtil.CosineSimilarityWithMagnitude cosineSimilarityWithMagnitude =
+                new KNNScoringUtil.CosineSimilarityWithMagnitude(null, queryVector);
+
+        // A binding keeps the vector of the script instance that created it, even if the list changes afterwards
+        queryVector.set(0, 4.0f);
+        assertEquals(27.0f, l2Squared.l2Squared(scriptDocValues), 0.0f);
+        assertEquals(9.0f, l1Norm.l1Norm(scriptDocValues), 0.0f);
+        assertEquals(3.0f, lInfNorm.lInfNorm(scriptDocValues), 0.0f);
+        assertEquals(12.0f, innerProduct.innerProduct(scriptDocValues), 0.0f);
+        assertEquals(1.0f, cosineSimilarity.cosineSimilarity(scriptDocValues), 0.0001f);
+        // The magnitude argument is the squared magnitude of the query vector, here of [1, 1, 1]
+        assertEquals(1.0f, cosineSimilarityWithMagnitude.cosineSimilarity(scriptDocValues, 3.0f), 0.0001f);
+
+        // A new script instance converts the list as it is then
+        assertEquals(18.0f, new KNNScoringUtil.L2Squared(null, queryVector).l2Squared(scriptDocValues), 0.0f);
+        dataset.close();
+    }
+
     public void testScriptDocValuesFailsL2() throws IOException {
         List<Number> queryVector = getTestQueryVector();
         TestKNNScriptDocValues dataset = new TestKNNScriptDocValues();
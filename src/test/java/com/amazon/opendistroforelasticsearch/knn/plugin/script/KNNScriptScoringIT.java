@@ -263,6 +263,49 @@ public class KNNScriptScoringIT extends KNNRestTestCase {
         assertEquals("2", results.get(2).getDocId());
     }
 
+    public void testKNNCosineScriptScore_storedNorm() throws Exception {
+        /*
+         * Create knn index storing the vector norms and populate data
+         */
+        String mapping = Strings.toString(XContentFactory.jsonBuilder().startObject()
+                .startObject("properties")
+                .startObject(FIELD_NAME)
+                .field("type", "knn_vector")
+                .field("dimension", 2)
+                .field(KNNConstants.STORE_NORM, true)
+                .endObject()
+                .endObject()
+                .endObject());
+        createKnnIndex(INDEX_NAME, mapping);
+        Float[] f1  = {1.0f, -1.0f};
+        addKnnDoc(INDEX_NAME, "0", FIELD_NAME, f1);
+
+        Float[] f2  = {3.0f, 0.0f};
+        addKnnDoc(INDEX_NAME, "1", FIELD_NAME, f2);
+
+        Float[] f3  = {1.0f, 1.0f};
+        addKnnDoc(INDEX_NAME, "2", FIELD_NAME, f3);
+
+        QueryBuilder qb = new MatchAllQueryBuilder();
+        Map<String, Object> params = new HashMap<>();
+        float[] queryVector = {2.0f, -2.0f};
+        params.put("field", FIELD_NAME);
+        params.put("query_value", queryVector);
+        params.put("space_type", KNNConstants.COSINESIMIL);
+        Request request = constructKNNScriptQueryRequest(INDEX_NAME, qb, params);
+        Response response = client().performRequest(request);
+        assertEquals(request.getEndpoint() + ": failed", RestStatus.OK,
+                RestStatus.fromCode(response.getStatusLine().getStatusCode()));
+
+        List<KNNResult> results = parseSearchResponse(EntityUtils.toString(response.getEntity()), FIELD_NAME);
+        assertEquals(3, results.size());
+
+        // assert document order
+        assertEquals("0", results.get(0).getDocId());
+        assertEquals("1", results.get(1).getDocId());
+        assertEquals("2", results.get(2).getDocId());
+    }
+
     public void testKNNInvalidSourceScript() throws Exception {
         /*
          * Create knn index and populate data
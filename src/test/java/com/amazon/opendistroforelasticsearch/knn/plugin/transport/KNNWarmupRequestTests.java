@@ -0,0 +1,50 @@
+/*
+ *   Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.knn.plugin.transport;
+
+import com.amazon.opendistroforelasticsearch.knn.KNNTestCase;
+import org.elasticsearch.Version;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.tasks.TaskId;
+
+import java.io.IOException;
+
+public class KNNWarmupRequestTests extends KNNTestCase {
+
+    public void testStreams() throws IOException {
+        KNNWarmupRequest request = new KNNWarmupRequest("index-1", "index-2");
+        request.setParentTask(new TaskId("node-1", 7L));
+
+        // The shard tasks find the warmup task through the parent task id every transport request carries
+        KNNWarmupRequest copy = copy(request, Version.CURRENT);
+        assertArrayEquals(request.indices(), copy.indices());
+        assertEquals(request.getParentTask(), copy.getParentTask());
+    }
+
+    private KNNWarmupRequest copy(KNNWarmupRequest request, Version version) throws IOException {
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            out.setVersion(version);
+            request.writeTo(out);
+            try (StreamInput in = out.bytes().streamInput()) {
+                in.setVersion(version);
+                KNNWarmupRequest copy = new KNNWarmupRequest(in);
+                assertEquals(0, in.available());
+                return copy;
+            }
+        }
+    }
+}
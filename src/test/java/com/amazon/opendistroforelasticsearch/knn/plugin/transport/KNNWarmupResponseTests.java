@@ -0,0 +1,83 @@
+/*
+ *   Copyright 2021 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License").
+ *   You may not use this file except in compliance with the License.
+ *   A copy of the License is located at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   or in the "license" file accompanying this file. This file is distributed
+ *   on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ *   express or implied. See the License for the specific language governing
+ *   permissions and limitations under the License.
+ */
+
+package com.amazon.opendistroforelasticsearch.knn.plugin.transport;
+
+import com.amazon.opendistroforelasticsearch.knn.KNNTestCase;
+import org.elasticsearch.Version;
+import org.elasticsearch.action.support.broadcast.node.TransportBroadcastByNodeAction;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.Writeable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Collections;
+
+public class KNNWarmupResponseTests extends KNNTestCase {
+
+    public void testStreams() throws IOException {
+        KNNWarmupResponse response = new KNNWarmupResponse(3, 2, 1, Collections.emptyList(), 4, 5, 6L);
+
+        KNNWarmupResponse copy = copy(response, KNNWarmupResponse::new, Version.CURRENT);
+        assertEquals(3, copy.getTotalShards());
+        assertEquals(2, copy.getSuccessfulShards());
+        assertEquals(4, copy.getLoadedGraphs());
+        assertEquals(5, copy.getSkippedGraphs());
+        assertEquals(6L, copy.getSkippedSizeInKB());
+    }
+
+    public void testShardResultStreams() throws IOException {
+        KNNWarmupShardResult result = new KNNWarmupShardResult(4, 5, 6L);
+
+        KNNWarmupShardResult copy = copy(result, KNNWarmupShardResult::new, Version.CURRENT);
+        assertEquals(4, copy.getLoadedGraphs());
+        assertEquals(5, copy.getSkippedGraphs());
+        assertEquals(6L, copy.getSkippedSizeInKB());
+    }
+
+    public void testShardResultStreams_earlierBuild() throws IOException {
+        // Earlier builds of the plugin run on the same Elasticsearch version and send an empty shard result, which
+        // cannot be read as a warmup result: the upgrade requires a full cluster restart
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            out.setVersion(Version.V_7_10_2);
+            TransportBroadcastByNodeAction.EmptyResult.INSTANCE.writeTo(out);
+            try (StreamInput in = out.bytes().streamInput()) {
+                in.setVersion(Version.V_7_10_2);
+                expectThrows(EOFException.class, () -> new KNNWarmupShardResult(in));
+            }
+        }
+    }
+
+    public void testShardStatusStreams() throws IOException {
+        KNNWarmupShardTask.Status status = new KNNWarmupShardTask.Status("index", 1, 10, 4, 40L, 5, 50L);
+
+        assertEquals(status, copy(status, KNNWarmupShardTask.Status::new, Version.CURRENT));
+    }
+
+    private <T extends Writeable> T copy(T writeable, Writeable.Reader<T> reader, Version version)
+            throws IOException {
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            out.setVersion(version);
+            writeable.writeTo(out);
+            try (StreamInput in = out.bytes().streamInput()) {
+                in.setVersion(version);
+                T copy = reader.read(in);
+                assertEquals(0, in.available());
+                return copy;
+            }
+        }
+    }
+}
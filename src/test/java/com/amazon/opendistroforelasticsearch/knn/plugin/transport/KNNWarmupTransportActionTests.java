@@ -56,7 +56,9 @@ public class KNNWarmupTransportActionTests extends KNNSingleNodeTestCase {
 
         addKnnDoc(testIndexName, "1", testFieldName, new Long[] {0L, 1L});
 
-        knnWarmupTransportAction.shardOperation(knnWarmupRequest, shardRouting);
+        KNNWarmupShardResult shardResult = knnWarmupTransportAction.shardOperation(knnWarmupRequest, shardRouting);
+        assertEquals(1, shardResult.getLoadedGraphs());
+        assertEquals(0, shardResult.getSkippedGraphs());
         assertEquals(1, KNNIndexCache.getInstance().getIndicesCacheStats().size());
     }
 